@@ -1,5 +1,11 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.swing.*;
 
 /**
@@ -7,6 +13,10 @@ import javax.swing.*;
 * может нарисовать или очистить препятствия на карте, а затем нажать кнопку, чтобы вычислить
 * путь от начала до конца, используя алгоритм поиска пути A*. Если путь
 * найден, он отобразится зеленым цветом.
+* <p>
+* Поиск выполняется в отдельном потоке, поэтому интерфейс не замирает на больших
+* картах. Пока поиск идет, его волновой фронт порциями выводится на карту:
+* открытые ячейки желтым, раскрытые серым. Изменение карты прерывает идущий поиск.
 **/
 public class AStarApp {
     /** количество ячеек в направлении x **/
@@ -18,75 +28,277 @@ public class AStarApp {
     /** место, где путь должен закончиться **/
     private Location finishLoc;
     
-    /** 
-    * Двумерный массив компонентов пользовательского интерфейса, 
-    * которые обеспечивают отображение и обработку ячеек на карте.
+    /**
+    * Компонент пользовательского интерфейса, который отображает всю карту
+    * и хранит стоимости ячеек, измененные юзером.
     **/
-     
-    private JMapCell[][] mapCells;
+    private JMapCanvas mapCanvas;
+
+    /**
+     * Карта, по которой ищется путь. Она живет всё время работы приложения, поэтому
+     * её версия меняется только тогда, когда юзер действительно изменил препятствия.
+     * Карта и поиск по ней используются только в потоке {@link #searchExecutor}.
+     **/
+    private Map2D map;
+
+    /**
+     * Инкрементальный поиск по карте: после изменения нескольких ячеек
+     * он исправляет только затронутую часть прежнего поиска
+     **/
+    private IncrementalPathfinder planner;
 
     /**
-     * Этот внутренний класс обрабатывает события в основной сетке ячеек карты,
-     * изменение ячеек на основе состояния кнопки мыши и начального редактирования, 
-     * которое было выполнено.
+     * Единственный фоновый поток поиска. Поиски выполняются в нем строго по очереди,
+     * поэтому карта и состояние поиска не требуют синхронизации.
      **/
-    private class MapCellHandler implements MouseListener
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(r ->
     {
-        /**
-        * Это значение будет истинным, если была нажата кнопка мыши, 
-        * и в данный момент мы выполняем операцию модификации.
-         **/
-        private boolean modifying;
+        Thread thread = new Thread(r, "pathfinder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Идущий поиск или <code>null</code>; используется только в потоке событий Swing **/
+    private SearchWorker worker;
+
+    /**
+     * Наибольшее количество событий ячеек в одной порции. Порция отправляется
+     * в поток событий Swing, когда она заполнена или когда прошло
+     * {@link #PUBLISH_INTERVAL_NANOS} с отправки предыдущей.
+     **/
+    private static final int PUBLISH_BATCH = 1024;
+
+    /** Наименьший интервал между отправками порций волнового фронта **/
+    private static final long PUBLISH_INTERVAL_NANOS = 20_000_000L;
+
+    /**
+     * Этот внутренний класс выполняет поиск пути в фоновом потоке. События ячеек
+     * накапливаются в порции и отправляются в поток событий Swing через
+     * <code>publish</code>; каждое событие - это номер ячейки <code>y * width + x</code>,
+     * сдвинутый на бит влево, с единицей в младшем бите для раскрытых ячеек.
+     * При отмене поиск прерывается на следующей раскрытой ячейке.
+     **/
+    private class SearchWorker extends SwingWorker<Waypoint, int[]> implements SearchListener
+    {
+        /** Стоимости ячеек карты на момент запуска поиска **/
+        private final int[] costs;
+
+        /** Текущая порция событий ячеек **/
+        private int[] batch = new int[PUBLISH_BATCH];
+        private int batchSize;
+
+        /** Время отправки предыдущей порции **/
+        private long lastPublish = System.nanoTime();
+
+        SearchWorker(int[] costs)
+        {
+            this.costs = costs;
+        }
+
+        /** Переносим состояние ячеек на карту и ищем путь; выполняется в фоновом потоке **/
+        protected Waypoint doInBackground()
+        {
+            // Неизменившиеся ячейки не меняют версию карты
+            for (int y = 0; y < height; y++)
+            {
+                for (int x = 0; x < width; x++)
+                    map.setCellValue(x, y, costs[y * width + x]);
+            }
+
+            // Повторный поиск учитывает только ячейки, измененные с прошлого раза
+            planner.setSearchListener(this);
+            try
+            {
+                Waypoint wp = planner.computePath();
+                flush();
+                return wp;
+            }
+            finally
+            {
+                planner.setSearchListener(null);
+            }
+        }
+
+        public void searchFinished(SearchStats stats)
+        {
+            // Итоги поиска не отображаются
+        }
+
+        public void cellOpened(int x, int y)
+        {
+            add((y * width + x) << 1);
+        }
+
+        public void cellExpanded(int x, int y)
+        {
+            if (isCancelled())
+                throw new CancellationException();
+
+            add(((y * width + x) << 1) | 1);
+        }
+
+        /** Добавляем событие в порцию и отправляем порцию, если пора **/
+        private void add(int event)
+        {
+            batch[batchSize++] = event;
+
+            if (batchSize == batch.length || System.nanoTime() - lastPublish >= PUBLISH_INTERVAL_NANOS)
+                flush();
+        }
+
+        /** Отправляем накопленную порцию в поток событий Swing **/
+        private void flush()
+        {
+            if (batchSize > 0)
+                publish(Arrays.copyOf(batch, batchSize));
+
+            batchSize = 0;
+            lastPublish = System.nanoTime();
+        }
+
+        /** Выводим порции волнового фронта на карту; выполняется в потоке событий Swing **/
+        protected void process(List<int[]> batches)
+        {
+            if (isCancelled())
+                return;
 
+            for (int[] events : batches)
+            {
+                for (int event : events)
+                {
+                    int node = event >>> 1;
+                    if ((event & 1) != 0)
+                        mapCanvas.setClosed(node % width, node / width, true);
+                    else
+                        mapCanvas.setOpen(node % width, node / width, true);
+                }
+            }
+        }
+
+        /** Показываем найденный путь; выполняется в потоке событий Swing **/
+        protected void done()
+        {
+            if (worker == this)
+                worker = null;
+
+            if (isCancelled())
+                return;
+
+            Waypoint wp;
+            try
+            {
+                wp = get();
+            }
+            catch (InterruptedException | ExecutionException e)
+            {
+                throw new IllegalStateException("path search failed", e);
+            }
+
+            // Если путь найден, помечаем все ячейки пути
+            while (wp != null)
+            {
+                Location loc = wp.getLocation();
+                mapCanvas.setPath(loc.xCoord, loc.yCoord, true);
+
+                wp = wp.getPrevious();
+            }
+        }
+    }
+
+    /**
+     * Этот внутренний класс обрабатывает события мыши на карте: нажатие меняет
+     * проходимость ячейки под указателем, а перетаскивание распространяет
+     * это изменение на все ячейки, через которые прошел указатель.
+     **/
+    private class MapCellHandler extends MouseAdapter
+    {
         /**
         * Это значение записывает, делаем ли мы ячейки проходимыми или
         * непроходимыми. Зависит от исходного состояния ячейки, в которой была запущена операция.
          **/
         private boolean makePassable;
 
+        /** Ячейка, в которой указатель был в последний раз, или -1 **/
+        private int lastX = -1, lastY = -1;
+
         /** Инициилизация операции модификации **/
         public void mousePressed(MouseEvent e)
         {
-            modifying = true;
+            int x = mapCanvas.cellX(e.getX());
+            int y = mapCanvas.cellY(e.getY());
+            if (x < 0 || y < 0)
+                return;
 
-            JMapCell cell = (JMapCell) e.getSource();
+            // Карта меняется, поэтому результат идущего поиска уже не нужен
+            cancelSearch();
 
             // Если текущая ячейка проходима, то мы делаем ее
             // непроходимой; если текущая ячейка непроходима, то делаем проходимой.
+            makePassable = !mapCanvas.isPassable(x, y);
+            modify(x, y);
 
-            makePassable = !cell.isPassable();
-
-            cell.setPassable(makePassable);
+            lastX = x;
+            lastY = y;
         }
 
         /** Конец операции модификации **/
         public void mouseReleased(MouseEvent e)
         {
-            modifying = false;
+            lastX = -1;
+            lastY = -1;
         }
 
         /**
-         * Если мышь была нажата, то операция модификации продолжится в новой ячейке.
+         * Если мышь была нажата, то операция модификации продолжится во всех ячейках
+         * отрезка от предыдущего положения указателя до текущего
          **/
-        public void mouseEntered(MouseEvent e)
+        public void mouseDragged(MouseEvent e)
         {
-            if (modifying)
+            if (lastX < 0)
+                return;
+
+            // Указатель мог выйти за край карты; берем ближайшую к нему ячейку
+            int size = mapCanvas.getCellSize();
+            int x = Math.max(0, Math.min(width - 1, Math.floorDiv(e.getX(), size)));
+            int y = Math.max(0, Math.min(height - 1, Math.floorDiv(e.getY(), size)));
+
+            // Быстрое движение мыши пропускает ячейки, поэтому проходим отрезок
+            // алгоритмом Брезенхэма
+            int dx = Math.abs(x - lastX), sx = lastX < x ? 1 : -1;
+            int dy = -Math.abs(y - lastY), sy = lastY < y ? 1 : -1;
+            int err = dx + dy;
+            int cx = lastX, cy = lastY;
+            while (true)
             {
-                JMapCell cell = (JMapCell) e.getSource();
-                cell.setPassable(makePassable);
+                modify(cx, cy);
+                if (cx == x && cy == y)
+                    break;
+
+                int e2 = 2 * err;
+                if (e2 >= dy)
+                {
+                    err += dy;
+                    cx += sx;
+                }
+                if (e2 <= dx)
+                {
+                    err += dx;
+                    cy += sy;
+                }
             }
-        }
 
-        /**Не требуется для этого обработчика**/
-        public void mouseExited(MouseEvent e)
-        {
-            //игнорируем
+            lastX = x;
+            lastY = y;
         }
 
-        /**Не требуется для этого обработчика**/
-        public void mouseClicked(MouseEvent e)
+        /** Меняем проходимость ячейки; начало и конец пути остаются свободными **/
+        private void modify(int x, int y)
         {
-            //это тоже игнорируем
+            if ((x == startLoc.xCoord && y == startLoc.yCoord) ||
+                    (x == finishLoc.xCoord && y == finishLoc.yCoord))
+                return;
+
+            mapCanvas.setPassable(x, y, makePassable);
         }
     }
 
@@ -106,6 +318,11 @@ public class AStarApp {
 
         startLoc = new Location(2, h / 2);
         finishLoc = new Location(w - 3, h / 2);
+
+        map = new Map2D(width, height);
+        map.setStart(startLoc);
+        map.setFinish(finishLoc);
+        planner = new IncrementalPathfinder(map);
     }
 
 
@@ -117,37 +334,16 @@ public class AStarApp {
 
         contentPane.setLayout(new BorderLayout());
 
-        GridBagLayout gbLayout = new GridBagLayout();
-        GridBagConstraints gbConstraints = new GridBagConstraints();
-        gbConstraints.fill = GridBagConstraints.BOTH;
-        gbConstraints.weightx = 1;
-        gbConstraints.weighty = 1;
-        gbConstraints.insets.set(0, 0, 1, 1);
-
-        JPanel mapPanel = new JPanel(gbLayout);
-        mapPanel.setBackground(Color.GRAY);
-
-        mapCells = new JMapCell[width][height];
+        // Один компонент рисует всю карту; большие карты прокручиваются
+        mapCanvas = new JMapCanvas(width, height);
 
         MapCellHandler cellHandler = new MapCellHandler();
+        mapCanvas.addMouseListener(cellHandler);
+        mapCanvas.addMouseMotionListener(cellHandler);
 
-        for (int y = 0; y < height; y++)
-        {
-            for (int x = 0; x < width; x++)
-            {
-                mapCells[x][y] = new JMapCell();
-
-                gbConstraints.gridx = x;
-                gbConstraints.gridy = y;
-
-                gbLayout.setConstraints(mapCells[x][y], gbConstraints);
-
-                mapPanel.add(mapCells[x][y]);
-                mapCells[x][y].addMouseListener(cellHandler);
-            }
-        }
-
-        contentPane.add(mapPanel, BorderLayout.CENTER);
+        JScrollPane scrollPane = new JScrollPane(mapCanvas);
+        scrollPane.getViewport().setBackground(Color.GRAY);
+        contentPane.add(scrollPane, BorderLayout.CENTER);
 
         JButton findPathButton = new JButton("Find Path");
         findPathButton.addActionListener(new ActionListener() {
@@ -159,8 +355,8 @@ public class AStarApp {
         frame.pack();
         frame.setVisible(true);
 
-        mapCells[startLoc.xCoord][startLoc.yCoord].setEndpoint(true);
-        mapCells[finishLoc.xCoord][finishLoc.yCoord].setEndpoint(true);
+        mapCanvas.setEndpoint(startLoc.xCoord, startLoc.yCoord, true);
+        mapCanvas.setEndpoint(finishLoc.xCoord, finishLoc.yCoord, true);
     }
 
 
@@ -174,48 +370,40 @@ public class AStarApp {
 
 
     /**
-    * Этот вспомогательный метод пытается вычислить путь, используя текущее состояние карты. 
+    * Этот вспомогательный метод запускает поиск пути по текущему состоянию карты
+    * в фоновом потоке. Идущий поиск при этом отменяется.
      **/
     private void findAndShowPath()
     {
+        cancelSearch();
 
-        Map2D map = new Map2D(width, height);
-        map.setStart(startLoc);
-        map.setFinish(finishLoc);
+        // Запоминаем состояние ячеек; карта будет изменена уже в фоновом потоке
+        worker = new SearchWorker(mapCanvas.copyCellValues());
+        searchExecutor.execute(worker);
+    }
 
-        for (int y = 0; y < height; y++)
+    /** Отменяем идущий поиск и убираем с карты его отметки **/
+    private void cancelSearch()
+    {
+        if (worker != null)
         {
-            for (int x = 0; x < width; x++)
-            {
-                mapCells[x][y].setPath(false);
-
-                if (mapCells[x][y].isPassable())
-                    map.setCellValue(x, y, 0);
-                else
-                    map.setCellValue(x, y, Integer.MAX_VALUE);
-            }
+            worker.cancel(false);
+            worker = null;
         }
 
-        // Пробуем вычислить путь. Если вычисляется, помечаем все ячейки
-        // пути.
-
-        Waypoint wp = AStarPathfinder.computePath(map);
-
-        while (wp != null)
-        {
-            Location loc = wp.getLocation();
-            mapCells[loc.xCoord][loc.yCoord].setPath(true);
-
-            wp = wp.getPrevious();
-        }
+        mapCanvas.clearSearchState();
     }
 
 
     /**
-     * Точка входа
+     * Точка входа. Необязательные аргументы - ширина и высота карты, например
+     * <code>java AStarApp 1000 1000</code>; по умолчанию карта 40 x 30.
      **/
     public static void main(String[] args) {
-        AStarApp app = new AStarApp(40, 30);
+        int w = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int h = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+
+        AStarApp app = new AStarApp(w, h);
         app.start();
     }
 }
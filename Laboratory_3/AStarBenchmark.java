@@ -0,0 +1,1339 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Набор простых микро-бенчмарков для классов поиска пути A*.
+ * Запуск: <code>java AStarBenchmark [имя теста]</code>. Каждый тест печатает
+ * таблицу результатов в стандартный вывод.
+ **/
+public class AStarBenchmark
+{
+    /** Количество прогонов каждого замера; в таблицу попадает лучший **/
+    private static final int RUNS = 5;
+
+    /** Количество прогонов для разогрева JIT перед замером поиска **/
+    private static final int WARMUP = 5;
+
+    /** Точка входа **/
+    public static void main(String[] args)
+    {
+        String name = args.length > 0 ? args[0] : "openset";
+
+        if (name.equals("openset"))
+            benchOpenSetInserts();
+        else if (name.equals("hash"))
+            benchLocationHashing();
+        else if (name.equals("jps"))
+            benchJumpPoints();
+        else if (name.equals("hpa"))
+            benchHierarchical();
+        else if (name.equals("batch"))
+            benchBatch();
+        else if (name.equals("bidir"))
+            benchBidirectional();
+        else if (name.equals("replan"))
+            benchReplanning();
+        else if (name.equals("closed"))
+            benchClosedSet();
+        else if (name.equals("mapio"))
+            benchMapIO();
+        else if (name.equals("alt"))
+            benchLandmarks();
+        else if (name.equals("heuristic"))
+            benchHeuristics();
+        else if (name.equals("stats"))
+            benchStats();
+        else if (name.equals("coop"))
+            benchCooperative();
+        else if (name.equals("flow"))
+            benchFlowField();
+        else if (name.equals("parallel"))
+            benchParallel(args.length > 1 ? Integer.parseInt(args[1]) : 2000);
+        else if (name.equals("compact"))
+            benchCompaction();
+        else if (name.equals("theta"))
+            benchAnyAngle();
+        else if (name.equals("reserve"))
+            benchReservationReuse();
+        else
+            System.err.println("unknown benchmark: " + name + "; expected one of: openset, hash, jps, hpa, batch, bidir, replan, closed, mapio, alt, heuristic, stats, coop, flow, parallel, compact, theta, reserve");
+    }
+
+    /**
+     * Измеряем скорость вставки в набор открытых путевых точек
+     * при росте набора от 1 тысячи до 1 миллиона элементов. Время на одну вставку
+     * должно оставаться примерно постоянным.
+     **/
+    private static void benchOpenSetInserts()
+    {
+        int side = 1000;
+        Map2D map = new Map2D(side, side);
+        Random random = new Random(42);
+
+        System.out.println("open set size    ns/insert    ns/duplicate");
+
+        for (int n = 1000; n <= side * side; n *= 10)
+        {
+            // Путевые точки создаются заранее, чтобы не измерять выделение памяти
+            Waypoint[] points = new Waypoint[n];
+            Waypoint[] duplicates = new Waypoint[n];
+            for (int i = 0; i < n; i++)
+            {
+                Location loc = new Location(i % side, i / side);
+                points[i] = new Waypoint(loc, null);
+                points[i].setCosts(random.nextFloat() * 1000, random.nextFloat() * 1000);
+
+                duplicates[i] = new Waypoint(new Location(loc.xCoord, loc.yCoord), null);
+                duplicates[i].setCosts(points[i].getPreviousCost() + 1, 0);
+            }
+
+            long bestInsert = Long.MAX_VALUE;
+            long bestDuplicate = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++)
+            {
+                AStarState state = new AStarState(map);
+
+                long t0 = System.nanoTime();
+                for (int i = 0; i < n; i++)
+                    state.addOpenWaypoint(points[i]);
+                long t1 = System.nanoTime();
+
+                // Повторная вставка более дорогих точек проверяет путь поиска дубликата
+                for (int i = 0; i < n; i++)
+                    state.addOpenWaypoint(duplicates[i]);
+                long t2 = System.nanoTime();
+
+                if (state.numOpenWaypoints() != n)
+                    throw new IllegalStateException("unexpected open set size " + state.numOpenWaypoints());
+
+                bestInsert = Math.min(bestInsert, t1 - t0);
+                bestDuplicate = Math.min(bestDuplicate, t2 - t1);
+            }
+
+            System.out.printf("%13d %12.1f %15.1f%n", n,
+                    (double) bestInsert / n, (double) bestDuplicate / n);
+        }
+    }
+
+    /**
+     * Местоположение с прежней хэш-функцией <code>(x + 1) * 100 + y</code>,
+     * используемое для сравнения
+     **/
+    private static class LegacyLocation extends Location
+    {
+        LegacyLocation(int x, int y)
+        {
+            super(x, y);
+        }
+
+        public int hashCode()
+        {
+            return (xCoord + 1) * 100 + yCoord;
+        }
+    }
+
+    /**
+     * Сравниваем распределение по корзинам и время поиска для прежней и новой
+     * хэш-функций местоположения, а также для таблицы с упакованными ключами.
+     * Проверяются случайные ячейки карты 10000 x 10000 и плотный блок 1000 x 1000
+     * в её середине (так выглядит волновой фронт поиска A*).
+     **/
+    private static void benchLocationHashing()
+    {
+        int side = 10000;
+        int n = 1000000;
+        Random random = new Random(42);
+
+        // Выбираем n различных случайных ячеек карты
+        LongHashMap<Boolean> chosen = new LongHashMap<Boolean>(n);
+        long[] scattered = new long[n];
+        for (int i = 0; i < n; )
+        {
+            long key = Location.pack(random.nextInt(side), random.nextInt(side));
+            if (chosen.put(key, Boolean.TRUE) == null)
+                scattered[i++] = key;
+        }
+
+        long[] block = new long[n];
+        for (int i = 0; i < n; i++)
+            block[i] = Location.pack(side / 2 - 500 + i % 1000, side / 2 - 500 + i / 1000);
+
+        System.out.println("cells    hash          used buckets   max chain   avg chain   ns/lookup");
+        benchHashing("random", scattered);
+        benchHashing("block", block);
+    }
+
+    /** Печатаем строки таблицы хэширования для одного набора ячеек **/
+    private static void benchHashing(String cells, long[] keys)
+    {
+        int n = keys.length;
+        Location[] legacy = new Location[n];
+        Location[] current = new Location[n];
+        for (int i = 0; i < n; i++)
+        {
+            int x = Location.unpackX(keys[i]);
+            int y = Location.unpackY(keys[i]);
+            legacy[i] = new LegacyLocation(x, y);
+            current[i] = new Location(x, y);
+        }
+
+        // Корзины считаются так же, как в HashMap: таблица из 2^21 ячеек
+        // и перемешивание старших бит хэша
+        int buckets = 1 << 21;
+        printHashRow(cells, "legacy", legacy, buckets, timeHashMapLookups(legacy));
+        printHashRow(cells, "mixed", current, buckets, timeHashMapLookups(current));
+
+        LongHashMap<Location> packed = new LongHashMap<Location>(n);
+        for (int i = 0; i < n; i++)
+            packed.put(keys[i], current[i]);
+
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++)
+        {
+            int found = 0;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < n; i++)
+            {
+                if (packed.get(keys[i]) != null)
+                    found++;
+            }
+            best = Math.min(best, System.nanoTime() - t0);
+            if (found != n)
+                throw new IllegalStateException("lost keys: " + (n - found));
+        }
+        System.out.printf("%-8s %-13s %12s %11s %11s %11.1f%n", cells, "packed long",
+                "-", "-", "-", (double) best / n);
+    }
+
+    /** Печатаем строку таблицы распределения хэшей **/
+    private static void printHashRow(String cells, String name, Location[] locations,
+            int buckets, double nsPerLookup)
+    {
+        int[] counts = new int[buckets];
+        for (Location loc : locations)
+        {
+            int h = loc.hashCode();
+            counts[(h ^ (h >>> 16)) & (buckets - 1)]++;
+        }
+
+        int used = 0;
+        int max = 0;
+        for (int c : counts)
+        {
+            if (c > 0)
+                used++;
+            max = Math.max(max, c);
+        }
+
+        System.out.printf("%-8s %-13s %12d %11d %11.2f %11.1f%n", cells, name, used, max,
+                (double) locations.length / used, nsPerLookup);
+    }
+
+    /** Измеряем среднее время поиска в HashMap для указанных местоположений **/
+    private static double timeHashMapLookups(Location[] locations)
+    {
+        HashMap<Location, Location> map = new HashMap<Location, Location>(locations.length * 2);
+        for (Location loc : locations)
+            map.put(loc, loc);
+
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++)
+        {
+            int found = 0;
+            long t0 = System.nanoTime();
+            for (Location loc : locations)
+            {
+                if (map.get(loc) != null)
+                    found++;
+            }
+            best = Math.min(best, System.nanoTime() - t0);
+            if (found != locations.length)
+                throw new IllegalStateException("lost keys: " + (locations.length - found));
+        }
+        return (double) best / locations.length;
+    }
+
+    /**
+     * Создаем однородную карту, в которой указанная доля ячеек непроходима.
+     * Начало и конец располагаются в противоположных углах и всегда свободны.
+     **/
+    private static Map2D obstacleMap(int side, double density, long seed)
+    {
+        Random random = new Random(seed);
+        Map2D map = new Map2D(side, side);
+
+        for (int y = 0; y < side; y++)
+        {
+            for (int x = 0; x < side; x++)
+            {
+                if (random.nextDouble() < density)
+                    map.setCellValue(x, y, Integer.MAX_VALUE);
+            }
+        }
+
+        map.setStart(new Location(0, 0));
+        map.setFinish(new Location(side - 1, side - 1));
+        map.setCellValue(0, 0, 0);
+        map.setCellValue(side - 1, side - 1, 0);
+        return map;
+    }
+
+    /**
+     * Сравниваем обычный A* и поиск с точками прыжка на одних и тех же однородных картах:
+     * количество раскрытых ячеек и время одного поиска
+     **/
+    private static void benchJumpPoints()
+    {
+        System.out.println("map                  mode    expanded      cost     ms/query");
+
+        benchJumpPoints("open 1000", obstacleMap(1000, 0, 1));
+        benchJumpPoints("obstacles 10% 1000", obstacleMap(1000, 0.1, 2));
+        benchJumpPoints("obstacles 30% 1000", obstacleMap(1000, 0.3, 3));
+    }
+
+    /** Печатаем строки сравнения A* и поиска с точками прыжка для одной карты **/
+    private static void benchJumpPoints(String name, Map2D map)
+    {
+        benchGridSearch(name, "A*", new GridPathfinder(), map);
+        benchGridSearch(name, "JPS", new JumpPointPathfinder(), map);
+    }
+
+    /** Замеряем один вариант поиска по сетке на указанной карте **/
+    private static void benchGridSearch(String name, String mode, GridPathfinder finder, Map2D map)
+    {
+        Location s = map.getStart();
+        Location f = map.getFinish();
+
+        for (int run = 0; run < WARMUP; run++)
+            finder.findPath(map, s.xCoord, s.yCoord, f.xCoord, f.yCoord);
+
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++)
+        {
+            long t0 = System.nanoTime();
+            finder.findPath(map, s.xCoord, s.yCoord, f.xCoord, f.yCoord);
+            best = Math.min(best, System.nanoTime() - t0);
+        }
+
+        System.out.printf("%-20s %-5s %11d %9.1f %12.2f%n", name, mode,
+                finder.getExpandedCount(), finder.getPathCost(), best / 1e6);
+    }
+
+    /**
+     * Сравниваем время запросов A* и иерархического поиска на одной карте 1000 x 1000
+     * со случайными препятствиями, а также время пересчета после изменения одной ячейки
+     **/
+    private static void benchHierarchical()
+    {
+        int side = 1000;
+        int queries = 200;
+        Map2D map = obstacleMap(side, 0.2, 4);
+        Random random = new Random(5);
+
+        // Концы запросов выбираются только среди проходимых ячеек
+        int[] points = new int[queries * 4];
+        for (int i = 0; i < points.length; i += 2)
+        {
+            do
+            {
+                points[i] = random.nextInt(side);
+                points[i + 1] = random.nextInt(side);
+            }
+            while (!map.isPassable(points[i], points[i + 1]));
+        }
+
+        long t0 = System.nanoTime();
+        HierarchicalPathfinder hpa = new HierarchicalPathfinder(map);
+        int nodes = hpa.getAbstractNodeCount();
+        long build = System.nanoTime() - t0;
+
+        GridPathfinder astar = new GridPathfinder();
+        double astarCost = 0;
+        double hpaCost = 0;
+
+        t0 = System.nanoTime();
+        for (int q = 0; q < queries; q++)
+        {
+            if (astar.findPath(map, points[4 * q], points[4 * q + 1], points[4 * q + 2], points[4 * q + 3]))
+                astarCost += astar.getPathCost();
+        }
+        long astarTime = System.nanoTime() - t0;
+
+        t0 = System.nanoTime();
+        for (int q = 0; q < queries; q++)
+        {
+            if (hpa.findPath(points[4 * q], points[4 * q + 1], points[4 * q + 2], points[4 * q + 3]))
+                hpaCost += hpa.getPathCost();
+        }
+        long hpaTime = System.nanoTime() - t0;
+
+        // Одно изменение ячейки пересчитывает только её кластер
+        t0 = System.nanoTime();
+        map.setCellValue(side / 2, side / 2, Integer.MAX_VALUE);
+        hpa.getAbstractNodeCount();
+        long update = System.nanoTime() - t0;
+
+        System.out.printf("abstract nodes: %d, build: %.1f ms, single cell update: %.3f ms%n",
+                nodes, build / 1e6, update / 1e6);
+        System.out.printf("A*:   %.2f ms/query%n", astarTime / 1e6 / queries);
+        System.out.printf("HPA*: %.2f ms/query, path cost %.2f%% above optimal%n",
+                hpaTime / 1e6 / queries, (hpaCost / astarCost - 1) * 100);
+    }
+
+    /**
+     * Замеряем пропускную способность пакетного поиска при разном количестве потоков,
+     * от одного до числа доступных процессоров, на одном наборе запросов
+     **/
+    private static void benchBatch()
+    {
+        int side = 1000;
+        int queries = 400;
+        Map2D map = obstacleMap(side, 0.2, 6);
+        Random random = new Random(7);
+
+        ArrayList<PathQuery> batch = new ArrayList<PathQuery>(queries);
+        for (int q = 0; q < queries; q++)
+        {
+            batch.add(new PathQuery(randomPassable(map, random), randomPassable(map, random)));
+        }
+
+        System.out.println("threads    queries/s    speedup");
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        double single = 0;
+        for (int threads = 1; ; threads = Math.min(threads * 2, cores))
+        {
+            BatchPathfinder finder = new BatchPathfinder(threads);
+            finder.findPaths(map, batch);
+
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++)
+            {
+                long t0 = System.nanoTime();
+                finder.findPaths(map, batch);
+                best = Math.min(best, System.nanoTime() - t0);
+            }
+            finder.shutdown();
+
+            double rate = queries / (best / 1e9);
+            if (threads == 1)
+                single = rate;
+            System.out.printf("%7d %12.1f %10.2f%n", threads, rate, rate / single);
+
+            if (threads == cores)
+                break;
+        }
+    }
+
+    /** Выбираем случайную проходимую ячейку карты **/
+    private static Location randomPassable(Map2D map, Random random)
+    {
+        int x, y;
+        do
+        {
+            x = random.nextInt(map.getWidth());
+            y = random.nextInt(map.getHeight());
+        }
+        while (!map.isPassable(x, y));
+
+        return new Location(x, y);
+    }
+
+    /**
+     * Сравниваем обычный и двунаправленный A* на широких картах, где путь
+     * проходит через всю карту: количество раскрытых ячеек, стоимость и время поиска
+     **/
+    private static void benchBidirectional()
+    {
+        System.out.println("map                  mode    expanded      cost     ms/query");
+
+        benchBidirectional("open 4000x200", wideMap(4000, 200, 0, 0, 8));
+        benchBidirectional("obstacles 4000x200", wideMap(4000, 200, 0.2, 0, 9));
+        benchBidirectional("weighted 4000x200", wideMap(4000, 200, 0.2, 5, 10));
+        benchBidirectional("corridors 4000x200", corridorMap(4000, 200, 40));
+        benchBidirectional("weighted 2000x2000", wideMap(2000, 2000, 0.2, 5, 11));
+        benchBidirectional("costs 2000x2000", wideMap(2000, 2000, 0, 20, 12));
+    }
+
+    /** Печатаем строки сравнения обычного и двунаправленного A* для одной карты **/
+    private static void benchBidirectional(String name, Map2D map)
+    {
+        benchGridSearch(name, "A*", new GridPathfinder(), map);
+
+        Location s = map.getStart();
+        Location f = map.getFinish();
+        BidirectionalPathfinder finder = new BidirectionalPathfinder();
+
+        for (int run = 0; run < WARMUP; run++)
+            finder.findPath(map, s.xCoord, s.yCoord, f.xCoord, f.yCoord);
+
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++)
+        {
+            long t0 = System.nanoTime();
+            finder.findPath(map, s.xCoord, s.yCoord, f.xCoord, f.yCoord);
+            best = Math.min(best, System.nanoTime() - t0);
+        }
+
+        System.out.printf("%-20s %-5s %11d %9.1f %12.2f%n", name, "BiA*",
+                finder.getExpandedCount(), finder.getPathCost(), best / 1e6);
+    }
+
+    /**
+     * Создаем широкую карту с указанной долей непроходимых ячеек; остальные ячейки
+     * получают случайную стоимость от 0 до <code>maxCost</code>. Начало и конец
+     * располагаются посередине левого и правого краев.
+     **/
+    static Map2D wideMap(int width, int height, double density, int maxCost, long seed)
+    {
+        Random random = new Random(seed);
+        Map2D map = new Map2D(width, height);
+
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                if (random.nextDouble() < density)
+                    map.setCellValue(x, y, Integer.MAX_VALUE);
+                else if (maxCost > 0)
+                    map.setCellValue(x, y, random.nextInt(maxCost + 1));
+            }
+        }
+
+        map.setStart(new Location(0, height / 2));
+        map.setFinish(new Location(width - 1, height / 2));
+        map.setCellValue(0, height / 2, 0);
+        map.setCellValue(width - 1, height / 2, 0);
+        return map;
+    }
+
+    /**
+     * Создаем широкую карту из вертикальных стен через каждые <code>spacing</code> ячеек.
+     * Проходы в соседних стенах расположены у противоположных краев, поэтому путь
+     * от левого края к правому идет змейкой.
+     **/
+    private static Map2D corridorMap(int width, int height, int spacing)
+    {
+        Map2D map = new Map2D(width, height);
+
+        for (int x = spacing, wall = 0; x < width - 1; x += spacing, wall++)
+        {
+            int gap = (wall % 2 == 0) ? height - 1 : 0;
+            for (int y = 0; y < height; y++)
+            {
+                if (y != gap)
+                    map.setCellValue(x, y, Integer.MAX_VALUE);
+            }
+        }
+
+        map.setStart(new Location(0, height / 2));
+        map.setFinish(new Location(width - 1, height / 2));
+        return map;
+    }
+
+    /**
+     * Сравниваем повторный поиск после изменения карты: полный поиск A* заново
+     * и инкрементальный D* Lite. В каждом раунде блокируется указанное количество
+     * ячеек на текущем пути и столько же случайных ячеек в остальной карте.
+     **/
+    private static void benchReplanning()
+    {
+        int side = 1000;
+        int rounds = 20;
+        Map2D map = wideMap(side, side, 0.2, 3, 13);
+        Location s = map.getStart();
+        Location f = map.getFinish();
+
+        System.out.println("changes   A* expanded   A* ms    D* expanded   D* ms");
+
+        for (int changes = 1; changes <= 100; changes *= 10)
+        {
+            Random random = new Random(changes);
+            IncrementalPathfinder planner = new IncrementalPathfinder(map);
+            GridPathfinder astar = new GridPathfinder();
+            planner.findPath(s.xCoord, s.yCoord, f.xCoord, f.yCoord);
+
+            long astarExpanded = 0, astarTime = 0;
+            long plannerExpanded = 0, plannerTime = 0;
+
+            for (int round = 0; round < rounds; round++)
+            {
+                int length = planner.getPathLength();
+                for (int c = 0; c < changes && length > 2; c++)
+                {
+                    // Концы пути не трогаем, иначе путь может исчезнуть совсем
+                    int i = 1 + random.nextInt(length - 2);
+                    map.setCellValue(planner.getPathX(i), planner.getPathY(i), Integer.MAX_VALUE);
+
+                    Location other = randomPassable(map, random);
+                    if (!other.equals(s) && !other.equals(f))
+                        map.setCellValue(other.xCoord, other.yCoord, Integer.MAX_VALUE);
+                }
+
+                long t0 = System.nanoTime();
+                astar.findPath(map, s.xCoord, s.yCoord, f.xCoord, f.yCoord);
+                long t1 = System.nanoTime();
+                planner.findPath(s.xCoord, s.yCoord, f.xCoord, f.yCoord);
+                long t2 = System.nanoTime();
+
+                if (Math.abs(astar.getPathCost() - planner.getPathCost()) > 1e-3f * astar.getPathCost())
+                    throw new IllegalStateException("replanned cost " + planner.getPathCost() +
+                            " differs from " + astar.getPathCost());
+
+                astarExpanded += astar.getExpandedCount();
+                astarTime += t1 - t0;
+                plannerExpanded += planner.getExpandedCount();
+                plannerTime += t2 - t1;
+            }
+            planner.dispose();
+
+            System.out.printf("%7d %13d %7.2f %14d %7.2f%n", changes,
+                    astarExpanded / rounds, astarTime / 1e6 / rounds,
+                    plannerExpanded / rounds, plannerTime / 1e6 / rounds);
+        }
+    }
+
+    /**
+     * Состояние A* без проверки закрытых местоположений; так вел себя поиск,
+     * пока isLocationClosed не проверял закрытый набор
+     **/
+    private static class NoClosedSetState extends AStarState
+    {
+        NoClosedSetState(Map2D map)
+        {
+            super(map);
+        }
+
+        public boolean isLocationClosed(Location loc)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Проверяем, что поиск A* по путевым точкам не раскрывает ячейки повторно:
+     * сравниваем количество раскрытий, повторных раскрытий и время поиска
+     * с закрытым набором и без него. Повторных раскрытий с закрытым набором
+     * быть не должно, иначе бенчмарк завершается исключением. Без закрытого набора
+     * поиск раскрывает ячейки десятки раз, поэтому карты здесь небольшие.
+     **/
+    private static void benchClosedSet()
+    {
+        System.out.println("map                  closed set   expanded  re-expanded      cost     ms/query");
+
+        benchClosedSet("weighted 100", wideMap(100, 100, 0.2, 5, 14));
+        benchClosedSet("weighted 200", wideMap(200, 200, 0.2, 5, 15));
+        benchClosedSet("costs 200", wideMap(200, 200, 0, 20, 16));
+    }
+
+    /** Печатаем строки сравнения для одной карты **/
+    private static void benchClosedSet(String name, Map2D map)
+    {
+        for (int mode = 0; mode < 2; mode++)
+        {
+            boolean withClosedSet = (mode == 0);
+            AStarState state = null;
+            Waypoint path = null;
+
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < WARMUP + RUNS; run++)
+            {
+                state = withClosedSet ? new AStarState(map) : new NoClosedSetState(map);
+
+                long t0 = System.nanoTime();
+                path = AStarPathfinder.computePath(state);
+                if (run >= WARMUP)
+                    best = Math.min(best, System.nanoTime() - t0);
+            }
+
+            if (withClosedSet && state.numReexpandedWaypoints() != 0)
+                throw new IllegalStateException(name + ": " + state.numReexpandedWaypoints() +
+                        " cells were expanded more than once");
+
+            System.out.printf("%-20s %-10s %10d %12d %9.1f %12.2f%n", name,
+                    withClosedSet ? "bitset" : "none", state.numClosedWaypoints(),
+                    state.numReexpandedWaypoints(), path == null ? 0 : path.getPreviousCost(),
+                    best / 1e6);
+        }
+    }
+
+    /**
+     * Замеряем сохранение и загрузку карты 10000 x 10000 (100 миллионов ячеек)
+     * в двоичном формате {@link MapIO}: открытой карты, карты с препятствиями
+     * и карты со случайными стоимостями. Требуется около 2 ГБ кучи (-Xmx2g).
+     **/
+    private static void benchMapIO()
+    {
+        int side = 10000;
+
+        System.out.println("map                  file MB    save ms    load ms");
+
+        try
+        {
+            benchMapIO("open", new Map2D(side, side));
+            benchMapIO("obstacles 20%", obstacleMap(side, 0.2, 17));
+            benchMapIO("costs 0..9", wideMap(side, side, 0, 9, 18));
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Печатаем строку замера сохранения и загрузки одной карты **/
+    private static void benchMapIO(String name, Map2D map) throws IOException
+    {
+        Path file = Files.createTempFile("map", ".rmap");
+        try
+        {
+            long bestSave = Long.MAX_VALUE;
+            long bestLoad = Long.MAX_VALUE;
+            for (int run = 0; run < 3; run++)
+            {
+                long t0 = System.nanoTime();
+                MapIO.save(map, file);
+                long t1 = System.nanoTime();
+                Map2D loaded = MapIO.load(file);
+                long t2 = System.nanoTime();
+
+                if (loaded.getCellValue(map.getWidth() - 1, map.getHeight() - 1) !=
+                        map.getCellValue(map.getWidth() - 1, map.getHeight() - 1))
+                    throw new IllegalStateException("loaded map differs from the saved one");
+
+                bestSave = Math.min(bestSave, t1 - t0);
+                bestLoad = Math.min(bestLoad, t2 - t1);
+            }
+
+            System.out.printf("%-20s %8.1f %10.1f %10.1f%n", name, Files.size(file) / 1e6,
+                    bestSave / 1e6, bestLoad / 1e6);
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Сравниваем A* с оценкой по прямому расстоянию и с эвристикой ALT
+     * для разного количества ориентиров: время вычисления таблиц, их размер
+     * и суммарное количество раскрытых ячеек на одних и тех же случайных запросах.
+     **/
+    private static void benchLandmarks()
+    {
+        System.out.println("map                  landmarks  build ms  table MB    expanded  total cost   ms/query");
+
+        benchLandmarks("weighted 500x500", wideMap(500, 500, 0.2, 20, 19));
+        benchLandmarks("costs 1000x1000", wideMap(1000, 1000, 0, 9, 20));
+        benchLandmarks("corridors 1000x200", corridorMap(1000, 200, 40));
+    }
+
+    /** Печатаем строки сравнения эвристик для одной карты **/
+    private static void benchLandmarks(String name, Map2D map)
+    {
+        int queries = 50;
+        Random random = new Random(21);
+        Location[] starts = new Location[queries];
+        Location[] finishes = new Location[queries];
+        for (int i = 0; i < queries; i++)
+        {
+            starts[i] = randomPassable(map, random);
+            finishes[i] = randomPassable(map, random);
+        }
+
+        GridPathfinder finder = new GridPathfinder();
+        int[] counts = { 0, 4, 8, 16 };
+        for (int count : counts)
+        {
+            long t0 = System.nanoTime();
+            LandmarkHeuristic landmarks = count > 0 ? new LandmarkHeuristic(map, count) : null;
+            long build = System.nanoTime() - t0;
+            finder.setHeuristic(landmarks);
+
+            long expanded = 0;
+            double cost = 0;
+            long t1 = System.nanoTime();
+            for (int i = 0; i < queries; i++)
+            {
+                if (finder.findPath(map, starts[i].xCoord, starts[i].yCoord,
+                        finishes[i].xCoord, finishes[i].yCoord))
+                    cost += finder.getPathCost();
+                expanded += finder.getExpandedCount();
+            }
+            long search = System.nanoTime() - t1;
+
+            double tableMB = 8.0 * count * map.getWidth() * map.getHeight() / 1e6;
+            System.out.printf("%-20s %9d %9.1f %9.1f %11d %11.1f %10.2f%n", name, count,
+                    build / 1e6, tableMB, expanded, cost, search / 1e6 / queries);
+        }
+    }
+
+    /**
+     * Сравниваем встроенные эвристики и множители взвешенного A* для восьми
+     * и четырех соседей: количество раскрытых ячеек, стоимость пути и время поиска
+     **/
+    private static void benchHeuristics()
+    {
+        System.out.println("map                  nbhd  heuristic  weight    expanded      cost     ms/query");
+
+        Map2D[] maps = { obstacleMap(1000, 0.2, 22), wideMap(1000, 1000, 0.2, 5, 23) };
+        String[] names = { "obstacles 1000", "weighted 1000" };
+
+        for (int i = 0; i < maps.length; i++)
+        {
+            benchHeuristic(names[i], maps[i], Neighbourhood.EIGHT, "euclid", GridHeuristic.EUCLIDEAN, 1);
+            benchHeuristic(names[i], maps[i], Neighbourhood.EIGHT, "octile", GridHeuristic.OCTILE, 1);
+            benchHeuristic(names[i], maps[i], Neighbourhood.EIGHT, "chebyshev", GridHeuristic.CHEBYSHEV, 1);
+            benchHeuristic(names[i], maps[i], Neighbourhood.EIGHT, "octile", GridHeuristic.OCTILE, 1.5f);
+            benchHeuristic(names[i], maps[i], Neighbourhood.EIGHT, "octile", GridHeuristic.OCTILE, 3);
+            benchHeuristic(names[i], maps[i], Neighbourhood.FOUR, "manhattan", GridHeuristic.MANHATTAN, 1);
+            benchHeuristic(names[i], maps[i], Neighbourhood.FOUR, "manhattan", GridHeuristic.MANHATTAN, 1.5f);
+        }
+    }
+
+    /** Печатаем строку замера одной эвристики **/
+    private static void benchHeuristic(String name, Map2D map, Neighbourhood neighbourhood,
+                                       String heuristicName, GridHeuristic heuristic, float weight)
+    {
+        GridPathfinder finder = new GridPathfinder();
+        finder.setNeighbourhood(neighbourhood);
+        finder.setHeuristic(heuristic);
+        finder.setHeuristicWeight(weight);
+
+        Location s = map.getStart();
+        Location f = map.getFinish();
+
+        for (int run = 0; run < WARMUP; run++)
+            finder.findPath(map, s.xCoord, s.yCoord, f.xCoord, f.yCoord);
+
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++)
+        {
+            long t0 = System.nanoTime();
+            finder.findPath(map, s.xCoord, s.yCoord, f.xCoord, f.yCoord);
+            best = Math.min(best, System.nanoTime() - t0);
+        }
+
+        System.out.printf("%-20s %4s  %-9s %6.1f %11d %9.1f %12.2f%n", name,
+                neighbourhood == Neighbourhood.FOUR ? "4" : "8", heuristicName, weight,
+                finder.getExpandedCount(), finder.getPathCost(), best / 1e6);
+    }
+
+    /**
+     * Замеряем стоимость сбора статистики: одни и те же случайные запросы
+     * к {@link AStarPathfinder#computePath(Map2D, GridHeuristic)} выполняются
+     * без слушателя и со слушателем {@link PathfinderStats}; затем печатаем
+     * собранную статистику и гистограмму времени.
+     **/
+    private static void benchStats()
+    {
+        Map2D map = wideMap(500, 500, 0.2, 5, 24);
+        Random random = new Random(25);
+        int queries = 200;
+        Location[] starts = new Location[queries];
+        Location[] finishes = new Location[queries];
+        for (int i = 0; i < queries; i++)
+        {
+            starts[i] = randomPassable(map, random);
+            finishes[i] = randomPassable(map, random);
+        }
+
+        PathfinderStats stats = new PathfinderStats();
+
+        System.out.println("listener        ms/query");
+        for (int run = 0; run < 3; run++)
+        {
+            AStarPathfinder.setSearchListener(SearchListener.NONE);
+            double off = timeQueries(map, starts, finishes);
+
+            stats.reset();
+            AStarPathfinder.setSearchListener(stats);
+            double on = timeQueries(map, starts, finishes);
+
+            System.out.printf("%-15s %8.3f%n%-15s %8.3f%n", "none", off, "PathfinderStats", on);
+        }
+        AStarPathfinder.setSearchListener(SearchListener.NONE);
+
+        System.out.printf("%nsearches %d, found %d, expanded %d, opened %d, improved %d, max open %d%n",
+                stats.getSearchCount(), stats.getFoundCount(), stats.getExpandedCount(),
+                stats.getOpenedCount(), stats.getImprovedCount(), stats.getMaxOpenSize());
+        System.out.printf("prepare %.1f ms, search %.1f ms, path %.1f ms, mean %.1f us, max %.1f us%n",
+                stats.getPrepareNanos() / 1e6, stats.getSearchNanos() / 1e6, stats.getPathNanos() / 1e6,
+                stats.getMeanMicros(), stats.getMaxMicros());
+
+        System.out.println("\ntime, us          searches");
+        long[] histogram = stats.getTimeHistogram();
+        for (int k = 0; k < histogram.length; k++)
+        {
+            if (histogram[k] > 0)
+                System.out.printf("< %-15d %8d%n", 1L << k, histogram[k]);
+        }
+    }
+
+    /** Возвращаем среднее время одного запроса в миллисекундах **/
+    private static double timeQueries(Map2D map, Location[] starts, Location[] finishes)
+    {
+        long t0 = System.nanoTime();
+        for (int i = 0; i < starts.length; i++)
+        {
+            map.setStart(starts[i]);
+            map.setFinish(finishes[i]);
+            AStarPathfinder.computePath(map, GridHeuristic.OCTILE);
+        }
+        return (System.nanoTime() - t0) / 1e6 / starts.length;
+    }
+
+    /**
+     * Замеряем кооперативное планирование: пути всё большего числа агентов
+     * планируются по очереди через общую таблицу резервирования, затем те же
+     * агенты планируются параллельно несколькими потоками на одной таблице
+     **/
+    private static void benchCooperative()
+    {
+        Map2D map = wideMap(200, 200, 0.15, 0, 26);
+        MapSnapshot snapshot = map.snapshot();
+        int horizon = 1000;
+
+        System.out.println("agents  threads   found  expanded  rejected  avoided  reservations        ms");
+        for (int agents : new int[] { 10, 50, 200 })
+        {
+            ArrayList<PathQuery> queries = agentQueries(map, agents, new Random(27));
+            for (int threads : new int[] { 1, 4 })
+            {
+                long best = Long.MAX_VALUE;
+                long expanded = 0, rejected = 0, avoided = 0, found = 0, reservations = 0;
+                for (int run = 0; run < RUNS; run++)
+                {
+                    ReservationTable table = new ReservationTable(agents * (horizon + 1) * 3);
+                    long[] counters = new long[4];
+
+                    long t0 = System.nanoTime();
+                    planAgents(snapshot, table, horizon, queries, threads, counters);
+                    best = Math.min(best, System.nanoTime() - t0);
+
+                    found = counters[0];
+                    expanded = counters[1];
+                    rejected = counters[2];
+                    avoided = counters[3];
+                    reservations = table.size();
+                }
+
+                System.out.printf("%6d %8d %7d %9d %9d %8d %13d %9.1f%n", agents, threads,
+                        found, expanded, rejected, avoided, reservations, best / 1e6);
+            }
+        }
+    }
+
+    /**
+     * Планируем агентов на общей таблице несколькими потоками: поток k берет
+     * запросы k, k + threads, ... В <code>counters</code> складываются количество
+     * найденных путей, раскрытых состояний, отвергнутых переходов и избежанных конфликтов.
+     **/
+    private static void planAgents(Map2D map, ReservationTable table, int horizon,
+                                   ArrayList<PathQuery> queries, int threads, long[] counters)
+    {
+        // Начальные ячейки занимаются сразу, чтобы через них не прошли агенты других потоков
+        for (int i = 0; i < queries.size(); i++)
+            table.reserve(queries.get(i).getStartX(), queries.get(i).getStartY(), 0, i);
+
+        Thread[] workers = new Thread[threads];
+        for (int k = 0; k < threads; k++)
+        {
+            final int first = k;
+            workers[k] = new Thread(() ->
+            {
+                CooperativePathfinder finder = new CooperativePathfinder(map, table, horizon);
+                long found = 0, expanded = 0, rejected = 0, avoided = 0;
+                for (int i = first; i < queries.size(); i += threads)
+                {
+                    PathQuery q = queries.get(i);
+                    if (finder.findPath(i, q.getStartX(), q.getStartY(), q.getFinishX(), q.getFinishY()) != null)
+                        found++;
+                    expanded += finder.getExpandedCount();
+                    rejected += finder.getRejectedMoves();
+                    avoided += finder.getConflictsAvoided();
+                }
+
+                synchronized (counters)
+                {
+                    counters[0] += found;
+                    counters[1] += expanded;
+                    counters[2] += rejected;
+                    counters[3] += avoided;
+                }
+            });
+            workers[k].start();
+        }
+
+        for (Thread worker : workers)
+        {
+            try
+            {
+                worker.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /** Составляем запросы агентов с попарно различными началами и концами **/
+    private static ArrayList<PathQuery> agentQueries(Map2D map, int agents, Random random)
+    {
+        ArrayList<PathQuery> queries = new ArrayList<PathQuery>();
+        HashMap<Location, Boolean> starts = new HashMap<Location, Boolean>();
+        HashMap<Location, Boolean> finishes = new HashMap<Location, Boolean>();
+        while (queries.size() < agents)
+        {
+            Location s = randomPassable(map, random);
+            Location f = randomPassable(map, random);
+            if (starts.containsKey(s) || finishes.containsKey(f))
+                continue;
+
+            starts.put(s, Boolean.TRUE);
+            finishes.put(f, Boolean.TRUE);
+            queries.add(new PathQuery(s, f));
+        }
+        return queries;
+    }
+
+    /**
+     * Сравниваем отдельный поиск A* для каждого агента с одним полем стоимостей
+     * {@link FlowField}, когда все агенты идут к одной цели. Затем замеряем
+     * исправление поля после изменения нескольких ячеек и полный пересчет.
+     **/
+    private static void benchFlowField()
+    {
+        Map2D map = wideMap(500, 500, 0.2, 5, 28);
+        Random random = new Random(29);
+        Location finish = randomPassable(map, random);
+        map.setFinish(finish);
+
+        System.out.println("agents   A* ms/all   field ms/all");
+        for (int agents : new int[] { 1, 10, 100, 1000 })
+        {
+            Location[] starts = new Location[agents];
+            for (int i = 0; i < agents; i++)
+                starts[i] = randomPassable(map, random);
+
+            // Замер A* ограничен сотней агентов; время на большее количество экстраполируется
+            int measured = Math.min(agents, 100);
+            long t0 = System.nanoTime();
+            for (int i = 0; i < measured; i++)
+            {
+                map.setStart(starts[i]);
+                AStarPathfinder.computePath(map, GridHeuristic.OCTILE);
+            }
+            double astar = (System.nanoTime() - t0) / 1e6 * agents / measured;
+
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++)
+            {
+                t0 = System.nanoTime();
+                FlowField field = new FlowField(map.snapshot());
+                for (Location s : starts)
+                    field.getPath(s.xCoord, s.yCoord);
+                best = Math.min(best, System.nanoTime() - t0);
+            }
+
+            System.out.printf("%6d %11.1f %14.1f%n", agents, astar, best / 1e6);
+        }
+
+        FlowField field = new FlowField(map);
+        field.update();
+
+        System.out.println("\nchanged cells   updated cells   repair ms   rebuild ms");
+        for (int changes : new int[] { 1, 10, 100, 1000 })
+        {
+            for (int i = 0; i < changes; i++)
+            {
+                Location c = randomPassable(map, random);
+                if (!c.equals(finish))
+                    map.setCellValue(c.xCoord, c.yCoord, random.nextBoolean() ? Integer.MAX_VALUE : random.nextInt(6));
+            }
+
+            long t0 = System.nanoTime();
+            field.update();
+            long repair = System.nanoTime() - t0;
+            int updated = field.getUpdatedCount();
+
+            t0 = System.nanoTime();
+            new FlowField(map.snapshot()).update();
+            long rebuild = System.nanoTime() - t0;
+
+            System.out.printf("%13d %15d %11.2f %12.2f%n", changes, updated, repair / 1e6, rebuild / 1e6);
+        }
+        field.dispose();
+    }
+
+    /**
+     * Замеряем масштабирование параллельного поиска {@link ParallelShortestPath}
+     * от одного потока до всех процессоров на квадратной взвешенной карте
+     * со стороной <code>size</code>: путь из угла в угол. Для сравнения
+     * печатается время однопоточного A*.
+     **/
+    private static void benchParallel(int size)
+    {
+        Map2D map = wideMap(size, size, 0.2, 5, 30);
+        map.setStart(new Location(0, 0));
+        map.setFinish(new Location(size - 1, size - 1));
+        map.setCellValue(0, 0, 0);
+        map.setCellValue(size - 1, size - 1, 0);
+
+        long t0 = System.nanoTime();
+        Waypoint reference = AStarPathfinder.computePath(map, GridHeuristic.OCTILE);
+        double astar = (System.nanoTime() - t0) / 1e6;
+        System.out.printf("map %dx%d, A* %.1f ms, cost %.1f%n%n", size, size, astar,
+                reference != null ? reference.getPreviousCost() : Float.POSITIVE_INFINITY);
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        ArrayList<Integer> threads = new ArrayList<Integer>();
+        for (int n = 1; n < processors; n *= 2)
+            threads.add(n);
+        threads.add(processors);
+
+        System.out.println("threads  delta   rounds     expanded       cost        ms  speedup");
+        for (float delta : new float[] { 2, 8, 32 })
+        {
+            double single = 0;
+            for (int n : threads)
+            {
+                ParallelShortestPath finder = new ParallelShortestPath(n);
+                finder.setDelta(delta);
+
+                long best = Long.MAX_VALUE;
+                for (int run = 0; run < RUNS; run++)
+                {
+                    t0 = System.nanoTime();
+                    finder.computePath(map);
+                    best = Math.min(best, System.nanoTime() - t0);
+                }
+                finder.shutdown();
+
+                double ms = best / 1e6;
+                if (n == 1)
+                    single = ms;
+
+                System.out.printf("%7d %6.0f %8d %12d %10.1f %9.1f %8.2f%n", n, delta,
+                        finder.getRoundCount(), finder.getExpandedCount(), finder.getPathCost(),
+                        ms, single / ms);
+            }
+        }
+    }
+
+    /**
+     * Сравниваем цепочки путевых точек со сжатыми путями {@link CompactPath}:
+     * количество точек, оценку занимаемой памяти и время поиска с созданием
+     * цепочки и со сжатием. Память оценивается для 64-битной JVM со сжатыми
+     * ссылками: путевая точка с местоположением занимает 56 байт, сжатый путь -
+     * 40 байт плюс 8 байт на точку поворота.
+     **/
+    private static void benchCompaction()
+    {
+        System.out.println("map                     cells  turning  smoothed   chain KB  compact KB  smooth cost  chain ms  compact ms");
+        benchCompaction("open 1000x1000", wideMap(1000, 1000, 0.05, 0, 31));
+        benchCompaction("obstacles 1000x1000", obstacleMap(1000, 0.3, 32));
+        benchCompaction("weighted 1000x1000", wideMap(1000, 1000, 0.1, 5, 33));
+    }
+
+    private static void benchCompaction(String name, Map2D map)
+    {
+        int paths = 50;
+        Random random = new Random(34);
+        Location[] starts = new Location[paths];
+        Location[] finishes = new Location[paths];
+        for (int i = 0; i < paths; i++)
+        {
+            starts[i] = randomPassable(map, random);
+            finishes[i] = randomPassable(map, random);
+        }
+
+        long cells = 0, turning = 0, smoothed = 0;
+        double cost = 0, smoothCost = 0;
+        long chainTime = 0, compactTime = 0;
+
+        for (int i = 0; i < paths; i++)
+        {
+            map.setStart(starts[i]);
+            map.setFinish(finishes[i]);
+
+            long t0 = System.nanoTime();
+            Waypoint chain = AStarPathfinder.computePath(map);
+            long t1 = System.nanoTime();
+            CompactPath path = AStarPathfinder.computeCompactPath(map, false);
+            long t2 = System.nanoTime();
+
+            // Первые запросы разогревают JIT и выделяют массивы объектов поиска
+            if (i >= WARMUP)
+            {
+                chainTime += t1 - t0;
+                compactTime += t2 - t1;
+            }
+
+            if (chain == null)
+                continue;
+
+            cells += path.getCellCount();
+            turning += path.getPointCount();
+            cost += path.getCost();
+
+            CompactPath smooth = PathCompactor.smooth(map, path);
+            smoothed += smooth.getPointCount();
+            smoothCost += smooth.getCost();
+        }
+
+        long chainBytes = cells * 56;
+        long compactBytes = paths * 40L + turning * 8;
+        int measured = paths - WARMUP;
+        System.out.printf("%-20s %8d %8d %9d %10d %11d %12.3f %9.2f %11.2f%n", name, cells, turning, smoothed,
+                chainBytes / 1024, compactBytes / 1024, cost > 0 ? smoothCost / cost : 1,
+                chainTime / 1e6 / measured, compactTime / 1e6 / measured);
+    }
+
+    /**
+     * Сравниваем поиск под любым углом {@link ThetaStarPathfinder} с поиском A*
+     * по сетке: количество вершин пути (у A* - точек поворота после сжатия),
+     * отношение стоимостей, раскрытые ячейки и время поиска
+     **/
+    private static void benchAnyAngle()
+    {
+        System.out.println("map                  A* points  theta points  cost ratio  A* expanded  theta expanded   A* ms  theta ms");
+        benchAnyAngle("open 1000x1000", wideMap(1000, 1000, 0.05, 0, 41));
+        benchAnyAngle("obstacles 1000x1000", obstacleMap(1000, 0.3, 42));
+        benchAnyAngle("weighted 1000x1000", wideMap(1000, 1000, 0.1, 5, 43));
+    }
+
+    private static void benchAnyAngle(String name, Map2D map)
+    {
+        int paths = 30;
+        Random random = new Random(44);
+        GridPathfinder grid = new GridPathfinder();
+        ThetaStarPathfinder theta = new ThetaStarPathfinder();
+
+        long gridPoints = 0, thetaPoints = 0, gridExpanded = 0, thetaExpanded = 0;
+        double gridCost = 0, thetaCost = 0;
+        long gridTime = 0, thetaTime = 0;
+
+        for (int i = 0; i < paths; i++)
+        {
+            Location s = randomPassable(map, random);
+            Location f = randomPassable(map, random);
+
+            long t0 = System.nanoTime();
+            boolean found = grid.findPath(map, s.xCoord, s.yCoord, f.xCoord, f.yCoord);
+            long t1 = System.nanoTime();
+            theta.findPath(map, s.xCoord, s.yCoord, f.xCoord, f.yCoord);
+            long t2 = System.nanoTime();
+
+            // Первые запросы разогревают JIT и выделяют массивы объектов поиска
+            if (i < WARMUP || !found)
+                continue;
+
+            gridTime += t1 - t0;
+            thetaTime += t2 - t1;
+            gridExpanded += grid.getExpandedCount();
+            thetaExpanded += theta.getExpandedCount();
+            gridCost += grid.getPathCost();
+            thetaCost += theta.getPathCost();
+            gridPoints += PathCompactor.compact(grid).getPointCount();
+
+            for (Waypoint wp = theta.toWaypoint(); wp != null; wp = wp.getPrevious())
+                thetaPoints++;
+        }
+
+        int measured = paths - WARMUP;
+        System.out.printf("%-20s %10d %13d %11.3f %12d %15d %7.2f %9.2f%n", name, gridPoints, thetaPoints,
+                gridCost > 0 ? thetaCost / gridCost : 1, gridExpanded, thetaExpanded,
+                gridTime / 1e6 / measured, thetaTime / 1e6 / measured);
+    }
+
+    /**
+     * Проверяем повторное использование слотов таблицы резервирования: потоки
+     * раз за разом планируют своих агентов к новым целям и снимают их пути
+     * на одной таблице, емкости которой хватает только на один набор путей.
+     * Наибольшая длина пробирования должна оставаться небольшой, а после снятия
+     * всех путей в таблице не должно остаться резервирований.
+     **/
+    private static void benchReservationReuse()
+    {
+        Map2D map = wideMap(100, 100, 0.15, 0, 45);
+        MapSnapshot snapshot = map.snapshot();
+        int agents = 40;
+        int horizon = 300;
+        int rounds = 200;
+
+        // Наборы запросов меняются от раунда к раунду, чтобы ключи резервирований были новыми
+        ArrayList<ArrayList<PathQuery>> querySets = new ArrayList<ArrayList<PathQuery>>();
+        for (int i = 0; i < 8; i++)
+            querySets.add(agentQueries(map, agents, new Random(46 + i)));
+
+        System.out.println("threads  rounds    found  reservations  max probe      slots  ms/round");
+        for (int threads : new int[] { 1, 4 })
+        {
+            ReservationTable table = new ReservationTable(agents * (horizon + 1) * 3);
+            long[] found = new long[1];
+
+            long t0 = System.nanoTime();
+            Thread[] workers = new Thread[threads];
+            for (int k = 0; k < threads; k++)
+            {
+                final int first = k;
+                workers[k] = new Thread(() ->
+                {
+                    CooperativePathfinder finder = new CooperativePathfinder(snapshot, table, horizon);
+                    Waypoint[] paths = new Waypoint[agents];
+                    long count = 0;
+                    for (int round = 0; round < rounds; round++)
+                    {
+                        ArrayList<PathQuery> queries = querySets.get(round % querySets.size());
+                        for (int i = first; i < agents; i += threads)
+                        {
+                            PathQuery q = queries.get(i);
+                            paths[i] = finder.findPath(i, q.getStartX(), q.getStartY(), q.getFinishX(), q.getFinishY());
+                            if (paths[i] != null)
+                                count++;
+                        }
+
+                        for (int i = first; i < agents; i += threads)
+                        {
+                            if (paths[i] != null)
+                                finder.releasePath(i, paths[i]);
+                        }
+                    }
+
+                    synchronized (found)
+                    {
+                        found[0] += count;
+                    }
+                });
+                workers[k].start();
+            }
+
+            for (Thread worker : workers)
+            {
+                try
+                {
+                    worker.join();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            long elapsed = System.nanoTime() - t0;
+
+            if (table.size() != 0)
+                throw new IllegalStateException("reservations left after releasing every path: " + table.size());
+
+            System.out.printf("%7d %7d %8d %13d %11d %10d %9.2f%n", threads, rounds, found[0], table.size(),
+                    table.getMaxProbeLength(), Integer.highestOneBit(agents * (horizon + 1) * 3 - 1) << 1,
+                    elapsed / 1e6 / rounds);
+        }
+    }
+}
@@ -16,23 +16,104 @@ public class AStarPathfinder
      **/
     public static final float COST_LIMIT = 1e6f;
 
+    /**
+     * Слушатель, которому сообщаются показатели каждого поиска этого класса.
+     * По умолчанию статистика выключена.
+     **/
+    private static volatile SearchListener listener = SearchListener.NONE;
+
+    /**
+     * Объекты поиска с точками прыжка хранят свои массивы между вызовами,
+     * поэтому у каждого потока он свой
+     **/
+    private static final ThreadLocal<JumpPointPathfinder> JUMP_POINT_SEARCH =
+            ThreadLocal.withInitial(JumpPointPathfinder::new);
+
+    /** Объекты поиска по сетке для запросов с заданной эвристикой, по одному на поток **/
+    private static final ThreadLocal<GridPathfinder> GRID_SEARCH =
+            ThreadLocal.withInitial(GridPathfinder::new);
+
+    /** Объекты двунаправленного поиска, по одному на поток **/
+    private static final ThreadLocal<BidirectionalPathfinder> BIDIRECTIONAL_SEARCH =
+            ThreadLocal.withInitial(BidirectionalPathfinder::new);
+
+    /** Объекты поиска под любым углом, по одному на поток **/
+    private static final ThreadLocal<ThetaStarPathfinder> THETA_SEARCH =
+            ThreadLocal.withInitial(ThetaStarPathfinder::new);
+
 
     /**
      * Попытки вычислить путь перемещения, указанный между начальным и конечным местоположениями карты. 
      * Если путь может быть найден, то возвращается путевая точка шага <em>final</em>; 
      * эта точка может быть использована для перехода назад к начальной точке. Если путь не может быть найден, 
      * возвращается <code>null</code>.
+     * <p>
+     * Если карта однородна ({@link Map2D#isUniformCost()}), используется поиск
+     * с точками прыжка; иначе выполняется обычный поиск A*. Поиск с точками прыжка
+     * хранит состояние в плоских массивах, поэтому карты, ячейки которых в них
+     * не помещаются, тоже обрабатывает обычный поиск A*.
      **/
     public static Waypoint computePath(Map2D map)
     {
+        // На однородной карте поиск с точками прыжка дает путь той же стоимости,
+        // раскрывая намного меньше ячеек
+        if (map.isUniformCost() && GridPathfinder.fitsCellArrays(map))
+        {
+            JumpPointPathfinder search = JUMP_POINT_SEARCH.get();
+            search.setSearchListener(listener);
+            return search.computePath(map);
+        }
+
+        return computePath(new AStarState(map));
+    }
+
+    /**
+     * Выполняем поиск A* по путевым точкам, используя переданный объект состояния.
+     * После поиска в состоянии остаются счетчики закрытых и повторно раскрытых
+     * путевых точек. Если путь не найден, возвращается <code>null</code>.
+     **/
+    public static Waypoint computePath(AStarState state)
+    {
+        return computePath(state, Neighbourhood.EIGHT, GridHeuristic.EUCLIDEAN, 1);
+    }
+
+    /**
+     * Выполняем поиск A* по путевым точкам с указанными набором соседей, эвристикой
+     * и её множителем. При множителе <code>weight</code> больше 1 (взвешенный A*)
+     * раскрывается меньше точек, а стоимость пути с допустимой и согласованной
+     * эвристикой превышает наименьшую не более чем в <code>weight</code> раз.
+     **/
+    public static Waypoint computePath(AStarState state, Neighbourhood neighbourhood,
+                                       GridHeuristic heuristic, float weight)
+    {
+        if (neighbourhood == null)
+            throw new NullPointerException("neighbourhood cannot be null");
+
+        if (heuristic == null)
+            throw new NullPointerException("heuristic cannot be null");
+
+        if (!(weight >= 1) || Float.isInfinite(weight))
+            throw new IllegalArgumentException("weight must be a finite value >= 1; got " + weight);
+
+        // Время измеряется, только если подключен слушатель
+        SearchListener listener = AStarPathfinder.listener;
+        boolean timed = listener != SearchListener.NONE;
+        long t0 = timed ? System.nanoTime() : 0;
+
         // Переменные, необходимые для поиска А*
-        AStarState state = new AStarState(map);
+        Map2D map = state.getMap();
         Location finishLoc = map.getFinish();
 
+        if (!heuristic.isValidFor(map))
+            heuristic = neighbourhood.getDefaultHeuristic();
+
         // Установка начальной точки, чтобы начать поиск A*
-        Waypoint start = new Waypoint(map.getStart(), null);
-        start.setCosts(0, estimateTravelCost(start.getLocation(), finishLoc));
+        Location startLoc = map.getStart();
+        Waypoint start = new Waypoint(startLoc, null);
+        start.setCosts(0, weight * heuristic.estimate(startLoc.xCoord, startLoc.yCoord,
+                finishLoc.xCoord, finishLoc.yCoord));
         state.addOpenWaypoint(start);
+        long t1 = timed ? System.nanoTime() : 0;
 
         Waypoint finalWaypoint = null;
         boolean foundPath = false;
@@ -51,80 +132,156 @@ public class AStarPathfinder
 
             // Добавление/обновление всех соседних точек текущего "лучшего" местоположения. 
             // Это равносильно выполнению всех «следующих шагов» из этого места
-            takeNextStep(best, state);
+            takeNextStep(best, state, neighbourhood, heuristic, weight);
 
             // Перемещение этого места из "открытого" списка в "закрытый"
             state.closeWaypoint(best.getLocation());
         }
 
+        // Путь уже собран в цепочку путевых точек, поэтому фаза восстановления пути пуста
+        if (timed)
+        {
+            SearchStats stats = new SearchStats();
+            stats.record(state.numClosedWaypoints(), state.numOpenedWaypoints(),
+                    state.numImprovedWaypoints(), state.peakOpenWaypoints(), foundPath,
+                    foundPath ? finalWaypoint.getPreviousCost() : 0, t1 - t0, System.nanoTime() - t1, 0);
+            listener.searchFinished(stats);
+        }
+
         return finalWaypoint;
     }
 
     /**
-     * Этот статический вспомогательный метод берет путевую точку и генерирует все 
-     * действительные «последующие шаги» из этой путевой точки. Новые путевые точки 
-     * добавляются в коллекцию «открытых путевых точек» переданного объекта состояния A*
+     * Вычисляем путь между начальным и конечным местоположениями карты с указанной
+     * эвристикой. С эвристикой ALT ({@link LandmarkHeuristic}), учитывающей
+     * стоимости ячеек, на взвешенных картах раскрывается намного меньше ячеек,
+     * а стоимость пути остается оптимальной. Если эвристика не подходит для карты
+     * (например, таблицы ориентиров вычислены для другой её версии),
+     * используется прямое расстояние.
      **/
-    private static void takeNextStep(Waypoint currWP, AStarState state)
+    public static Waypoint computePath(Map2D map, GridHeuristic heuristic)
     {
-        Location loc = currWP.getLocation();
-        Map2D map = state.getMap();
-
-        for (int y = loc.yCoord - 1; y <= loc.yCoord + 1; y++)
+        GridPathfinder search = GRID_SEARCH.get();
+        search.setHeuristic(heuristic);
+        search.setSearchListener(listener);
+        try
         {
-            for (int x = loc.xCoord - 1; x <= loc.xCoord + 1; x++)
-            {
-                Location nextLoc = new Location(x, y);
-
-                // Если "следующее местоположение" находится за пределами карты, пропускаем его
-                if (!map.contains(nextLoc))
-                    continue;
-
-                // Если «следующее местоположение» - текщее местоположение, пропускаем его
-                if (nextLoc == loc)
-                    continue;
-
-                // Если это местоположение уже находится в "закрытом" наборе, 
-                // тогда переходим к "следующему местоположению"
-                if (state.isLocationClosed(nextLoc))
-                    continue;
+            return search.computePath(map);
+        }
+        finally
+        {
+            // Не удерживаем эвристику и её таблицы в объекте потока после поиска
+            search.setHeuristic(null);
+        }
+    }
 
-                // Делаем путевую точку для "следующего местоположения"
+    /**
+     * Вычисляем путь между начальным и конечным местоположениями карты и сразу
+     * сжимаем его до точек поворота ({@link PathCompactor}), при желании сглаживая.
+     * Путь берется прямо из массивов объекта поиска потока, поэтому цепочка
+     * путевых точек не создается. Если путь не найден, возвращается <code>null</code>.
+     **/
+    public static CompactPath computeCompactPath(Map2D map, boolean smooth)
+    {
+        GridPathfinder search = map.isUniformCost() ? JUMP_POINT_SEARCH.get() : GRID_SEARCH.get();
+        search.setSearchListener(listener);
 
-                Waypoint nextWP = new Waypoint(nextLoc, currWP);
+        Location s = map.getStart();
+        Location f = map.getFinish();
+        if (!search.findPath(map, s.xCoord, s.yCoord, f.xCoord, f.yCoord))
+            return null;
 
-                // "Обманываем" и используем оценку стоимости, чтобы вычислить фактическую стоимость из предыдущей ячейки. 
-                // Затем мы добавляем стоимость из ячейки карты, на которую мы наступаем, для включения барьеров и тд
-                float prevCost = currWP.getPreviousCost() +
-                        estimateTravelCost(currWP.getLocation(),
-                                nextWP.getLocation());
+        CompactPath path = PathCompactor.compact(search);
+        return smooth ? PathCompactor.smooth(map, path) : path;
+    }
 
-                prevCost += map.getCellValue(nextLoc);
+    /**
+     * Подключаем слушателя, которому сообщаются показатели каждого последующего
+     * поиска {@link #computePath} во всех потоках, например {@link PathfinderStats}.
+     * Слушатель должен быть потокобезопасным. {@link SearchListener#NONE} или
+     * <code>null</code> отключают статистику; тогда поиск ничего на неё не тратит.
+     **/
+    public static void setSearchListener(SearchListener listener)
+    {
+        AStarPathfinder.listener = (listener != null) ? listener : SearchListener.NONE;
+    }
 
-                // Пропускаем "следующее местоположение", если оно "слишком дорогое"
-                if (prevCost >= COST_LIMIT)
-                    continue;
+    /** Возвращаем подключенного слушателя **/
+    public static SearchListener getSearchListener()
+    {
+        return listener;
+    }
 
-                nextWP.setCosts(prevCost,
-                        estimateTravelCost(nextLoc, map.getFinish()));
+    /**
+     * Вычисляем путь между начальным и конечным местоположениями карты двунаправленным
+     * поиском: волны идут одновременно от начала и от конца и останавливаются, когда
+     * путь через точку их встречи доказуемо оптимален. Результат имеет ту же стоимость,
+     * что и у {@link #computePath}; на длинных путях через широкие карты раскрывается
+     * меньше ячеек. Если путь не найден, возвращается <code>null</code>.
+     **/
+    public static Waypoint computePathBidirectional(Map2D map)
+    {
+        return BIDIRECTIONAL_SEARCH.get().computePath(map);
+    }
 
-                // Добавляем путевую точку в набор "открытых" путевых точек. 
-                // Если для этого местоположения уже есть путевая точка, новая путевая точка заменяет эту старую путевую точку, 
-                // если она "дешевле", чем старая.
-                state.addOpenWaypoint(nextWP);
-            }
-        }
+    /**
+     * Вычисляем путь между начальным и конечным местоположениями карты поиском
+     * под любым углом ({@link ThetaStarPathfinder}): путь состоит из прямых отрезков
+     * между видимыми друг из друга ячейками, а не из шагов в восьми направлениях.
+     * Возвращается цепочка путевых точек по вершинам ломаной. Если путь не найден,
+     * возвращается <code>null</code>.
+     **/
+    public static Waypoint computePathAnyAngle(Map2D map)
+    {
+        ThetaStarPathfinder search = THETA_SEARCH.get();
+        search.setSearchListener(listener);
+        return search.computePath(map);
     }
 
     /**
-     * Оценивает "стоимость" передвижения между двумя указанными точками
-     * Фактическая стоимость - это прямое расстояние между двумя точками
+     * Этот статический вспомогательный метод берет путевую точку и генерирует все 
+     * действительные «последующие шаги» из этой путевой точки. Новые путевые точки 
+     * добавляются в коллекцию «открытых путевых точек» переданного объекта состояния A*
      **/
-    private static float estimateTravelCost(Location currLoc, Location destLoc)
+    private static void takeNextStep(Waypoint currWP, AStarState state, Neighbourhood neighbourhood,
+                                     GridHeuristic heuristic, float weight)
     {
-        int dx = destLoc.xCoord - currLoc.xCoord;
-        int dy = destLoc.yCoord - currLoc.yCoord;
+        Location loc = currWP.getLocation();
+        Map2D map = state.getMap();
+        Location finishLoc = map.getFinish();
+
+        for (int k = 0; k < neighbourhood.size(); k++)
+        {
+            int x = loc.xCoord + neighbourhood.dx(k);
+            int y = loc.yCoord + neighbourhood.dy(k);
+
+            // Если "следующее местоположение" находится за пределами карты, пропускаем его
+            if (!map.contains(x, y))
+                continue;
+
+            // Если это местоположение уже находится в "закрытом" наборе, 
+            // тогда переходим к "следующему местоположению"
+            if (state.isLocationClosed(x, y))
+                continue;
 
-        return (float) Math.sqrt(dx * dx + dy * dy);
+            // Фактическая стоимость - длина шага из предыдущей ячейки плюс стоимость
+            // ячейки карты, на которую мы наступаем, для включения барьеров и тд
+            float prevCost = currWP.getPreviousCost() + neighbourhood.stepLength(k) +
+                    map.getCellValue(x, y);
+
+            // Пропускаем "следующее местоположение", если оно "слишком дорогое"
+            if (prevCost >= COST_LIMIT)
+                continue;
+
+            // Делаем путевую точку для "следующего местоположения"
+            Waypoint nextWP = new Waypoint(new Location(x, y), currWP);
+            nextWP.setCosts(prevCost,
+                    weight * heuristic.estimate(x, y, finishLoc.xCoord, finishLoc.yCoord));
+
+            // Добавляем путевую точку в набор "открытых" путевых точек. 
+            // Если для этого местоположения уже есть путевая точка, новая путевая точка заменяет эту старую путевую точку, 
+            // если она "дешевле", чем старая.
+            state.addOpenWaypoint(nextWP);
+        }
     }
 }
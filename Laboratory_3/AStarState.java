@@ -5,15 +5,43 @@
  * для выполнения его обработки
  **/
  
- import java.util.*;
- 
 public class AStarState
 {
     /** Ссылка на карту перемещения алгоритма A* **/
     private Map2D map;
 
-	private HashMap<Location, Waypoint> openVertex = new HashMap<Location, Waypoint>();
-	private HashMap<Location, Waypoint> closeVertex = new HashMap<Location, Waypoint>();
+    /**
+     * "Открытые" путевые точки, ключом служат упакованные
+     * координаты местоположения {@link Location#toLong()}
+     **/
+	private LongHashMap<Waypoint> openVertex = new LongHashMap<Waypoint>();
+
+    /**
+     * "Закрытые" местоположения: по одному биту на ячейку карты с номером
+     * <code>y * width + x</code>. Проверка и отметка не выделяют память.
+     **/
+    private long[] closed;
+
+    /** Количество закрытых путевых точек, то есть раскрытых ячеек **/
+    private int closedCount;
+
+    /**
+     * Количество повторных раскрытий: сколько раз путевая точка закрывалась
+     * в уже закрытом местоположении. При корректной работе A* равно нулю.
+     **/
+    private int reexpandedCount;
+
+    /** Количество путевых точек, добавленных в новые местоположения **/
+    private int openedCount;
+
+    /** Количество замен открытых путевых точек более дешевыми **/
+    private int improvedCount;
+
+    /** Наибольшее количество открытых путевых точек **/
+    private int peakOpenCount;
+
+    /** Куча открытых путевых точек, упорядоченная по общей стоимости **/
+    private WaypointHeap openQueue = new WaypointHeap();
 
 
     /**
@@ -24,7 +52,14 @@ public class AStarState
         if (map == null)
             throw new NullPointerException("map cannot be null");
 
+        // Произведение считается в long: на картах больше 46341 x 46341 ячеек int переполняется
+        long words = ((long) map.getWidth() * map.getHeight() + 63) >>> 6;
+        if (words > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("map is too large for the closed set: "
+                    + map.getWidth() + " x " + map.getHeight());
+
         this.map = map;
+        closed = new long[(int) words];
     }
 
     /** Возвращаем карту, по которой перемещается навигатор A* **/
@@ -34,28 +69,12 @@ public class AStarState
     }
 
     /**
-     * Этот метод сканирует все открытые путевые точки и возвращает путевую точку
-     * с минимальными общими затратами. Если нет открытых путевых точек, этот метод
-     * возвращает <code>null</code>.
+     * Этот метод возвращает открытую путевую точку с минимальными общими затратами.
+     * Точка берется из корня кучи, поэтому сканировать все открытые точки не нужно.
+     * Если нет открытых путевых точек, этот метод возвращает <code>null</code>.
      **/
     public Waypoint getMinOpenWaypoint() {
-		
-		//System.out.println("getMinOpenWaypoint called!");
-        if (openVertex.isEmpty()) return null;	
-		
-		float minCost = 3.4e+38f;
-		Waypoint minCostObject = null;
-		
-		ArrayList<Waypoint> values = new ArrayList<Waypoint>(openVertex.values());
-		for (Waypoint element : values) {
-			if (element.getTotalCost() < minCost) {
-				minCost = element.getTotalCost();
-				minCostObject = element;
-			}
-		}
-		
-		//System.out.println("\tminWaypoint coords: " + minCostObject.getLocation().xCoord + ", " + minCostObject.getLocation().yCoord + ", cost = " + minCost);
-		return minCostObject;
+        return openQueue.peek();
     }
 
     /**
@@ -68,41 +87,30 @@ public class AStarState
      **/
     public boolean addOpenWaypoint(Waypoint newWP)
     {
-		//System.out.println("addOpenWaypoint called!");
-
-        // Получаем все ключи из HashMap
-		ArrayList<Location> locations = new ArrayList<Location>(openVertex.keySet());
-
         // Получаем местоположение входящего Waypoint
-		Location newLoc = newWP.getLocation();
-		//System.out.println("\tnew waypoint coords: " + newLoc.xCoord + ", " + newLoc.yCoord);
-
-        //Просмотр всех ключей из locations
-		for (Location index : locations) {
-			if (newLoc.equals(index)) {
-                // Сравнение стоимостей, т.к. index == newLoc
-
-                // Если стоимость пути до newWP меньше стоимости пути до вершины с таким же местоположением - заменяем
-				Waypoint oldWP = openVertex.get(index);
-				//System.out.println("\tthere is equal point: " + index.xCoord + ", " + index.yCoord);
-				double oldCost = oldWP.getPreviousCost();
-				double newCost = newWP.getPreviousCost();
-				//System.out.println("\told cost: " + oldCost + ", new cost: " + newCost);
-				
-				if (newCost < oldCost) {
-					openVertex.put(newLoc, newWP);
-					return true;
-				}
-
-                // Если новая вершина не подходит
-				return false;
-				
-			}
+		long newLoc = newWP.getLocation().toLong();
+
+        // Ищем открытую точку с тем же местоположением прямым поиском по хэшу
+		Waypoint oldWP = openVertex.get(newLoc);
+		if (oldWP == null) {
+			openVertex.put(newLoc, newWP);
+			openQueue.add(newWP);
+			openedCount++;
+			if (openVertex.size() > peakOpenCount)
+				peakOpenCount = openVertex.size();
+			return true;
+		}
+
+        // Если стоимость пути до newWP меньше стоимости пути до вершины с таким же местоположением - заменяем
+		if (newWP.getPreviousCost() < oldWP.getPreviousCost()) {
+			openVertex.put(newLoc, newWP);
+			openQueue.replace(oldWP, newWP);
+			improvedCount++;
+			return true;
 		}
-		
-		openVertex.put(newLoc, newWP);
-		//System.out.println("\tnew point opened");
-		return true;
+
+        // Если новая вершина не подходит
+		return false;
     }
 
 
@@ -120,9 +128,18 @@ public class AStarState
     public void closeWaypoint(Location loc)
     {
 		//System.out.println("Closing waypoint: " + loc.xCoord + ", " + loc.yCoord);
-        Waypoint wp = openVertex.get(loc);
-		openVertex.remove(loc);
-		closeVertex.put(loc, wp);
+        Waypoint wp = openVertex.remove(loc.toLong());
+		if (wp != null) {
+			openQueue.remove(wp);
+
+			long bit = cellIndex(loc.xCoord, loc.yCoord);
+			int word = (int) (bit >>> 6);
+			if ((closed[word] & (1L << bit)) != 0)
+				reexpandedCount++;
+
+			closed[word] |= 1L << bit;
+			closedCount++;
+		}
     }
 
     /**
@@ -131,6 +148,63 @@ public class AStarState
      **/
     public boolean isLocationClosed(Location loc)
     {
-       return openVertex.containsKey(loc);
+        return isLocationClosed(loc.xCoord, loc.yCoord);
+    }
+
+    /**
+     * Возвращаем true, если ячейка с указанными координатами закрыта.
+     * В отличие от варианта с {@link Location} не требует создания объекта.
+     * Местоположения за пределами карты никогда не бывают закрытыми.
+     **/
+    public boolean isLocationClosed(int x, int y)
+    {
+        if (!map.contains(x, y))
+            return false;
+
+        long bit = cellIndex(x, y);
+        return (closed[(int) (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    /** Возвращаем количество закрытых путевых точек, то есть раскрытых ячеек **/
+    public int numClosedWaypoints()
+    {
+        return closedCount;
+    }
+
+    /**
+     * Возвращаем количество повторных раскрытий уже закрытых местоположений.
+     * Если закрытые местоположения не проверяются перед добавлением соседей,
+     * значение становится больше нуля.
+     **/
+    public int numReexpandedWaypoints()
+    {
+        return reexpandedCount;
+    }
+
+    /** Возвращаем количество путевых точек, добавленных в новые местоположения **/
+    public int numOpenedWaypoints()
+    {
+        return openedCount;
+    }
+
+    /** Возвращаем количество замен открытых путевых точек более дешевыми **/
+    public int numImprovedWaypoints()
+    {
+        return improvedCount;
+    }
+
+    /** Возвращаем наибольшее количество одновременно открытых путевых точек **/
+    public int peakOpenWaypoints()
+    {
+        return peakOpenCount;
+    }
+
+    /** Номер ячейки местоположения в наборе закрытых местоположений **/
+    private long cellIndex(int x, int y)
+    {
+        if (!map.contains(x, y))
+            throw new IllegalArgumentException("location is outside the map: " + x + ", " + y);
+
+        return (long) y * map.getWidth() + x;
     }
 }
@@ -0,0 +1,149 @@
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Этот класс решает пакет запросов поиска пути параллельно на пуле потоков
+ * {@link ForkJoinPool}. Все запросы пакета читают один неизменяемый снимок карты
+ * ({@link MapSnapshot}), поэтому исходную карту можно менять, пока пакет
+ * обрабатывается. Каждый рабочий поток держит собственные объекты поиска
+ * {@link GridPathfinder} и {@link JumpPointPathfinder}, массивы которых
+ * переиспользуются от запроса к запросу.
+ **/
+public class BatchPathfinder
+{
+    /**
+     * Сколько частей приходится на один поток при делении пакета. Несколько частей
+     * на поток выравнивают нагрузку, когда запросы сильно различаются по длине.
+     **/
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /** Пул потоков, на котором выполняются запросы **/
+    private final ForkJoinPool pool;
+
+    /** Объект поиска для взвешенных карт, свой у каждого рабочего потока **/
+    private final ThreadLocal<GridPathfinder> gridSearch = new ThreadLocal<GridPathfinder>()
+    {
+        protected GridPathfinder initialValue()
+        {
+            return new GridPathfinder();
+        }
+    };
+
+    /** Объект поиска для однородных карт, свой у каждого рабочего потока **/
+    private final ThreadLocal<JumpPointPathfinder> jumpPointSearch = new ThreadLocal<JumpPointPathfinder>()
+    {
+        protected JumpPointPathfinder initialValue()
+        {
+            return new JumpPointPathfinder();
+        }
+    };
+
+
+    /** Создание объекта, использующего все доступные процессоры **/
+    public BatchPathfinder()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Создание объекта с пулом из указанного количества потоков **/
+    public BatchPathfinder(int parallelism)
+    {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("parallelism must be > 0; got " + parallelism);
+
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /** Возвращаем количество рабочих потоков **/
+    public int getParallelism()
+    {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Решаем все запросы на снимке указанной карты. Возвращается массив той же длины,
+     * что и список запросов; i-й элемент - путевая точка конца i-го пути
+     * (как в {@link AStarPathfinder#computePath}) или <code>null</code>, если путь не найден.
+     **/
+    public Waypoint[] findPaths(Map2D map, List<PathQuery> queries)
+    {
+        if (map == null)
+            throw new NullPointerException("map cannot be null");
+
+        if (queries == null)
+            throw new NullPointerException("queries cannot be null");
+
+        MapSnapshot snapshot = map.snapshot();
+        PathQuery[] batch = queries.toArray(new PathQuery[queries.size()]);
+        for (PathQuery q : batch)
+        {
+            if (!snapshot.contains(q.getStartX(), q.getStartY()) ||
+                    !snapshot.contains(q.getFinishX(), q.getFinishY()))
+                throw new IllegalArgumentException("query is outside the map: " + q);
+        }
+
+        Waypoint[] results = new Waypoint[batch.length];
+        if (batch.length == 0)
+            return results;
+
+        int chunk = Math.max(1, batch.length / (pool.getParallelism() * CHUNKS_PER_THREAD));
+        pool.invoke(new QueryTask(snapshot, batch, results, 0, batch.length, chunk));
+        return results;
+    }
+
+    /** Останавливаем рабочие потоки. После этого объект нельзя использовать. **/
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    /** Решаем один запрос объектом поиска текущего потока **/
+    private Waypoint solve(MapSnapshot map, PathQuery q)
+    {
+        GridPathfinder finder = map.isUniformCost() ? jumpPointSearch.get() : gridSearch.get();
+
+        if (!finder.findPath(map, q.getStartX(), q.getStartY(), q.getFinishX(), q.getFinishY()))
+            return null;
+
+        return finder.toWaypoint();
+    }
+
+    /**
+     * Задача, решающая запросы с номерами от <code>from</code> до <code>to</code>.
+     * Большие диапазоны делятся пополам, пока не станут не длиннее <code>chunk</code>.
+     **/
+    private class QueryTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final MapSnapshot map;
+        private final PathQuery[] queries;
+        private final Waypoint[] results;
+        private final int from, to, chunk;
+
+        QueryTask(MapSnapshot map, PathQuery[] queries, Waypoint[] results, int from, int to, int chunk)
+        {
+            this.map = map;
+            this.queries = queries;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        protected void compute()
+        {
+            if (to - from <= chunk)
+            {
+                for (int i = from; i < to; i++)
+                    results[i] = solve(map, queries[i]);
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            invokeAll(new QueryTask(map, queries, results, from, mid, chunk),
+                    new QueryTask(map, queries, results, mid, to, chunk));
+        }
+    }
+}
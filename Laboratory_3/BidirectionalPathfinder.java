@@ -0,0 +1,434 @@
+import java.util.Arrays;
+
+/**
+ * Этот класс реализует двунаправленный поиск A*: одна волна идет от начальной ячейки
+ * к конечной, другая - от конечной к начальной по обращенным шагам. Каждый раз,
+ * когда волна достигает ячейки, уже достигнутой другой волной, запоминается
+ * лучший найденный путь через эту ячейку.
+ * <p>
+ * Обе волны используют "усредненную" эвристику p(v) = (h<sub>конец</sub>(v) - h<sub>начало</sub>(v)) / 2,
+ * где h - прямое расстояние до соответствующего конца; прямая волна прибавляет p(v)
+ * к стоимости, обратная вычитает. Такая пара эвристик согласована, и поиск можно
+ * остановить, как только сумма минимальных оценок обеих куч станет не меньше
+ * стоимости лучшего найденного пути: более дешевого пути уже не существует,
+ * и найденный путь оптимален. В отличие от двух независимых эвристик A*, при таком
+ * условии волны не проходят друг сквозь друга после встречи.
+ * <p>
+ * Стоимость шага та же, что и в {@link AStarPathfinder}: длина шага плюс значение
+ * ячейки, в которую делается шаг. Обратная волна, делая шаг из ячейки v в её
+ * соседа u, поэтому платит стоимость ячейки v. Как и {@link GridPathfinder},
+ * объект хранит массивы между вызовами и не может использоваться
+ * из нескольких потоков одновременно.
+ **/
+public class BidirectionalPathfinder
+{
+    /** Длина диагонального шага **/
+    private static final float DIAGONAL = (float) Math.sqrt(2);
+
+    /** Смещения по x для восьми соседних ячеек **/
+    private static final int[] DX = { -1, 0, 1, -1, 1, -1, 0, 1 };
+
+    /** Смещения по y для восьми соседних ячеек **/
+    private static final int[] DY = { -1, -1, -1, 0, 0, 1, 1, 1 };
+
+    /** Карта, по которой выполняется текущий поиск **/
+    private Map2D map;
+
+    /** Размеры карты текущего поиска **/
+    private int width, height;
+
+    /** Фактическая стоимость от начала (прямая волна) и до конца (обратная волна) **/
+    private float[] forwardCost = new float[0];
+    private float[] backwardCost = new float[0];
+
+    /** Предыдущая ячейка прямой волны и следующая ячейка обратной волны; -1 для концов **/
+    private int[] forwardParent = new int[0];
+    private int[] backwardParent = new int[0];
+
+    /** Метки поиска, в котором ячейка была достигнута каждой из волн **/
+    private int[] forwardStamps = new int[0];
+    private int[] backwardStamps = new int[0];
+
+    /** true для ячеек, уже раскрытых соответствующей волной **/
+    private boolean[] forwardClosed = new boolean[0];
+    private boolean[] backwardClosed = new boolean[0];
+
+    /** Метка текущего поиска **/
+    private int currentStamp;
+
+    /** "Открытые" ячейки каждой волны, упорядоченные по оценке общей стоимости **/
+    private IndexedMinHeap forwardOpen = new IndexedMinHeap(1);
+    private IndexedMinHeap backwardOpen = new IndexedMinHeap(1);
+
+    /** Координаты начальной и конечной ячеек текущего поиска **/
+    private int startX, startY, goalX, goalY;
+
+    /** Стоимость лучшего найденного пути и ячейка, в которой встретились волны **/
+    private float bestCost;
+    private int meetNode;
+
+    /** Количество ячеек, раскрытых обеими волнами во время последнего поиска **/
+    private int expandedCount;
+
+    /** Ячейки найденного пути от начала до конца **/
+    private int[] path = new int[16];
+
+    /** Количество ячеек в найденном пути или 0, если путь не найден **/
+    private int pathLength;
+
+
+    /**
+     * Пытаемся найти путь между указанными ячейками карты. Возвращаем true,
+     * если путь найден; сам путь затем доступен через {@link #getPathLength()},
+     * {@link #getPathX(int)}, {@link #getPathY(int)} и {@link #toWaypoint()}.
+     **/
+    public boolean findPath(Map2D map, int startX, int startY, int finishX, int finishY)
+    {
+        if (map == null)
+            throw new NullPointerException("map cannot be null");
+
+        if (!map.contains(startX, startY))
+            throw new IllegalArgumentException("start is outside the map: " + startX + ", " + startY);
+
+        if (!map.contains(finishX, finishY))
+            throw new IllegalArgumentException("finish is outside the map: " + finishX + ", " + finishY);
+
+        prepare(map);
+
+        this.startX = startX;
+        this.startY = startY;
+        goalX = finishX;
+        goalY = finishY;
+
+        int start = startY * width + startX;
+        int goal = finishY * width + finishX;
+
+        bestCost = Float.POSITIVE_INFINITY;
+        meetNode = -1;
+
+        if (start == goal)
+        {
+            bestCost = 0;
+            meetNode = start;
+        }
+        else
+        {
+            openForward(start, -1, 0);
+            openBackward(goal, -1, 0);
+        }
+
+        while (!forwardOpen.isEmpty() && !backwardOpen.isEmpty())
+        {
+            // Путь дешевле лучшего найденного должен пройти через ячейки обоих
+            // фронтов, а сумма их оценок уже не меньше его стоимости
+            if (forwardOpen.peekKey() + backwardOpen.peekKey() >= bestCost)
+                break;
+
+            // Раскрываем волну с меньшим фронтом, чтобы волны росли равномерно
+            if (forwardOpen.size() <= backwardOpen.size())
+                expandForward(forwardOpen.pop());
+            else
+                expandBackward(backwardOpen.pop());
+        }
+
+        if (meetNode < 0)
+        {
+            pathLength = 0;
+            return false;
+        }
+
+        buildPath();
+        return true;
+    }
+
+    /**
+     * Ищем путь между начальным и конечным местоположениями карты и возвращаем его
+     * в виде цепочки путевых точек, как это делает {@link AStarPathfinder#computePath}.
+     * Если путь не найден, возвращается <code>null</code>.
+     **/
+    public Waypoint computePath(Map2D map)
+    {
+        Location s = map.getStart();
+        Location f = map.getFinish();
+
+        if (!findPath(map, s.xCoord, s.yCoord, f.xCoord, f.yCoord))
+            return null;
+
+        return toWaypoint();
+    }
+
+    /** Возвращаем количество ячеек, раскрытых обеими волнами во время последнего поиска **/
+    public int getExpandedCount()
+    {
+        return expandedCount;
+    }
+
+    /** Возвращаем количество ячеек найденного пути или 0, если путь не найден **/
+    public int getPathLength()
+    {
+        return pathLength;
+    }
+
+    /** Возвращаем стоимость найденного пути **/
+    public float getPathCost()
+    {
+        return pathLength > 0 ? bestCost : 0;
+    }
+
+    /** Возвращаем x координату i-й ячейки найденного пути, считая от начала **/
+    public int getPathX(int i)
+    {
+        return path[checkPathIndex(i)] % width;
+    }
+
+    /** Возвращаем y координату i-й ячейки найденного пути, считая от начала **/
+    public int getPathY(int i)
+    {
+        return path[checkPathIndex(i)] / width;
+    }
+
+    /**
+     * Преобразуем найденный путь в цепочку путевых точек. Возвращается путевая точка
+     * конечной ячейки; по ней можно пройти назад к началу. Если путь не найден,
+     * возвращается <code>null</code>.
+     **/
+    public Waypoint toWaypoint()
+    {
+        Waypoint wp = null;
+        float cost = 0;
+
+        for (int i = 0; i < pathLength; i++)
+        {
+            int x = path[i] % width;
+            int y = path[i] / width;
+
+            if (wp != null)
+            {
+                Location prev = wp.getLocation();
+                cost += (prev.xCoord != x && prev.yCoord != y) ? DIAGONAL : 1;
+                cost += map.getCellValue(x, y);
+            }
+
+            wp = new Waypoint(new Location(x, y), wp);
+            wp.setCosts(cost, 0);
+        }
+
+        return wp;
+    }
+
+    /** Раскрываем ячейку прямой волной: шаг в соседа стоит его значение **/
+    private void expandForward(int node)
+    {
+        forwardClosed[node] = true;
+        expandedCount++;
+
+        int x = node % width;
+        int y = node / width;
+        float g = forwardCost[node];
+
+        for (int k = 0; k < DX.length; k++)
+        {
+            int nx = x + DX[k];
+            int ny = y + DY[k];
+
+            if (nx < 0 || nx >= width || ny < 0 || ny >= height)
+                continue;
+
+            int next = ny * width + nx;
+            float step = (DX[k] != 0 && DY[k] != 0) ? DIAGONAL : 1;
+            float cost = g + step + map.getCellValue(nx, ny);
+
+            if (cost >= AStarPathfinder.COST_LIMIT)
+                continue;
+
+            if (forwardStamps[next] == currentStamp &&
+                    (forwardClosed[next] || cost >= forwardCost[next]))
+                continue;
+
+            openForward(next, node, cost);
+
+            // Если обратная волна уже дошла до соседа, через него проходит путь
+            if (backwardStamps[next] == currentStamp)
+                offerPath(next, cost + backwardCost[next]);
+        }
+    }
+
+    /**
+     * Раскрываем ячейку обратной волной. Шаг из соседа u в ячейку v стоит
+     * значение самой ячейки v, поэтому стоимость одинакова для всех соседей.
+     **/
+    private void expandBackward(int node)
+    {
+        backwardClosed[node] = true;
+        expandedCount++;
+
+        int x = node % width;
+        int y = node / width;
+        float g = backwardCost[node] + map.getCellValue(x, y);
+
+        if (g >= AStarPathfinder.COST_LIMIT)
+            return;
+
+        for (int k = 0; k < DX.length; k++)
+        {
+            int nx = x + DX[k];
+            int ny = y + DY[k];
+
+            if (nx < 0 || nx >= width || ny < 0 || ny >= height)
+                continue;
+
+            int next = ny * width + nx;
+            float cost = g + ((DX[k] != 0 && DY[k] != 0) ? DIAGONAL : 1);
+
+            if (cost >= AStarPathfinder.COST_LIMIT)
+                continue;
+
+            if (backwardStamps[next] == currentStamp &&
+                    (backwardClosed[next] || cost >= backwardCost[next]))
+                continue;
+
+            openBackward(next, node, cost);
+
+            // Если прямая волна уже дошла до соседа, через него проходит путь
+            if (forwardStamps[next] == currentStamp)
+                offerPath(next, forwardCost[next] + cost);
+        }
+    }
+
+    /** Запоминаем путь через указанную ячейку, если он дешевле лучшего найденного **/
+    private void offerPath(int node, float cost)
+    {
+        if (cost < bestCost)
+        {
+            bestCost = cost;
+            meetNode = node;
+        }
+    }
+
+    /** Добавляем ячейку в "открытый" набор прямой волны или обновляем её стоимость **/
+    private void openForward(int node, int from, float g)
+    {
+        forwardStamps[node] = currentStamp;
+        forwardClosed[node] = false;
+        forwardCost[node] = g;
+        forwardParent[node] = from;
+        forwardOpen.push(node, g + potential(node), -g);
+    }
+
+    /** Добавляем ячейку в "открытый" набор обратной волны или обновляем её стоимость **/
+    private void openBackward(int node, int from, float g)
+    {
+        backwardStamps[node] = currentStamp;
+        backwardClosed[node] = false;
+        backwardCost[node] = g;
+        backwardParent[node] = from;
+        backwardOpen.push(node, g - potential(node), -g);
+    }
+
+    /**
+     * Усредненная эвристика прямой волны: половина разности прямых расстояний
+     * от ячейки до конца и до начала. Обратная волна использует её со знаком минус.
+     **/
+    private float potential(int node)
+    {
+        int x = node % width;
+        int y = node / width;
+        return (distance(x, y, goalX, goalY) - distance(x, y, startX, startY)) / 2;
+    }
+
+    /** Прямое расстояние между двумя ячейками **/
+    private static float distance(int x0, int y0, int x1, int y1)
+    {
+        int dx = x1 - x0;
+        int dy = y1 - y0;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Подготавливаем массивы к новому поиску. Массивы пересоздаются только
+     * тогда, когда новая карта больше всех предыдущих.
+     **/
+    private void prepare(Map2D map)
+    {
+        int cells = GridPathfinder.cellCount(map);
+
+        this.map = map;
+        width = map.getWidth();
+        height = map.getHeight();
+
+        if (forwardCost.length < cells)
+        {
+            forwardCost = new float[cells];
+            backwardCost = new float[cells];
+            forwardParent = new int[cells];
+            backwardParent = new int[cells];
+            forwardStamps = new int[cells];
+            backwardStamps = new int[cells];
+            forwardClosed = new boolean[cells];
+            backwardClosed = new boolean[cells];
+            currentStamp = 0;
+        }
+        forwardOpen.ensureCapacity(cells);
+        backwardOpen.ensureCapacity(cells);
+        forwardOpen.clear();
+        backwardOpen.clear();
+
+        if (currentStamp == Integer.MAX_VALUE)
+        {
+            Arrays.fill(forwardStamps, 0);
+            Arrays.fill(backwardStamps, 0);
+            currentStamp = 0;
+        }
+        currentStamp++;
+
+        expandedCount = 0;
+    }
+
+    /**
+     * Собираем путь из двух половин: от начала до ячейки встречи по ссылкам
+     * прямой волны и от ячейки встречи до конца по ссылкам обратной волны
+     **/
+    private void buildPath()
+    {
+        int length = 0;
+        for (int node = meetNode; node >= 0; node = forwardParent(node))
+            length++;
+        for (int node = backwardParent(meetNode); node >= 0; node = backwardParent(node))
+            length++;
+
+        if (path.length < length)
+            path = new int[Math.max(length, path.length * 2)];
+
+        int i = 0;
+        for (int node = meetNode; node >= 0; node = forwardParent(node))
+            i++;
+        int j = i;
+        for (int node = meetNode; node >= 0; node = forwardParent(node))
+            path[--j] = node;
+        for (int node = backwardParent(meetNode); node >= 0; node = backwardParent(node))
+            path[i++] = node;
+
+        pathLength = length;
+    }
+
+    /** Предыдущая ячейка прямой волны или -1, если волна не проходила через ячейку **/
+    private int forwardParent(int node)
+    {
+        return forwardStamps[node] == currentStamp ? forwardParent[node] : -1;
+    }
+
+    /** Следующая ячейка обратной волны или -1, если волна не проходила через ячейку **/
+    private int backwardParent(int node)
+    {
+        return backwardStamps[node] == currentStamp ? backwardParent[node] : -1;
+    }
+
+    /** Проверяем номер ячейки пути и возвращаем его **/
+    private int checkPathIndex(int i)
+    {
+        if (i < 0 || i >= pathLength)
+            throw new IndexOutOfBoundsException("path index " + i + " out of range [0, " + pathLength + ")");
+
+        return i;
+    }
+}
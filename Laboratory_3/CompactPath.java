@@ -0,0 +1,119 @@
+/**
+ * Этот класс хранит путь в сжатом виде: только точки поворота, то есть начало,
+ * конец и ячейки, где путь меняет направление. Соседние точки соединены прямой
+ * {@link LineOfSight}, поэтому промежуточные ячейки при необходимости
+ * восстанавливаются по концам отрезков. Координаты лежат в одном массиве
+ * <code>int</code> парами (x, y), так что путь любой длины занимает два
+ * объекта вместо двух объектов на каждую ячейку у цепочки {@link Waypoint}.
+ * <p>
+ * Объекты класса неизменяемы. Создаются методами {@link PathCompactor}.
+ **/
+public final class CompactPath
+{
+    /** Координаты точек поворота парами (x, y) **/
+    private final int[] points;
+
+    /** Стоимость пути **/
+    private final float cost;
+
+
+    /** Создание пути из массива координат, который больше не будет изменяться **/
+    CompactPath(int[] points, float cost)
+    {
+        this.points = points;
+        this.cost = cost;
+    }
+
+    /** Возвращаем количество точек поворота, включая начало и конец **/
+    public int getPointCount()
+    {
+        return points.length / 2;
+    }
+
+    /** Возвращаем x координату i-й точки поворота, считая от начала **/
+    public int getX(int i)
+    {
+        return points[2 * checkIndex(i)];
+    }
+
+    /** Возвращаем y координату i-й точки поворота, считая от начала **/
+    public int getY(int i)
+    {
+        return points[2 * checkIndex(i) + 1];
+    }
+
+    /** Возвращаем стоимость пути **/
+    public float getCost()
+    {
+        return cost;
+    }
+
+    /** Возвращаем количество ячеек пути, включая начало и конец **/
+    public int getCellCount()
+    {
+        int cells = 1;
+        for (int i = 2; i < points.length; i += 2)
+            cells += LineOfSight.length(points[i - 2], points[i - 1], points[i], points[i + 1]);
+        return cells;
+    }
+
+    /** Возвращаем копию координат точек поворота парами (x, y) **/
+    public int[] toArray()
+    {
+        return points.clone();
+    }
+
+    /**
+     * Восстанавливаем полную цепочку путевых точек, по одной на ячейку, со стоимостями
+     * по указанной карте. Возвращается путевая точка конца, как у
+     * {@link AStarPathfinder#computePath}.
+     **/
+    public Waypoint toWaypoint(Map2D map)
+    {
+        Waypoint wp = new Waypoint(new Location(points[0], points[1]), null);
+        float g = 0;
+
+        for (int p = 2; p < points.length; p += 2)
+        {
+            int x0 = points[p - 2];
+            int y0 = points[p - 1];
+            int x1 = points[p];
+            int y1 = points[p + 1];
+
+            int n = LineOfSight.length(x0, y0, x1, y1);
+            for (int i = 1; i <= n; i++)
+            {
+                int x = LineOfSight.pointX(x0, y0, x1, y1, i);
+                int y = LineOfSight.pointY(x0, y0, x1, y1, i);
+
+                Location prev = wp.getLocation();
+                g += (x != prev.xCoord && y != prev.yCoord) ? GridHeuristic.DIAGONAL : 1;
+                g += map.getCellValue(x, y);
+
+                wp = new Waypoint(new Location(x, y), wp);
+                wp.setCosts(g, 0);
+            }
+        }
+        return wp;
+    }
+
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < points.length; i += 2)
+        {
+            if (i > 0)
+                sb.append(" -> ");
+            sb.append('(').append(points[i]).append(", ").append(points[i + 1]).append(')');
+        }
+        return sb.append(", cost ").append(cost).toString();
+    }
+
+    private int checkIndex(int i)
+    {
+        if (i < 0 || 2 * i >= points.length)
+            throw new IndexOutOfBoundsException("point index " + i + " out of range [0, " + getPointCount() + ")");
+
+        return i;
+    }
+}
@@ -0,0 +1,566 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Этот класс планирует пути нескольких агентов так, чтобы они не сталкивались:
+ * кооперативный A* в пространстве-времени. Агенты планируются по очереди в порядке
+ * приоритета, и каждый следующий агент обходит ячейки и переходы, уже занятые
+ * в общей таблице {@link ReservationTable} предыдущими агентами.
+ * <p>
+ * Состояние поиска - пара (ячейка, момент времени t), t не больше горизонта
+ * планирования. Из состояния можно шагнуть в одну из восьми соседних ячеек
+ * (стоимость шага та же, что и в {@link AStarPathfinder}) или остаться на месте,
+ * что стоит {@link #WAIT_COST}. Эвристикой служит точная стоимость пути до цели
+ * без учета других агентов, вычисленная {@link GridDijkstra}, поэтому поиск
+ * раскрывает в основном состояния, в которых агенту приходится ждать или обходить.
+ * Дойдя до цели, агент остается в ней до конца горизонта, поэтому цель
+ * принимается только в момент, после которого её никто больше не занимает.
+ * <p>
+ * Найденный путь сразу резервируется в таблице. Если несколько объектов поиска
+ * в разных потоках работают с одной таблицей и другой поток успел занять
+ * ячейку пути раньше, резервирования агента снимаются и путь планируется заново.
+ * Сам объект поиска хранит массивы между вызовами и не может использоваться
+ * из нескольких потоков одновременно; карта во время планирования не должна меняться.
+ * <p>
+ * Путь возвращается обычной цепочкой путевых точек {@link Waypoint}, по одной
+ * точке на каждый момент времени от 0 до прибытия: при ожидании местоположение
+ * повторяется. Поэтому номер точки от начала цепочки равен моменту, в который
+ * агент в ней находится.
+ **/
+public class CooperativePathfinder
+{
+    /** Стоимость ожидания на месте в течение одного шага времени **/
+    public static final float WAIT_COST = 1;
+
+    /** Сколько раз путь планируется заново, если другой поток занял его ячейки раньше **/
+    private static final int MAX_ATTEMPTS = 16;
+
+    /** Максимальная доля заполненных ячеек индекса состояний перед его расширением **/
+    private static final float LOAD_FACTOR = 0.5f;
+
+    /** Карта, по которой планируются пути **/
+    private final Map2D map;
+
+    /** Общая таблица резервирования **/
+    private final ReservationTable table;
+
+    /** Горизонт планирования: последний момент времени, который учитывает поиск **/
+    private final int horizon;
+
+    /** Ширина и высота карты **/
+    private final int width, height;
+
+    /** Поиск точных стоимостей путей до цели **/
+    private final GridDijkstra dijkstra = new GridDijkstra();
+
+    /** Стоимости путей от каждой ячейки до цели текущего агента **/
+    private final float[] goalDistance;
+
+    /** Ячейка и момент времени каждого состояния по его номеру **/
+    private int[] stateNode, stateTime;
+
+    /** Номер предыдущего состояния на лучшем известном пути или -1 **/
+    private int[] stateParent;
+
+    /** Стоимость лучшего известного пути до состояния **/
+    private float[] stateCost;
+
+    /** true, если состояние уже раскрыто **/
+    private boolean[] stateClosed;
+
+    /** Количество состояний, обнаруженных текущим поиском **/
+    private int stateCount;
+
+    /** Индекс состояний: ключи t * cells + node, увеличенные на 1; ноль - пустая ячейка **/
+    private long[] indexKeys;
+
+    /** Номера состояний в ячейках индекса **/
+    private int[] indexIds;
+
+    /** Количество состояний, при котором индекс будет расширен **/
+    private int indexThreshold;
+
+    /** Куча "открытых" состояний **/
+    private IndexedMinHeap open = new IndexedMinHeap(1024);
+
+    /** Количество раскрытых состояний за последний вызов **/
+    private int expandedCount;
+
+    /** Количество переходов, отвергнутых из-за чужих резервирований, за последний вызов **/
+    private int rejectedMoves;
+
+    /** Количество конфликтов, которых удалось избежать, за последний вызов **/
+    private int conflictsAvoided;
+
+
+    /**
+     * Создание объекта поиска для указанной карты и таблицы резервирования.
+     * Горизонт <code>horizon</code> ограничивает время прибытия агентов;
+     * до него включительно агенты, дошедшие до цели, резервируют свои цели.
+     **/
+    public CooperativePathfinder(Map2D map, ReservationTable table, int horizon)
+    {
+        if (map == null)
+            throw new NullPointerException("map cannot be null");
+
+        if (table == null)
+            throw new NullPointerException("table cannot be null");
+
+        if (horizon <= 0 || horizon >= ReservationTable.MAX_COORD)
+        {
+            throw new IllegalArgumentException("horizon must be in range (0, " +
+                    ReservationTable.MAX_COORD + "); got " + horizon);
+        }
+
+        this.map = map;
+        this.table = table;
+        this.horizon = horizon;
+
+        width = map.getWidth();
+        height = map.getHeight();
+        goalDistance = new float[GridPathfinder.cellCount(map)];
+
+        allocateStates(1024);
+        allocateIndex(2048);
+    }
+
+    /** Возвращаем горизонт планирования **/
+    public int getHorizon()
+    {
+        return horizon;
+    }
+
+    /** Возвращаем таблицу резервирования, в которую записываются пути **/
+    public ReservationTable getReservationTable()
+    {
+        return table;
+    }
+
+    /**
+     * Планируем и резервируем путь агента <code>agent</code> из (startX, startY)
+     * в (finishX, finishY). Возвращается путевая точка конца пути или <code>null</code>,
+     * если путь, не пересекающийся с уже зарезервированными, не найден
+     * до горизонта планирования; в этом случае таблица не меняется.
+     **/
+    public Waypoint findPath(int agent, int startX, int startY, int finishX, int finishY)
+    {
+        expandedCount = 0;
+        rejectedMoves = 0;
+        conflictsAvoided = 0;
+
+        return plan(agent, startX, startY, finishX, finishY);
+    }
+
+    /**
+     * Планируем пути всех запросов в порядке приоритета: i-й запрос планируется
+     * агентом с номером i после всех предыдущих. Возвращается массив той же длины,
+     * что и список запросов; i-й элемент - конец i-го пути или <code>null</code>.
+     * Счетчики объекта суммируются по всем запросам.
+     **/
+    public Waypoint[] findPaths(List<PathQuery> queries)
+    {
+        if (queries == null)
+            throw new NullPointerException("queries cannot be null");
+
+        expandedCount = 0;
+        rejectedMoves = 0;
+        conflictsAvoided = 0;
+
+        Waypoint[] paths = new Waypoint[queries.size()];
+        for (int i = 0; i < paths.length; i++)
+        {
+            PathQuery q = queries.get(i);
+            paths[i] = plan(i, q.getStartX(), q.getStartY(), q.getFinishX(), q.getFinishY());
+        }
+        return paths;
+    }
+
+    /**
+     * Снимаем резервирования пути агента, найденного {@link #findPath} или
+     * {@link #findPaths} этим или другим объектом поиска с той же таблицей и горизонтом:
+     * ячейки, переходы и цель до горизонта. После этого агента можно спланировать
+     * заново; освобожденные слоты таблицы используются новыми резервированиями.
+     **/
+    public void releasePath(int agent, Waypoint end)
+    {
+        if (end == null)
+            throw new NullPointerException("path cannot be null");
+
+        // Номер точки от начала цепочки равен моменту времени
+        int count = 0;
+        for (Waypoint wp = end; wp != null; wp = wp.getPrevious())
+            count++;
+
+        int[] nodes = new int[count];
+        for (Waypoint wp = end; wp != null; wp = wp.getPrevious())
+            nodes[--count] = wp.getLocation().yCoord * width + wp.getLocation().xCoord;
+
+        releasePath(agent, nodes, horizon);
+    }
+
+    /** Возвращаем количество состояний, раскрытых за последний вызов **/
+    public int getExpandedCount()
+    {
+        return expandedCount;
+    }
+
+    /**
+     * Возвращаем количество переходов, отвергнутых за последний вызов
+     * из-за резервирований других агентов
+     **/
+    public int getRejectedMoves()
+    {
+        return rejectedMoves;
+    }
+
+    /**
+     * Возвращаем количество конфликтов, которых удалось избежать за последний вызов:
+     * сколько раз кратчайший путь, построенный без учета других агентов,
+     * занял бы уже зарезервированную ячейку или встретился бы с другим агентом
+     * на встречном переходе
+     **/
+    public int getConflictsAvoided()
+    {
+        return conflictsAvoided;
+    }
+
+    /** Планирование одного агента с повторами, если резервирование не удалось **/
+    private Waypoint plan(int agent, int startX, int startY, int finishX, int finishY)
+    {
+        if (!map.contains(startX, startY) || !map.contains(finishX, finishY))
+        {
+            throw new IllegalArgumentException("start and finish must lie inside the map: " +
+                    startX + ", " + startY + " -> " + finishX + ", " + finishY);
+        }
+
+        int start = startY * width + startX;
+        int goal = finishY * width + finishX;
+
+        dijkstra.distancesTo(map, goal, goalDistance);
+        if (goalDistance[start] == Float.POSITIVE_INFINITY)
+            return null;
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++)
+        {
+            int conflicts = countConflicts(agent, start, goal);
+
+            int last = search(agent, start, goal);
+            if (last < 0)
+                return null;
+
+            if (reservePath(agent, last))
+            {
+                conflictsAvoided += conflicts;
+                return buildPath(last);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Поиск A* в пространстве-времени. Возвращаем номер конечного состояния
+     * или -1, если путь не найден.
+     **/
+    private int search(int agent, int start, int goal)
+    {
+        int goalX = goal % width;
+        int goalY = goal / width;
+
+        // Агент остается в цели до горизонта, поэтому цель должна быть свободна
+        // от момента прибытия до самого горизонта
+        int arrival = horizon + 1;
+        while (arrival > 0 && table.isFree(goalX, goalY, arrival - 1, agent))
+            arrival--;
+        if (arrival > horizon)
+            return -1;
+
+        if (!table.isFree(start % width, start / width, 0, agent))
+            return -1;
+
+        resetStates();
+        open.clear();
+
+        int first = stateId(start, 0);
+        stateCost[first] = 0;
+        open.push(first, goalDistance[start], 0);
+
+        while (!open.isEmpty())
+        {
+            int id = open.pop();
+            int node = stateNode[id];
+            int t = stateTime[id];
+            float g = stateCost[id];
+
+            stateClosed[id] = true;
+            expandedCount++;
+
+            if (node == goal && t >= arrival)
+                return id;
+
+            if (t >= horizon)
+                continue;
+
+            int x = node % width;
+            int y = node / width;
+
+            // Ожидание на месте
+            if (table.isFree(x, y, t + 1, agent))
+                relax(id, node, t + 1, g + WAIT_COST);
+            else
+                rejectedMoves++;
+
+            for (int k = 0; k < Neighbourhood.EIGHT.size(); k++)
+            {
+                int nx = x + Neighbourhood.EIGHT.dx(k);
+                int ny = y + Neighbourhood.EIGHT.dy(k);
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height)
+                    continue;
+
+                int next = ny * width + nx;
+                if (goalDistance[next] == Float.POSITIVE_INFINITY)
+                    continue;
+
+                float cost = g + Neighbourhood.EIGHT.stepLength(k) + map.getCellValue(nx, ny);
+                if (cost >= AStarPathfinder.COST_LIMIT)
+                    continue;
+
+                if (!table.isMoveFree(x, y, nx, ny, t, agent))
+                {
+                    rejectedMoves++;
+                    continue;
+                }
+
+                relax(id, next, t + 1, cost);
+            }
+        }
+        return -1;
+    }
+
+    /** Обновляем состояние (node, t), если через parent до него можно дойти дешевле **/
+    private void relax(int parent, int node, int t, float cost)
+    {
+        int id = stateId(node, t);
+        if (stateClosed[id] || cost >= stateCost[id])
+            return;
+
+        stateCost[id] = cost;
+        stateParent[id] = parent;
+
+        // При равных оценках раскрываем сначала более дорогие, то есть более близкие к цели
+        open.push(id, cost + goalDistance[node], -cost);
+    }
+
+    /**
+     * Резервируем найденный путь: ячейки на каждый момент времени, переходы
+     * между ними и цель до горизонта. Если другой агент успел занять что-то раньше,
+     * снимаем уже сделанные резервирования и возвращаем false.
+     **/
+    private boolean reservePath(int agent, int last)
+    {
+        int[] nodes = pathNodes(last);
+        int arrival = nodes.length - 1;
+        int goal = nodes[arrival];
+
+        for (int t = 0; t <= horizon; t++)
+        {
+            int node = t <= arrival ? nodes[t] : goal;
+            boolean reserved = table.reserve(node % width, node / width, t, agent);
+
+            if (reserved && t > 0 && t <= arrival && nodes[t - 1] != node)
+            {
+                int prev = nodes[t - 1];
+                reserved = table.reserveMove(prev % width, prev / width,
+                        node % width, node / width, t - 1, agent) &&
+                        table.isMoveFree(prev % width, prev / width,
+                                node % width, node / width, t - 1, agent);
+            }
+
+            if (!reserved)
+            {
+                releasePath(agent, nodes, t);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Снимаем резервирования агента на моменты от 0 до <code>end</code> включительно **/
+    private void releasePath(int agent, int[] nodes, int end)
+    {
+        int arrival = nodes.length - 1;
+        for (int t = 0; t <= end; t++)
+        {
+            int node = t <= arrival ? nodes[t] : nodes[arrival];
+            table.release(node % width, node / width, t, agent);
+
+            if (t > 0 && t <= arrival && nodes[t - 1] != node)
+            {
+                int prev = nodes[t - 1];
+                table.releaseMove(prev % width, prev / width, node % width, node / width, t - 1, agent);
+            }
+        }
+    }
+
+    /**
+     * Подсчитываем конфликты кратчайшего пути без учета других агентов: идем
+     * из начала по убыванию стоимости до цели и проверяем каждый шаг по таблице
+     **/
+    private int countConflicts(int agent, int start, int goal)
+    {
+        int conflicts = 0;
+        int node = start;
+
+        for (int t = 0; node != goal && t < horizon; t++)
+        {
+            int x = node % width;
+            int y = node / width;
+
+            // Следующая ячейка кратчайшего пути: та, через которую достигается минимум
+            int best = -1;
+            float bestCost = Float.POSITIVE_INFINITY;
+            for (int k = 0; k < Neighbourhood.EIGHT.size(); k++)
+            {
+                int nx = x + Neighbourhood.EIGHT.dx(k);
+                int ny = y + Neighbourhood.EIGHT.dy(k);
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height)
+                    continue;
+
+                int next = ny * width + nx;
+                float cost = Neighbourhood.EIGHT.stepLength(k) + map.getCellValue(nx, ny) + goalDistance[next];
+                if (cost < bestCost)
+                {
+                    bestCost = cost;
+                    best = next;
+                }
+            }
+
+            if (best < 0 || goalDistance[best] >= goalDistance[node])
+                break;
+
+            if (!table.isMoveFree(x, y, best % width, best / width, t, agent))
+                conflicts++;
+            node = best;
+        }
+        return conflicts;
+    }
+
+    /** Возвращаем ячейки пути, заканчивающегося состоянием last, по моментам времени **/
+    private int[] pathNodes(int last)
+    {
+        int[] nodes = new int[stateTime[last] + 1];
+        for (int id = last; id >= 0; id = stateParent[id])
+            nodes[stateTime[id]] = stateNode[id];
+        return nodes;
+    }
+
+    /** Строим цепочку путевых точек, по одной на каждый момент времени **/
+    private Waypoint buildPath(int last)
+    {
+        int count = stateTime[last] + 1;
+        int[] ids = new int[count];
+        for (int id = last; id >= 0; id = stateParent[id])
+            ids[stateTime[id]] = id;
+
+        Waypoint wp = null;
+        for (int t = 0; t < count; t++)
+        {
+            int node = stateNode[ids[t]];
+            wp = new Waypoint(new Location(node % width, node / width), wp);
+            wp.setCosts(stateCost[ids[t]], 0);
+        }
+        return wp;
+    }
+
+    /** Возвращаем номер состояния (node, t), создавая его при первом обращении **/
+    private int stateId(int node, int t)
+    {
+        long key = (long) t * goalDistance.length + node + 1;
+        int mask = indexKeys.length - 1;
+        int slot = Location.hash(key) & mask;
+
+        while (indexKeys[slot] != 0)
+        {
+            if (indexKeys[slot] == key)
+                return indexIds[slot];
+            slot = (slot + 1) & mask;
+        }
+
+        int id = stateCount++;
+        if (id == stateNode.length)
+        {
+            allocateStates(id * 2);
+            open.grow(id * 2);
+        }
+
+        stateNode[id] = node;
+        stateTime[id] = t;
+        stateParent[id] = -1;
+        stateCost[id] = Float.POSITIVE_INFINITY;
+        stateClosed[id] = false;
+
+        indexKeys[slot] = key;
+        indexIds[slot] = id;
+        if (stateCount > indexThreshold)
+            rehash(indexKeys.length * 2);
+
+        return id;
+    }
+
+    /** Забываем состояния предыдущего поиска **/
+    private void resetStates()
+    {
+        stateCount = 0;
+        Arrays.fill(indexKeys, 0);
+    }
+
+    /** Расширяем массивы состояний, сохраняя их содержимое **/
+    private void allocateStates(int capacity)
+    {
+        if (stateNode == null)
+        {
+            stateNode = new int[capacity];
+            stateTime = new int[capacity];
+            stateParent = new int[capacity];
+            stateCost = new float[capacity];
+            stateClosed = new boolean[capacity];
+            open.grow(capacity);
+            return;
+        }
+
+        stateNode = Arrays.copyOf(stateNode, capacity);
+        stateTime = Arrays.copyOf(stateTime, capacity);
+        stateParent = Arrays.copyOf(stateParent, capacity);
+        stateCost = Arrays.copyOf(stateCost, capacity);
+        stateClosed = Arrays.copyOf(stateClosed, capacity);
+    }
+
+    private void allocateIndex(int capacity)
+    {
+        indexKeys = new long[capacity];
+        indexIds = new int[capacity];
+        indexThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /** Перестраиваем индекс состояний с новым размером таблицы **/
+    private void rehash(int capacity)
+    {
+        long[] oldKeys = indexKeys;
+        int[] oldIds = indexIds;
+        allocateIndex(capacity);
+
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            long key = oldKeys[i];
+            if (key == 0)
+                continue;
+
+            int slot = Location.hash(key) & mask;
+            while (indexKeys[slot] != 0)
+                slot = (slot + 1) & mask;
+
+            indexKeys[slot] = key;
+            indexIds[slot] = oldIds[i];
+        }
+    }
+}
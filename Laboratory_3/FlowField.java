@@ -0,0 +1,388 @@
+import java.util.Arrays;
+
+/**
+ * Этот класс хранит поле стоимостей до конечного местоположения карты: для каждой
+ * ячейки - стоимость кратчайшего пути из неё до конца и следующую ячейку этого пути.
+ * Поле вычисляется одним обратным поиском Дейкстры от конца по всей карте, после чего
+ * путь из любой начальной ячейки получается проходом по следующим ячейкам
+ * за время, пропорциональное длине пути. Это выгодно, когда много агентов идут
+ * к одной цели: вместо отдельного поиска A* на каждого агента поле строится один раз.
+ * <p>
+ * Стоимость шага та же, что и в {@link AStarPathfinder}: длина шага плюс значение
+ * ячейки, в которую делается шаг; пути не дешевле {@link AStarPathfinder#COST_LIMIT}
+ * отбрасываются.
+ * <p>
+ * Поле привязано к версии карты и пересчитывается перед первым запросом после
+ * изменения. Объект подписывается на изменения карты ({@link MapChangeListener}),
+ * и изменение стоимости ячеек исправляет только затронутую часть поля: если ячейка
+ * подорожала, заново вычисляются ячейки, пути которых шли через неё, а если
+ * подешевела - от неё распространяются улучшения. Смена конечного местоположения
+ * пересчитывает поле целиком. Объект этого класса нельзя использовать
+ * из нескольких потоков одновременно.
+ **/
+public class FlowField implements MapChangeListener
+{
+    /** Бесконечная стоимость: конец из ячейки недостижим **/
+    private static final float INFINITY = Float.POSITIVE_INFINITY;
+
+    /**
+     * Поле пересчитывается целиком, если при исправлении сброшено больше
+     * 1 / REBUILD_FRACTION всех ячеек
+     **/
+    private static final int REBUILD_FRACTION = 8;
+
+    /** Карта, для которой строится поле **/
+    private final Map2D map;
+
+    /** Размеры карты **/
+    private final int width, height;
+
+    /** Стоимость пути от ячейки до конца **/
+    private final float[] cost;
+
+    /** Следующая ячейка пути к концу или -1, если конец недостижим или это сам конец **/
+    private final int[] next;
+
+    /** Ячейки, ожидающие раскрытия, упорядоченные по стоимости **/
+    private final IndexedMinHeap heap;
+
+    /** Номер конечной ячейки, для которой построено поле, или -1 **/
+    private int goal = -1;
+
+    /** Версия карты, которой соответствует поле **/
+    private long version;
+
+    /** Номера ячеек, изменившихся с последнего пересчета, их прежние значения и отметки **/
+    private int[] changed = new int[16];
+    private int[] changedFrom = new int[16];
+    private int changedCount;
+    private final boolean[] changedMark;
+
+    /** Отметки ячеек, стоимость которых сброшена при исправлении поля **/
+    private final boolean[] invalid;
+
+    /** Ячейки со сброшенной стоимостью **/
+    private int[] invalidList = new int[16];
+    private int invalidCount;
+
+    /** Количество ячеек, раскрытых последним пересчетом **/
+    private int updatedCount;
+
+
+    /** Создание поля для указанной карты. Само поле вычисляется при первом запросе. **/
+    public FlowField(Map2D map)
+    {
+        if (map == null)
+            throw new NullPointerException("map cannot be null");
+
+        // Карта больше предела массивов отклоняется до выделения памяти
+        int cells = GridPathfinder.cellCount(map);
+
+        this.map = map;
+        width = map.getWidth();
+        height = map.getHeight();
+
+        cost = new float[cells];
+        next = new int[cells];
+        heap = new IndexedMinHeap(cells);
+        changedMark = new boolean[cells];
+        invalid = new boolean[cells];
+
+        // Снимок карты не меняется, поэтому подписываться на него незачем
+        if (!(map instanceof MapSnapshot))
+            map.addChangeListener(this);
+    }
+
+    /** Запоминаем измененную ячейку и её прежнее значение до следующего пересчета **/
+    public void cellChanged(Map2D map, int x, int y, int oldValue, int newValue)
+    {
+        int node = y * width + x;
+        if (changedMark[node])
+            return;
+
+        changedMark[node] = true;
+        if (changedCount == changed.length)
+        {
+            changed = Arrays.copyOf(changed, changedCount * 2);
+            changedFrom = Arrays.copyOf(changedFrom, changedCount * 2);
+        }
+        changed[changedCount] = node;
+        changedFrom[changedCount] = oldValue;
+        changedCount++;
+    }
+
+    /** Отписываемся от изменений карты; после этого объект больше не используется **/
+    public void dispose()
+    {
+        map.removeChangeListener(this);
+    }
+
+    /**
+     * Приводим поле в соответствие с текущей версией карты. Вызывается
+     * автоматически перед каждым запросом, поэтому явный вызов нужен только,
+     * чтобы выполнить пересчет заранее.
+     **/
+    public void update()
+    {
+        Location f = map.getFinish();
+        int finish = f.yCoord * width + f.xCoord;
+
+        if (finish != goal)
+        {
+            rebuild(finish);
+        }
+        else if (map.getVersion() != version)
+        {
+            updatedCount = 0;
+            repair();
+        }
+        version = map.getVersion();
+    }
+
+    /**
+     * Возвращаем стоимость кратчайшего пути из ячейки (x, y) до конца
+     * или <code>Float.POSITIVE_INFINITY</code>, если конец недостижим
+     **/
+    public float getCost(int x, int y)
+    {
+        int node = index(x, y);
+        update();
+        return cost[node];
+    }
+
+    /**
+     * Возвращаем следующую ячейку кратчайшего пути из (x, y) к концу или
+     * <code>null</code>, если (x, y) - сам конец или конец из неё недостижим
+     **/
+    public Location getNextStep(int x, int y)
+    {
+        int node = index(x, y);
+        update();
+
+        int n = next[node];
+        return n >= 0 ? new Location(n % width, n / width) : null;
+    }
+
+    /**
+     * Возвращаем путь из ячейки (x, y) до конца той же цепочкой путевых точек,
+     * что и {@link AStarPathfinder#computePath}: возвращается путевая точка конца,
+     * по которой можно пройти назад к началу. Если конец недостижим,
+     * возвращается <code>null</code>.
+     **/
+    public Waypoint getPath(int x, int y)
+    {
+        int node = index(x, y);
+        update();
+
+        if (cost[node] == INFINITY)
+            return null;
+
+        Waypoint wp = new Waypoint(new Location(x, y), null);
+        wp.setCosts(0, cost[node]);
+
+        float g = 0;
+        while (node != goal)
+        {
+            int n = next[node];
+            g += stepLength(node, n) + map.getCellValue(n % width, n / width);
+
+            wp = new Waypoint(new Location(n % width, n / width), wp);
+            wp.setCosts(g, cost[n]);
+            node = n;
+        }
+        return wp;
+    }
+
+    /** Возвращаем количество ячеек, раскрытых последним пересчетом поля **/
+    public int getUpdatedCount()
+    {
+        return updatedCount;
+    }
+
+    /** Вычисляем поле заново для указанной конечной ячейки **/
+    private void rebuild(int finish)
+    {
+        Arrays.fill(cost, INFINITY);
+        Arrays.fill(next, -1);
+        heap.clear();
+
+        for (int i = 0; i < changedCount; i++)
+            changedMark[changed[i]] = false;
+        changedCount = 0;
+
+        goal = finish;
+        updatedCount = 0;
+
+        cost[goal] = 0;
+        heap.push(goal, 0, 0);
+        propagate();
+    }
+
+    /**
+     * Исправляем поле после изменения стоимости ячеек. Шаг из соседа в ячейку c
+     * стоит значение c, поэтому изменение c влияет только на пути, входящие в c.
+     * Если c подорожала, сбрасываем все ячейки, пути которых входят в c, и заново
+     * оцениваем их по соседям с верными стоимостями. Если подешевела, снова
+     * раскрываем c, чтобы улучшение дошло до соседей. Затем доводим поле
+     * поиском Дейкстры от всех этих ячеек.
+     **/
+    private void repair()
+    {
+        heap.clear();
+        invalidCount = 0;
+
+        for (int i = 0; i < changedCount; i++)
+        {
+            int node = changed[i];
+            if (map.getCellValue(node % width, node / width) > changedFrom[i])
+                invalidateSubtree(node);
+        }
+
+        // Если сброшена заметная часть карты, пересчитать поле целиком дешевле
+        if (invalidCount > cost.length / REBUILD_FRACTION)
+        {
+            for (int i = 0; i < invalidCount; i++)
+                invalid[invalidList[i]] = false;
+            rebuild(goal);
+            return;
+        }
+
+        for (int i = 0; i < invalidCount; i++)
+            reconnect(invalidList[i]);
+
+        for (int i = 0; i < changedCount; i++)
+        {
+            int node = changed[i];
+            changedMark[node] = false;
+
+            if (cost[node] != INFINITY)
+                heap.push(node, cost[node], 0);
+        }
+        changedCount = 0;
+
+        for (int i = 0; i < invalidCount; i++)
+            invalid[invalidList[i]] = false;
+
+        propagate();
+    }
+
+    /** Сбрасываем стоимости всех ячеек, пути которых входят в указанную ячейку **/
+    private void invalidateSubtree(int root)
+    {
+        int first = invalidCount;
+
+        addChildren(root);
+        for (int i = first; i < invalidCount; i++)
+            addChildren(invalidList[i]);
+    }
+
+    /** Сбрасываем соседей, следующая ячейка которых - указанная **/
+    private void addChildren(int node)
+    {
+        int x = node % width;
+        int y = node / width;
+
+        for (int k = 0; k < Neighbourhood.EIGHT.size(); k++)
+        {
+            int nx = x + Neighbourhood.EIGHT.dx(k);
+            int ny = y + Neighbourhood.EIGHT.dy(k);
+            if (nx < 0 || nx >= width || ny < 0 || ny >= height)
+                continue;
+
+            int child = ny * width + nx;
+            if (next[child] != node || invalid[child])
+                continue;
+
+            invalid[child] = true;
+            cost[child] = INFINITY;
+            next[child] = -1;
+
+            if (invalidCount == invalidList.length)
+                invalidList = Arrays.copyOf(invalidList, invalidCount * 2);
+            invalidList[invalidCount++] = child;
+        }
+    }
+
+    /** Оцениваем сброшенную ячейку по соседям, стоимости которых остались верными **/
+    private void reconnect(int node)
+    {
+        int x = node % width;
+        int y = node / width;
+
+        for (int k = 0; k < Neighbourhood.EIGHT.size(); k++)
+        {
+            int nx = x + Neighbourhood.EIGHT.dx(k);
+            int ny = y + Neighbourhood.EIGHT.dy(k);
+            if (nx < 0 || nx >= width || ny < 0 || ny >= height)
+                continue;
+
+            int n = ny * width + nx;
+            if (invalid[n] || cost[n] == INFINITY)
+                continue;
+
+            float c = cost[n] + Neighbourhood.EIGHT.stepLength(k) + map.getCellValue(nx, ny);
+            if (c < AStarPathfinder.COST_LIMIT && c < cost[node])
+            {
+                cost[node] = c;
+                next[node] = n;
+            }
+        }
+
+        if (cost[node] != INFINITY)
+            heap.push(node, cost[node], 0);
+    }
+
+    /**
+     * Поиск Дейкстры в обратном направлении от ячеек кучи: сосед получает
+     * стоимость ячейки плюс длину шага и значение самой ячейки
+     **/
+    private void propagate()
+    {
+        while (!heap.isEmpty())
+        {
+            int node = heap.pop();
+            int x = node % width;
+            int y = node / width;
+            updatedCount++;
+
+            float d = cost[node];
+            float enter = map.getCellValue(x, y);
+            if (d + enter >= AStarPathfinder.COST_LIMIT)
+                continue;
+
+            for (int k = 0; k < Neighbourhood.EIGHT.size(); k++)
+            {
+                int nx = x + Neighbourhood.EIGHT.dx(k);
+                int ny = y + Neighbourhood.EIGHT.dy(k);
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height)
+                    continue;
+
+                int n = ny * width + nx;
+                float c = d + Neighbourhood.EIGHT.stepLength(k) + enter;
+                if (c < AStarPathfinder.COST_LIMIT && c < cost[n])
+                {
+                    cost[n] = c;
+                    next[n] = node;
+                    heap.push(n, c, 0);
+                }
+            }
+        }
+    }
+
+    /** Длина шага между соседними ячейками **/
+    private float stepLength(int from, int to)
+    {
+        int dx = to % width - from % width;
+        int dy = to / width - from / width;
+        return (dx != 0 && dy != 0) ? GridHeuristic.DIAGONAL : 1;
+    }
+
+    /** Номер ячейки с проверкой координат **/
+    private int index(int x, int y)
+    {
+        if (!map.contains(x, y))
+            throw new IllegalArgumentException("cell is outside the map: " + x + ", " + y);
+
+        return y * width + x;
+    }
+}
@@ -0,0 +1,100 @@
+import java.util.Arrays;
+
+/**
+ * Этот класс вычисляет точные стоимости путей от одной ячейки карты до всех
+ * остальных (или от всех ячеек до одной) алгоритмом Дейкстры. Стоимость шага
+ * та же, что и в {@link AStarPathfinder}: длина шага плюс значение ячейки,
+ * в которую делается шаг; пути не дешевле {@link AStarPathfinder#COST_LIMIT}
+ * отбрасываются. Стоимости недостижимых ячеек равны
+ * <code>Float.POSITIVE_INFINITY</code>.
+ * <p>
+ * Результат записывается в массив, индексированный номером ячейки
+ * <code>y * width + x</code>. Объект хранит кучу между вызовами
+ * и не может использоваться из нескольких потоков одновременно.
+ **/
+public class GridDijkstra
+{
+    /** Длина диагонального шага **/
+    private static final float DIAGONAL = (float) Math.sqrt(2);
+
+    /** Смещения по x для восьми соседних ячеек **/
+    private static final int[] DX = { -1, 0, 1, -1, 1, -1, 0, 1 };
+
+    /** Смещения по y для восьми соседних ячеек **/
+    private static final int[] DY = { -1, -1, -1, 0, 0, 1, 1, 1 };
+
+    /** Куча ячеек, упорядоченная по стоимости **/
+    private IndexedMinHeap heap = new IndexedMinHeap(1);
+
+
+    /**
+     * Вычисляем стоимости путей из ячейки <code>source</code> во все ячейки карты
+     * и записываем их в <code>dist</code>
+     **/
+    public void distancesFrom(Map2D map, int source, float[] dist)
+    {
+        run(map, source, dist, false);
+    }
+
+    /**
+     * Вычисляем стоимости путей из всех ячеек карты в ячейку <code>target</code>
+     * и записываем их в <code>dist</code>. Стоимость шага при этом платится
+     * за ячейку, в которую шаг входит, как и при прямом поиске.
+     **/
+    public void distancesTo(Map2D map, int target, float[] dist)
+    {
+        run(map, target, dist, true);
+    }
+
+    /** Основной цикл алгоритма Дейкстры в прямом или обратном направлении **/
+    private void run(Map2D map, int origin, float[] dist, boolean reverse)
+    {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int cells = GridPathfinder.cellCount(map);
+
+        if (origin < 0 || origin >= cells)
+            throw new IllegalArgumentException("cell " + origin + " is outside the map");
+
+        if (dist.length < cells)
+            throw new IllegalArgumentException("dist must hold " + cells + " cells; got " + dist.length);
+
+        Arrays.fill(dist, 0, cells, Float.POSITIVE_INFINITY);
+        heap.ensureCapacity(cells);
+
+        dist[origin] = 0;
+        heap.push(origin, 0, 0);
+
+        while (!heap.isEmpty())
+        {
+            int node = heap.pop();
+            int x = node % width;
+            int y = node / width;
+            float d = dist[node];
+
+            // В обратном направлении шаг из соседа в ячейку стоит значение самой ячейки
+            float enter = reverse ? map.getCellValue(x, y) : 0;
+            if (d + enter >= AStarPathfinder.COST_LIMIT)
+                continue;
+
+            for (int k = 0; k < DX.length; k++)
+            {
+                int nx = x + DX[k];
+                int ny = y + DY[k];
+
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height)
+                    continue;
+
+                float step = (DX[k] != 0 && DY[k] != 0) ? DIAGONAL : 1;
+                float cost = d + step + (reverse ? enter : map.getCellValue(nx, ny));
+
+                int next = ny * width + nx;
+                if (cost < AStarPathfinder.COST_LIMIT && cost < dist[next])
+                {
+                    dist[next] = cost;
+                    heap.push(next, cost, 0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Эвристика алгоритма поиска пути: оценка снизу стоимости пути от ячейки (x, y)
+ * до конечной ячейки (goalX, goalY). Координаты передаются числами, а не
+ * объектами {@link Location}, поэтому оценка в цикле поиска не создает объектов
+ * и может быть встроена JIT-компилятором.
+ * <p>
+ * Оценка называется допустимой, если она не превышает стоимости кратчайшего пути.
+ * Поиск A* с допустимой и согласованной оценкой находит путь наименьшей стоимости.
+ * Стоимость ячеек неотрицательна, поэтому любая оценка, не превышающая длины пути
+ * без учета стоимостей ячеек, допустима.
+ **/
+public interface GridHeuristic
+{
+    /** Длина диагонального шага **/
+    float DIAGONAL = (float) Math.sqrt(2);
+
+    /** Прямое (евклидово) расстояние; допустима для любого набора соседей **/
+    GridHeuristic EUCLIDEAN = (x, y, goalX, goalY) ->
+    {
+        int dx = goalX - x;
+        int dy = goalY - y;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    };
+
+    /**
+     * Восьмисвязное расстояние: длина пути из прямых и диагональных шагов
+     * без препятствий. Наиболее точная допустимая оценка для {@link Neighbourhood#EIGHT}.
+     **/
+    GridHeuristic OCTILE = (x, y, goalX, goalY) ->
+    {
+        int dx = Math.abs(goalX - x);
+        int dy = Math.abs(goalY - y);
+        return Math.max(dx, dy) + (DIAGONAL - 1) * Math.min(dx, dy);
+    };
+
+    /**
+     * Расстояние Чебышёва: наибольшая из разностей координат. Допустима для любого
+     * набора соседей, но менее точна, чем {@link #OCTILE}.
+     **/
+    GridHeuristic CHEBYSHEV = (x, y, goalX, goalY) ->
+            Math.max(Math.abs(goalX - x), Math.abs(goalY - y));
+
+    /**
+     * Манхэттенское расстояние: сумма разностей координат. Наиболее точная
+     * допустимая оценка для {@link Neighbourhood#FOUR}; для восьми соседей
+     * недопустима и дает неоптимальные пути.
+     **/
+    GridHeuristic MANHATTAN = (x, y, goalX, goalY) ->
+            Math.abs(goalX - x) + Math.abs(goalY - y);
+
+
+    /** Оцениваем стоимость пути от ячейки (x, y) до ячейки (goalX, goalY) **/
+    float estimate(int x, int y, int goalX, int goalY);
+
+    /**
+     * Возвращаем true, если оценку можно использовать для поиска по указанной карте.
+     * Эвристики, вычисленные заранее для конкретной карты, возвращают false
+     * после её изменения.
+     **/
+    default boolean isValidFor(Map2D map)
+    {
+        return true;
+    }
+}
@@ -0,0 +1,603 @@
+import java.util.Arrays;
+
+/**
+ * Этот класс содержит второй вариант алгоритма поиска пути A*, работающий
+ * непосредственно по сетке ячеек {@link Map2D}. Вместо объектов
+ * {@link Location} и {@link Waypoint} состояние поиска (фактическая стоимость,
+ * родительская ячейка, признаки "открыта"/"закрыта") хранится в плоских массивах,
+ * индексированных номером ячейки <code>y * width + x</code>.
+ * <p>
+ * Массивы сохраняются между вызовами и переиспользуются, поэтому повторный поиск
+ * по карте того же размера не выделяет память. В отличие от {@link AStarPathfinder}
+ * объект этого класса хранит состояние, поэтому его нельзя использовать
+ * из нескольких потоков одновременно.
+ * <p>
+ * Стоимость шага та же, что и в {@link AStarPathfinder}: длина шага
+ * (1 или корень из 2) плюс значение ячейки, в которую делается шаг.
+ * Карта должна помещаться в массивы: не больше {@link #MAX_CELLS} ячеек.
+ **/
+public class GridPathfinder
+{
+    /** Признак ячейки, находящейся в "открытом" наборе **/
+    protected static final byte OPEN = 1;
+
+    /** Признак ячейки, находящейся в "закрытом" наборе **/
+    protected static final byte CLOSED = 2;
+
+    /** Длина диагонального шага **/
+    protected static final float DIAGONAL = (float) Math.sqrt(2);
+
+    /** Наибольшая длина массива, которую гарантированно выделяет JVM **/
+    static final int MAX_CELLS = Integer.MAX_VALUE - 8;
+
+    /** Карта, по которой выполняется текущий поиск **/
+    protected Map2D map;
+
+    /** Ширина карты текущего поиска **/
+    protected int width;
+
+    /** Высота карты текущего поиска **/
+    protected int height;
+
+    /** Фактическая стоимость пути от начала до каждой ячейки **/
+    protected float[] gCost = new float[0];
+
+    /** Номер родительской ячейки на найденном пути или -1 для начальной ячейки **/
+    protected int[] parent = new int[0];
+
+    /** Признаки OPEN/CLOSED; действительны только для ячеек с текущей меткой поиска **/
+    protected byte[] flags = new byte[0];
+
+    /**
+     * Метка поиска, в котором ячейка была достигнута. Благодаря меткам массивы
+     * не нужно очищать перед каждым поиском.
+     **/
+    private int[] stamps = new int[0];
+
+    /** Метка текущего поиска **/
+    private int currentStamp;
+
+    /** Куча "открытых" ячеек, упорядоченная по оценке общей стоимости **/
+    protected IndexedMinHeap open = new IndexedMinHeap(1);
+
+    /** x координата конечной ячейки текущего поиска **/
+    protected int goalX;
+
+    /** y координата конечной ячейки текущего поиска **/
+    protected int goalY;
+
+    /** Количество ячеек, раскрытых во время последнего поиска **/
+    protected int expandedCount;
+
+    /** Количество ячеек, впервые открытых во время последнего поиска **/
+    private int openedCount;
+
+    /** Количество уменьшений стоимости открытых ячеек во время последнего поиска **/
+    private int improvedCount;
+
+    /** Наибольший размер "открытого" набора во время последнего поиска **/
+    private int peakOpenSize;
+
+    /** Слушатель, которому сообщаются показатели каждого поиска **/
+    private SearchListener listener = SearchListener.NONE;
+
+    /** Показатели поиска, передаваемые слушателю; создаются при подключении слушателя **/
+    private SearchStats stats;
+
+    /** Набор соседей, в которые делается шаг из раскрываемой ячейки **/
+    private Neighbourhood neighbourhood = Neighbourhood.EIGHT;
+
+    /** Эвристика, заданная {@link #setHeuristic}, или <code>null</code> для эвристики соседей **/
+    private GridHeuristic heuristic;
+
+    /** Эвристика текущего поиска **/
+    private GridHeuristic activeHeuristic = GridHeuristic.EUCLIDEAN;
+
+    /** Множитель эвристики; больше 1 для взвешенного A* **/
+    private float heuristicWeight = 1;
+
+    /** true, если поиск ограничен прямоугольником, заданным {@link #setSearchBounds} **/
+    private boolean bounded;
+
+    /** Границы поиска, включительно; без ограничения совпадают с краями карты **/
+    protected int minX, minY, maxX, maxY;
+
+    /** Ячейки найденного пути от начала до конца **/
+    private int[] path = new int[16];
+
+    /** Количество ячеек в найденном пути или 0, если путь не найден **/
+    private int pathLength;
+
+    /** Стоимость найденного пути **/
+    private float pathCost;
+
+
+    /**
+     * Пытаемся найти путь между указанными ячейками карты. Возвращаем true,
+     * если путь найден; сам путь затем доступен через {@link #getPathLength()},
+     * {@link #getPathX(int)}, {@link #getPathY(int)} и {@link #toWaypoint()}.
+     **/
+    public boolean findPath(Map2D map, int startX, int startY, int finishX, int finishY)
+    {
+        if (map == null)
+            throw new NullPointerException("map cannot be null");
+
+        if (!map.contains(startX, startY))
+            throw new IllegalArgumentException("start is outside the map: " + startX + ", " + startY);
+
+        if (!map.contains(finishX, finishY))
+            throw new IllegalArgumentException("finish is outside the map: " + finishX + ", " + finishY);
+
+        // Время измеряется, только если подключен слушатель
+        boolean timed = listener != SearchListener.NONE;
+        long t0 = timed ? System.nanoTime() : 0;
+
+        prepare(map);
+
+        if (!inBounds(startX, startY) || !inBounds(finishX, finishY))
+            throw new IllegalArgumentException("start and finish must lie inside the search bounds");
+
+        goalX = finishX;
+        goalY = finishY;
+
+        // Эвристика, вычисленная для другой версии карты, может быть недопустимой
+        activeHeuristic = (heuristic != null && heuristic.isValidFor(map)) ?
+                heuristic : neighbourhood.getDefaultHeuristic();
+
+        int start = startY * width + startX;
+        int goal = finishY * width + finishX;
+
+        open(start, -1, 0);
+        long t1 = timed ? System.nanoTime() : 0;
+
+        boolean found = false;
+        while (!open.isEmpty())
+        {
+            // Берем "лучшую" ячейку и переносим её в "закрытый" набор
+            int node = open.pop();
+            flags[node] = CLOSED;
+
+            if (node == goal)
+            {
+                found = true;
+                break;
+            }
+
+            expandedCount++;
+            expand(node);
+
+            if (timed)
+                listener.cellExpanded(node % width, node / width);
+
+            if (open.size() > peakOpenSize)
+                peakOpenSize = open.size();
+        }
+        long t2 = timed ? System.nanoTime() : 0;
+
+        if (found)
+        {
+            buildPath(goal);
+        }
+        else
+        {
+            pathLength = 0;
+            pathCost = 0;
+        }
+
+        if (timed)
+        {
+            stats.record(expandedCount, openedCount, improvedCount, peakOpenSize, found, pathCost,
+                    t1 - t0, t2 - t1, System.nanoTime() - t2);
+            listener.searchFinished(stats);
+        }
+
+        return found;
+    }
+
+    /**
+     * Ищем путь между начальным и конечным местоположениями карты и возвращаем его
+     * в виде цепочки путевых точек, как это делает {@link AStarPathfinder#computePath}.
+     * Если путь не найден, возвращается <code>null</code>.
+     **/
+    public Waypoint computePath(Map2D map)
+    {
+        Location s = map.getStart();
+        Location f = map.getFinish();
+
+        if (!findPath(map, s.xCoord, s.yCoord, f.xCoord, f.yCoord))
+            return null;
+
+        return toWaypoint();
+    }
+
+    /** Задаем набор соседей для последующих поисков **/
+    public void setNeighbourhood(Neighbourhood neighbourhood)
+    {
+        if (neighbourhood == null)
+            throw new NullPointerException("neighbourhood cannot be null");
+
+        this.neighbourhood = neighbourhood;
+    }
+
+    /** Возвращаем набор соседей **/
+    public Neighbourhood getNeighbourhood()
+    {
+        return neighbourhood;
+    }
+
+    /**
+     * Задаем эвристику для последующих поисков. Если передан <code>null</code> или
+     * эвристика не подходит для карты поиска ({@link GridHeuristic#isValidFor}),
+     * используется эвристика набора соседей {@link Neighbourhood#getDefaultHeuristic()}.
+     **/
+    public void setHeuristic(GridHeuristic heuristic)
+    {
+        this.heuristic = heuristic;
+    }
+
+    /** Возвращаем заданную эвристику или <code>null</code> **/
+    public GridHeuristic getHeuristic()
+    {
+        return heuristic;
+    }
+
+    /**
+     * Задаем множитель эвристики. При множителе w &gt; 1 (взвешенный A*) поиск
+     * раскрывает меньше ячеек, а стоимость найденного пути с допустимой
+     * и согласованной эвристикой превышает наименьшую не более чем в w раз.
+     **/
+    public void setHeuristicWeight(float weight)
+    {
+        if (!(weight >= 1) || Float.isInfinite(weight))
+            throw new IllegalArgumentException("weight must be a finite value >= 1; got " + weight);
+
+        heuristicWeight = weight;
+    }
+
+    /** Возвращаем множитель эвристики **/
+    public float getHeuristicWeight()
+    {
+        return heuristicWeight;
+    }
+
+    /**
+     * Ограничиваем последующие поиски прямоугольником ячеек от (x0, y0) до (x1, y1)
+     * включительно. Ячейки вне прямоугольника не раскрываются.
+     **/
+    public void setSearchBounds(int x0, int y0, int x1, int y1)
+    {
+        if (x0 > x1 || y0 > y1)
+            throw new IllegalArgumentException("empty search bounds: " + x0 + ", " + y0 +
+                    " - " + x1 + ", " + y1);
+
+        bounded = true;
+        minX = x0;
+        minY = y0;
+        maxX = x1;
+        maxY = y1;
+    }
+
+    /** Снимаем ограничение области поиска **/
+    public void clearSearchBounds()
+    {
+        bounded = false;
+    }
+
+    /** Возвращаем количество ячеек, раскрытых во время последнего поиска **/
+    public int getExpandedCount()
+    {
+        return expandedCount;
+    }
+
+    /** Возвращаем количество ячеек, впервые открытых во время последнего поиска **/
+    public int getOpenedCount()
+    {
+        return openedCount;
+    }
+
+    /** Возвращаем количество уменьшений стоимости открытых ячеек во время последнего поиска **/
+    public int getImprovedCount()
+    {
+        return improvedCount;
+    }
+
+    /** Возвращаем наибольший размер "открытого" набора во время последнего поиска **/
+    public int getPeakOpenSize()
+    {
+        return peakOpenSize;
+    }
+
+    /**
+     * Подключаем слушателя, которому после каждого поиска сообщаются его показатели
+     * ({@link SearchStats}). {@link SearchListener#NONE} или <code>null</code>
+     * отключают статистику; тогда время фаз не измеряется.
+     **/
+    public void setSearchListener(SearchListener listener)
+    {
+        this.listener = (listener != null) ? listener : SearchListener.NONE;
+
+        if (this.listener != SearchListener.NONE && stats == null)
+            stats = new SearchStats();
+    }
+
+    /** Возвращаем подключенного слушателя **/
+    public SearchListener getSearchListener()
+    {
+        return listener;
+    }
+
+    /** Возвращаем количество ячеек найденного пути или 0, если путь не найден **/
+    public int getPathLength()
+    {
+        return pathLength;
+    }
+
+    /** Возвращаем стоимость найденного пути **/
+    public float getPathCost()
+    {
+        return pathCost;
+    }
+
+    /** Возвращаем x координату i-й ячейки найденного пути, считая от начала **/
+    public int getPathX(int i)
+    {
+        return path[checkPathIndex(i)] % width;
+    }
+
+    /** Возвращаем y координату i-й ячейки найденного пути, считая от начала **/
+    public int getPathY(int i)
+    {
+        return path[checkPathIndex(i)] / width;
+    }
+
+    /**
+     * Копируем номера ячеек найденного пути (<code>y * width + x</code>)
+     * в указанный массив и возвращаем их количество
+     **/
+    public int copyPath(int[] dest)
+    {
+        System.arraycopy(path, 0, dest, 0, pathLength);
+        return pathLength;
+    }
+
+    /**
+     * Преобразуем найденный путь в цепочку путевых точек. Возвращается путевая точка
+     * конечной ячейки; по ней можно пройти назад к началу. Если путь не найден,
+     * возвращается <code>null</code>.
+     **/
+    public Waypoint toWaypoint()
+    {
+        Waypoint wp = null;
+        float cost = 0;
+
+        for (int i = 0; i < pathLength; i++)
+        {
+            int x = path[i] % width;
+            int y = path[i] / width;
+
+            if (wp != null)
+            {
+                Location prev = wp.getLocation();
+                int dx = x - prev.xCoord;
+                int dy = y - prev.yCoord;
+                cost += (float) Math.sqrt(dx * dx + dy * dy);
+                cost += map.getCellValue(x, y);
+            }
+
+            wp = new Waypoint(new Location(x, y), wp);
+            wp.setCosts(cost, 0);
+        }
+
+        return wp;
+    }
+
+    /**
+     * Генерируем все допустимые "следующие шаги" из указанной ячейки.
+     * Подклассы могут переопределить этот метод, чтобы изменить набор соседей.
+     **/
+    protected void expand(int node)
+    {
+        int x = node % width;
+        int y = node / width;
+        float g = gCost[node];
+
+        Neighbourhood n = neighbourhood;
+
+        for (int k = 0; k < n.size(); k++)
+        {
+            int nx = x + n.dx(k);
+            int ny = y + n.dy(k);
+
+            // Если "следующее местоположение" находится за пределами области поиска, пропускаем его
+            if (nx < minX || nx > maxX || ny < minY || ny > maxY)
+                continue;
+
+            relax(node, ny * width + nx, g + n.stepLength(k) + map.getCellValue(nx, ny));
+        }
+    }
+
+    /**
+     * Предлагаем для ячейки <code>next</code> путь через ячейку <code>node</code>
+     * с фактической стоимостью <code>g</code>. Путь принимается, если он не слишком
+     * дорогой и дешевле уже известного пути к этой ячейке.
+     **/
+    protected final void relax(int node, int next, float g)
+    {
+        if (g >= AStarPathfinder.COST_LIMIT)
+            return;
+
+        if (stamps[next] == currentStamp)
+        {
+            if (flags[next] == CLOSED || g >= gCost[next])
+                return;
+        }
+
+        open(next, node, g);
+    }
+
+    /** Возвращаем true, если ячейка лежит внутри области поиска **/
+    protected final boolean inBounds(int x, int y)
+    {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+
+    /**
+     * Возвращаем стоимость лучшего известного пути до ячейки в текущем поиске
+     * или <code>Float.POSITIVE_INFINITY</code>, если ячейка еще не достигнута
+     **/
+    protected final float knownCost(int node)
+    {
+        return stamps[node] == currentStamp ? gCost[node] : Float.POSITIVE_INFINITY;
+    }
+
+    /** Возвращаем true, если ячейка уже перемещена в "закрытый" набор **/
+    protected final boolean isClosed(int node)
+    {
+        return stamps[node] == currentStamp && flags[node] == CLOSED;
+    }
+
+    /**
+     * Оцениваем оставшуюся стоимость пути от указанной ячейки до конечной.
+     * Оценку дает эвристика, заданная {@link #setHeuristic}, или эвристика набора соседей.
+     **/
+    protected float heuristic(int x, int y)
+    {
+        return activeHeuristic.estimate(x, y, goalX, goalY);
+    }
+
+    /** Добавляем ячейку в "открытый" набор или обновляем её стоимость **/
+    private void open(int node, int from, float g)
+    {
+        if (stamps[node] == currentStamp)
+            improvedCount++;
+        else
+            openedCount++;
+
+        stamps[node] = currentStamp;
+        flags[node] = OPEN;
+        gCost[node] = g;
+        parent[node] = from;
+
+        // При равной оценке предпочитаем ячейки, находящиеся дальше от начала
+        open.push(node, g + heuristicWeight * heuristic(node % width, node / width), -g);
+
+        if (listener != SearchListener.NONE)
+            listener.cellOpened(node % width, node / width);
+    }
+
+    /**
+     * Подготавливаем массивы к новому поиску. Массивы пересоздаются только
+     * тогда, когда новая карта больше всех предыдущих.
+     **/
+    private void prepare(Map2D map)
+    {
+        int cells = cellCount(map);
+
+        this.map = map;
+        width = map.getWidth();
+        height = map.getHeight();
+
+        if (!bounded)
+        {
+            minX = 0;
+            minY = 0;
+            maxX = width - 1;
+            maxY = height - 1;
+        }
+
+        if (gCost.length < cells)
+        {
+            gCost = new float[cells];
+            parent = new int[cells];
+            flags = new byte[cells];
+            stamps = new int[cells];
+            currentStamp = 0;
+        }
+        open.ensureCapacity(cells);
+
+        if (currentStamp == Integer.MAX_VALUE)
+        {
+            Arrays.fill(stamps, 0);
+            currentStamp = 0;
+        }
+        currentStamp++;
+
+        expandedCount = 0;
+        openedCount = 0;
+        improvedCount = 0;
+        peakOpenSize = 0;
+    }
+
+    /** Возвращаем true, если ячейки карты помещаются в плоские массивы, индексированные int **/
+    static boolean fitsCellArrays(Map2D map)
+    {
+        return (long) map.getWidth() * map.getHeight() <= MAX_CELLS;
+    }
+
+    /**
+     * Возвращаем количество ячеек карты для плоских массивов с номерами ячеек
+     * <code>y * width + x</code>. Произведение считается в long: на карте больше
+     * {@link #MAX_CELLS} ячеек int переполняется, поэтому такая карта отклоняется сразу.
+     **/
+    static int cellCount(Map2D map)
+    {
+        if (!fitsCellArrays(map))
+            throw new IllegalArgumentException("map is too large for array-based search: "
+                    + map.getWidth() + " x " + map.getHeight());
+
+        return map.getWidth() * map.getHeight();
+    }
+
+    /**
+     * Восстанавливаем путь от конечной ячейки к начальной по родительским ссылкам.
+     * Если родитель не является соседней ячейкой, промежуточные ячейки отрезка
+     * между ними (прямой {@link LineOfSight}) добавляются в путь.
+     **/
+    private void buildPath(int goal)
+    {
+        // Сначала считаем длину пути, чтобы заполнять массив с конца
+        int length = 1;
+        for (int node = goal; parent[node] >= 0; node = parent[node])
+            length += segmentLength(parent[node], node);
+
+        if (path.length < length)
+            path = new int[Math.max(length, path.length * 2)];
+
+        int i = length - 1;
+        path[i] = goal;
+        for (int node = goal; parent[node] >= 0; node = parent[node])
+        {
+            int from = parent[node];
+            int x0 = from % width;
+            int y0 = from / width;
+            int x1 = node % width;
+            int y1 = node / width;
+
+            // Ячейки отрезка от родителя, кроме самой ячейки, в обратном порядке
+            for (int k = segmentLength(from, node) - 1; k >= 0; k--)
+            {
+                int x = LineOfSight.pointX(x0, y0, x1, y1, k);
+                int y = LineOfSight.pointY(x0, y0, x1, y1, k);
+                path[--i] = y * width + x;
+            }
+        }
+
+        pathLength = length;
+        pathCost = gCost[goal];
+    }
+
+    /** Возвращаем количество шагов прямого или диагонального отрезка между ячейками **/
+    private int segmentLength(int from, int to)
+    {
+        return Math.max(Math.abs(from % width - to % width), Math.abs(from / width - to / width));
+    }
+
+    /** Проверяем индекс ячейки найденного пути **/
+    private int checkPathIndex(int i)
+    {
+        if (i < 0 || i >= pathLength)
+            throw new IndexOutOfBoundsException("path index " + i + " out of range [0, " + pathLength + ")");
+
+        return i;
+    }
+}
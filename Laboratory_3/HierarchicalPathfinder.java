@@ -0,0 +1,965 @@
+import java.util.Arrays;
+
+/**
+ * Этот класс реализует иерархический поиск пути (HPA*). Карта делится на квадратные
+ * кластеры. На границах соседних кластеров выбираются входы - пары соседних проходимых
+ * ячеек, а для каждого кластера заранее вычисляются стоимости путей между его входами
+ * внутри кластера. Запрос сначала решается на этом небольшом абстрактном графе,
+ * а затем каждый его отрезок уточняется поиском A* внутри одного кластера.
+ * <p>
+ * Объект подписывается на изменения карты. Когда стоимость ячейки меняется,
+ * перед следующим запросом пересчитывается только её кластер (и соседние кластеры,
+ * если входы на общей границе изменились).
+ * <p>
+ * Как и любой HPA*, поиск находит почти оптимальный путь: путь проходит через
+ * выбранные входы, а не через любые ячейки границы. Если на абстрактном графе путь
+ * не найден, выполняется обычный поиск по всей карте, поэтому путь, если он есть,
+ * всегда будет найден. Объект этого класса нельзя использовать из нескольких потоков
+ * одновременно.
+ **/
+public class HierarchicalPathfinder implements MapChangeListener
+{
+    /** Размер кластера по умолчанию **/
+    public static final int DEFAULT_CLUSTER_SIZE = 16;
+
+    /** Участки границы длиннее этого значения получают два входа вместо одного **/
+    private static final int MAX_ENTRANCE_WIDTH = 6;
+
+    /** Длина диагонального шага **/
+    private static final float DIAGONAL = (float) Math.sqrt(2);
+
+    /** Кластер карты: прямоугольник ячеек, его входы и стоимости путей между ними **/
+    private static class Cluster
+    {
+        /** Границы кластера, включительно **/
+        int x0, y0, x1, y1;
+
+        /** Номера ячеек входов кластера **/
+        int[] nodes = new int[8];
+
+        /** Количество входов кластера **/
+        int count;
+
+        /**
+         * Стоимость пути внутри кластера от входа i до входа j хранится в ячейке
+         * <code>i * count + j</code>; недостижимые пары имеют бесконечную стоимость
+         **/
+        float[] intra = new float[0];
+
+        /** Возвращаем номер входа с указанной ячейкой или -1 **/
+        int indexOf(int cell)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                if (nodes[i] == cell)
+                    return i;
+            }
+            return -1;
+        }
+
+        /** Добавляем вход, если такой ячейки среди входов еще нет **/
+        void addNode(int cell)
+        {
+            if (indexOf(cell) >= 0)
+                return;
+
+            if (count == nodes.length)
+                nodes = Arrays.copyOf(nodes, count * 2);
+            nodes[count++] = cell;
+        }
+    }
+
+    /**
+     * Граница двух соседних кластеров: список переходов между ячейкой a первого
+     * кластера и соседней ячейкой b второго
+     **/
+    private static class Border
+    {
+        int count;
+        int[] a = new int[4];
+        int[] b = new int[4];
+
+        /** Стоимость шага из a в b и из b в a **/
+        float[] ab = new float[4];
+        float[] ba = new float[4];
+
+        void add(int cellA, int cellB, float costAB, float costBA)
+        {
+            if (count == a.length)
+            {
+                a = Arrays.copyOf(a, count * 2);
+                b = Arrays.copyOf(b, count * 2);
+                ab = Arrays.copyOf(ab, count * 2);
+                ba = Arrays.copyOf(ba, count * 2);
+            }
+            a[count] = cellA;
+            b[count] = cellB;
+            ab[count] = costAB;
+            ba[count] = costBA;
+            count++;
+        }
+
+        /** Возвращаем true, если переходы этой границы совпадают с переходами другой **/
+        boolean sameAs(Border other)
+        {
+            if (count != other.count)
+                return false;
+
+            for (int i = 0; i < count; i++)
+            {
+                if (a[i] != other.a[i] || b[i] != other.b[i] ||
+                        ab[i] != other.ab[i] || ba[i] != other.ba[i])
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /** Карта, по которой выполняется поиск **/
+    private final Map2D map;
+
+    private final int width;
+    private final int height;
+    private final int clusterSize;
+
+    /** Количество кластеров по x и по y **/
+    private final int clustersX;
+    private final int clustersY;
+
+    private final Cluster[] clusters;
+
+    /** Границы между кластерами (cx, cy) и (cx + 1, cy) **/
+    private final Border[] vertical;
+
+    /** Границы между кластерами (cx, cy) и (cx, cy + 1) **/
+    private final Border[] horizontal;
+
+    /** Кластеры, ячейки которых изменились с момента последнего пересчета **/
+    private final boolean[] dirty;
+    private int[] dirtyList;
+    private int dirtyCount;
+
+    /** true, если после пересчета кластеров нужно заново пронумеровать входы **/
+    private boolean renumber = true;
+
+    /** Номер первого входа каждого кластера в абстрактном графе **/
+    private int[] firstId;
+
+    /** Кластер и ячейка каждого входа абстрактного графа **/
+    private int[] idCluster = new int[0];
+    private int[] idCell = new int[0];
+
+    /** Переходы между кластерами в виде списков смежности (см. {@link #buildInterEdges()}) **/
+    private int[] interStart = new int[1];
+    private int[] interTarget = new int[0];
+    private float[] interCost = new float[0];
+
+    /** Количество входов во всем абстрактном графе **/
+    private int nodeCount;
+
+    /** Состояние поиска по абстрактному графу **/
+    private float[] absG = new float[0];
+    private int[] absParent = new int[0];
+    private boolean[] absClosed = new boolean[0];
+    private IndexedMinHeap absOpen = new IndexedMinHeap(1);
+
+    /** Рабочие массивы поиска Дейкстры внутри одного кластера **/
+    private final float[] localDist;
+    private final IndexedMinHeap localHeap;
+
+    /** Стоимости от начала до входов его кластера и от входов кластера конца до конца **/
+    private float[] startCosts = new float[8];
+    private float[] goalCosts = new float[8];
+
+    /** Поиск A* внутри кластера для уточнения отрезков пути **/
+    private final GridPathfinder local = new GridPathfinder();
+
+    /** Ячейки последнего найденного пути и их количество **/
+    private int[] path = new int[16];
+    private int pathLength;
+
+    /** Количество входов, раскрытых последним поиском по абстрактному графу **/
+    private int abstractExpanded;
+
+    /**
+     * Номер области связности каждой ячейки (0 - непроходимая ячейка). Вычисляется
+     * только тогда, когда абстрактный граф не нашел пути, и сбрасывается при изменении карты.
+     **/
+    private int[] components;
+    private boolean componentsValid;
+
+
+    /** Создание иерархического поиска по карте с размером кластера по умолчанию **/
+    public HierarchicalPathfinder(Map2D map)
+    {
+        this(map, DEFAULT_CLUSTER_SIZE);
+    }
+
+    /** Создание иерархического поиска по карте с указанным размером кластера **/
+    public HierarchicalPathfinder(Map2D map, int clusterSize)
+    {
+        if (map == null)
+            throw new NullPointerException("map cannot be null");
+
+        if (clusterSize < 2)
+            throw new IllegalArgumentException("clusterSize must be >= 2; got " + clusterSize);
+
+        // Номера ячеек y * width + x хранятся в int, поэтому карта больше предела массивов отклоняется сразу
+        GridPathfinder.cellCount(map);
+
+        this.map = map;
+        this.clusterSize = clusterSize;
+        width = map.getWidth();
+        height = map.getHeight();
+        clustersX = (width + clusterSize - 1) / clusterSize;
+        clustersY = (height + clusterSize - 1) / clusterSize;
+
+        clusters = new Cluster[clustersX * clustersY];
+        for (int cy = 0; cy < clustersY; cy++)
+        {
+            for (int cx = 0; cx < clustersX; cx++)
+            {
+                Cluster c = new Cluster();
+                c.x0 = cx * clusterSize;
+                c.y0 = cy * clusterSize;
+                c.x1 = Math.min(width, c.x0 + clusterSize) - 1;
+                c.y1 = Math.min(height, c.y0 + clusterSize) - 1;
+                clusters[cy * clustersX + cx] = c;
+            }
+        }
+
+        vertical = new Border[Math.max(0, clustersX - 1) * clustersY];
+        for (int i = 0; i < vertical.length; i++)
+            vertical[i] = new Border();
+
+        horizontal = new Border[clustersX * Math.max(0, clustersY - 1)];
+        for (int i = 0; i < horizontal.length; i++)
+            horizontal[i] = new Border();
+
+        firstId = new int[clusters.length];
+        localDist = new float[clusterSize * clusterSize];
+        localHeap = new IndexedMinHeap(clusterSize * clusterSize);
+
+        // Сначала все кластеры требуют вычисления
+        dirty = new boolean[clusters.length];
+        dirtyList = new int[clusters.length];
+        for (int i = 0; i < clusters.length; i++)
+            markDirty(i);
+
+        map.addChangeListener(this);
+    }
+
+    /** Отмечаем кластер измененной ячейки для пересчета перед следующим запросом **/
+    public void cellChanged(Map2D map, int x, int y, int oldValue, int newValue)
+    {
+        markDirty((y / clusterSize) * clustersX + x / clusterSize);
+        componentsValid = false;
+    }
+
+    /** Отписываемся от изменений карты; после этого объект больше не используется **/
+    public void dispose()
+    {
+        map.removeChangeListener(this);
+    }
+
+    /**
+     * Ищем путь между начальным и конечным местоположениями карты.
+     * Если путь не найден, возвращается <code>null</code>.
+     **/
+    public Waypoint computePath()
+    {
+        Location s = map.getStart();
+        Location f = map.getFinish();
+
+        if (!findPath(s.xCoord, s.yCoord, f.xCoord, f.yCoord))
+            return null;
+
+        return toWaypoint();
+    }
+
+    /** Возвращаем количество входов, раскрытых последним поиском по абстрактному графу **/
+    public int getAbstractExpandedCount()
+    {
+        return abstractExpanded;
+    }
+
+    /** Возвращаем количество входов во всем абстрактном графе **/
+    public int getAbstractNodeCount()
+    {
+        update();
+        return nodeCount;
+    }
+
+    /** Возвращаем количество ячеек последнего найденного пути или 0 **/
+    public int getPathLength()
+    {
+        return pathLength;
+    }
+
+    /** Возвращаем стоимость последнего найденного пути **/
+    public float getPathCost()
+    {
+        float cost = 0;
+        for (int i = 1; i < pathLength; i++)
+            cost += stepCost(path[i - 1], path[i]);
+        return cost;
+    }
+
+    /**
+     * Пытаемся найти путь между указанными ячейками. Возвращаем true, если путь найден;
+     * сам путь затем доступен через {@link #toWaypoint()}.
+     **/
+    public boolean findPath(int startX, int startY, int finishX, int finishY)
+    {
+        if (!map.contains(startX, startY))
+            throw new IllegalArgumentException("start is outside the map: " + startX + ", " + startY);
+
+        if (!map.contains(finishX, finishY))
+            throw new IllegalArgumentException("finish is outside the map: " + finishX + ", " + finishY);
+
+        update();
+
+        pathLength = 0;
+        abstractExpanded = 0;
+
+        int start = startY * width + startX;
+        int goal = finishY * width + finishX;
+
+        if (start == goal)
+        {
+            append(start);
+            return true;
+        }
+
+        if (!map.isPassable(finishX, finishY))
+            return false;
+
+        int sc = clusterOf(start);
+        int gc = clusterOf(goal);
+        Cluster sCluster = clusters[sc];
+        Cluster gCluster = clusters[gc];
+
+        // Стоимости от начала до входов его кластера и, если конец в том же
+        // кластере, стоимость прямого пути внутри кластера
+        localDijkstra(sCluster, start, false);
+        startCosts = ensure(startCosts, sCluster.count);
+        for (int i = 0; i < sCluster.count; i++)
+            startCosts[i] = localDist[localIndex(sCluster, sCluster.nodes[i])];
+        float direct = (sc == gc) ? localDist[localIndex(sCluster, goal)] : Float.POSITIVE_INFINITY;
+
+        // Стоимости от входов кластера конца до самого конца
+        localDijkstra(gCluster, goal, true);
+        goalCosts = ensure(goalCosts, gCluster.count);
+        for (int i = 0; i < gCluster.count; i++)
+            goalCosts[i] = localDist[localIndex(gCluster, gCluster.nodes[i])];
+
+        float abstractCost = searchAbstract(start, sc, gc, goal, direct);
+
+        if (abstractCost < direct)
+        {
+            refineAbstractPath(start, goal);
+            return true;
+        }
+
+        if (direct < Float.POSITIVE_INFINITY)
+        {
+            append(start);
+            appendLocalPath(sCluster, start, goal);
+            return true;
+        }
+
+        // Абстрактный граф не нашел пути. Путь все же может существовать, если кластеры
+        // связаны только диагональными шагами; тогда выполняем обычный поиск по всей карте
+        if (!connected(start, goal))
+            return false;
+
+        local.clearSearchBounds();
+        if (!local.findPath(map, startX, startY, finishX, finishY))
+            return false;
+
+        for (int i = 0; i < local.getPathLength(); i++)
+            append(local.getPathY(i) * width + local.getPathX(i));
+        return true;
+    }
+
+    /**
+     * Преобразуем последний найденный путь в цепочку путевых точек. Возвращается
+     * путевая точка конечной ячейки или <code>null</code>, если путь не найден.
+     **/
+    public Waypoint toWaypoint()
+    {
+        Waypoint wp = null;
+        float cost = 0;
+
+        for (int i = 0; i < pathLength; i++)
+        {
+            if (i > 0)
+                cost += stepCost(path[i - 1], path[i]);
+
+            wp = new Waypoint(new Location(path[i] % width, path[i] / width), wp);
+            wp.setCosts(cost, 0);
+        }
+        return wp;
+    }
+
+    /**
+     * Поиск A* по абстрактному графу от виртуальной вершины начала до виртуальной
+     * вершины конца. Возвращаем стоимость найденного пути или бесконечность, если
+     * путь не найден или не дешевле <code>bound</code>.
+     **/
+    private float searchAbstract(int start, int sc, int gc, int goal, float bound)
+    {
+        int src = nodeCount;
+        int dst = nodeCount + 1;
+
+        Arrays.fill(absG, 0, nodeCount + 2, Float.POSITIVE_INFINITY);
+        Arrays.fill(absClosed, 0, nodeCount + 2, false);
+        absOpen.clear();
+
+        absG[src] = 0;
+        absParent[src] = -1;
+        absOpen.push(src, distance(start, goal), 0);
+
+        while (!absOpen.isEmpty())
+        {
+            if (absOpen.peekKey() >= bound)
+                break;
+
+            int u = absOpen.pop();
+            if (u == dst)
+                return absG[dst];
+
+            absClosed[u] = true;
+            abstractExpanded++;
+
+            if (u == src)
+            {
+                Cluster c = clusters[sc];
+                for (int i = 0; i < c.count; i++)
+                    relaxAbstract(u, firstId[sc] + i, startCosts[i], goal);
+                continue;
+            }
+
+            int ci = idCluster[u];
+            Cluster c = clusters[ci];
+            int li = u - firstId[ci];
+
+            // Переходы внутри кластера
+            for (int j = 0; j < c.count; j++)
+            {
+                if (j != li)
+                    relaxAbstract(u, firstId[ci] + j, c.intra[li * c.count + j], goal);
+            }
+
+            if (ci == gc)
+                relaxAbstract(u, dst, goalCosts[li], goal);
+
+            // Переходы в соседние кластеры
+            for (int e = interStart[u]; e < interStart[u + 1]; e++)
+                relaxAbstract(u, interTarget[e], interCost[e], goal);
+        }
+
+        return Float.POSITIVE_INFINITY;
+    }
+
+    /** Предлагаем путь к абстрактной вершине v через вершину u **/
+    private void relaxAbstract(int u, int v, float cost, int goal)
+    {
+        if (cost == Float.POSITIVE_INFINITY || absClosed[v])
+            return;
+
+        float g = absG[u] + cost;
+        if (g >= AStarPathfinder.COST_LIMIT || g >= absG[v])
+            return;
+
+        absG[v] = g;
+        absParent[v] = u;
+
+        float h = (v == nodeCount + 1) ? 0 : distance(idCell[v], goal);
+        absOpen.push(v, g + h, -g);
+    }
+
+    /**
+     * Восстанавливаем путь по абстрактному графу и уточняем каждый его отрезок:
+     * переход между кластерами - это один шаг, а путь между двумя ячейками одного
+     * кластера ищется поиском A* внутри этого кластера
+     **/
+    private void refineAbstractPath(int start, int goal)
+    {
+        // Собираем ячейки абстрактного пути от конца к началу
+        int count = 0;
+        for (int v = absParent[nodeCount + 1]; v != nodeCount; v = absParent[v])
+            count++;
+
+        int[] cells = new int[count + 2];
+        cells[0] = start;
+        cells[count + 1] = goal;
+        int i = count;
+        for (int v = absParent[nodeCount + 1]; v != nodeCount; v = absParent[v])
+            cells[i--] = idCell[v];
+
+        append(start);
+        for (int k = 1; k < cells.length; k++)
+        {
+            int from = cells[k - 1];
+            int to = cells[k];
+            if (from == to)
+                continue;
+
+            int c = clusterOf(from);
+            if (c != clusterOf(to))
+                append(to);
+            else
+                appendLocalPath(clusters[c], from, to);
+        }
+    }
+
+    /** Добавляем в путь ячейки пути внутри кластера, не повторяя начальную **/
+    private void appendLocalPath(Cluster c, int from, int to)
+    {
+        local.setSearchBounds(c.x0, c.y0, c.x1, c.y1);
+        if (!local.findPath(map, from % width, from / width, to % width, to / width))
+            throw new IllegalStateException("cluster path disappeared during refinement");
+
+        for (int i = 1; i < local.getPathLength(); i++)
+            append(local.getPathY(i) * width + local.getPathX(i));
+    }
+
+    /** Пересчитываем измененные кластеры и нумерацию входов абстрактного графа **/
+    private void update()
+    {
+        if (dirtyCount > 0)
+        {
+            boolean[] recompute = new boolean[clusters.length];
+            boolean[] vDone = new boolean[vertical.length];
+            boolean[] hDone = new boolean[horizontal.length];
+
+            for (int k = 0; k < dirtyCount; k++)
+            {
+                int ci = dirtyList[k];
+                dirty[ci] = false;
+                recompute[ci] = true;
+
+                // Перестраиваем входы на всех границах кластера; если вход изменился,
+                // соседний кластер тоже нужно пересчитать
+                int cx = ci % clustersX;
+                int cy = ci / clustersX;
+                if (cx > 0 && rebuildVertical(cx - 1, cy, vDone))
+                    recompute[ci - 1] = true;
+                if (cx < clustersX - 1 && rebuildVertical(cx, cy, vDone))
+                    recompute[ci + 1] = true;
+                if (cy > 0 && rebuildHorizontal(cx, cy - 1, hDone))
+                    recompute[ci - clustersX] = true;
+                if (cy < clustersY - 1 && rebuildHorizontal(cx, cy, hDone))
+                    recompute[ci + clustersX] = true;
+            }
+            dirtyCount = 0;
+
+            for (int ci = 0; ci < clusters.length; ci++)
+            {
+                if (recompute[ci])
+                    rebuildCluster(ci);
+            }
+            renumber = true;
+        }
+
+        if (renumber)
+        {
+            nodeCount = 0;
+            for (int ci = 0; ci < clusters.length; ci++)
+            {
+                firstId[ci] = nodeCount;
+                nodeCount += clusters[ci].count;
+            }
+
+            if (idCluster.length < nodeCount)
+            {
+                idCluster = new int[nodeCount];
+                idCell = new int[nodeCount];
+            }
+            for (int ci = 0; ci < clusters.length; ci++)
+            {
+                Cluster c = clusters[ci];
+                Arrays.fill(idCluster, firstId[ci], firstId[ci] + c.count, ci);
+                System.arraycopy(c.nodes, 0, idCell, firstId[ci], c.count);
+            }
+
+            buildInterEdges();
+
+            if (absG.length < nodeCount + 2)
+            {
+                absG = new float[nodeCount + 2];
+                absParent = new int[nodeCount + 2];
+                absClosed = new boolean[nodeCount + 2];
+                absOpen = new IndexedMinHeap(nodeCount + 2);
+            }
+            renumber = false;
+        }
+    }
+
+    /**
+     * Собираем переходы всех границ в списки смежности абстрактного графа:
+     * переходы из входа u лежат в <code>interTarget</code> и <code>interCost</code>
+     * от <code>interStart[u]</code> до <code>interStart[u + 1]</code>
+     **/
+    private void buildInterEdges()
+    {
+        interStart = new int[nodeCount + 2];
+
+        // Сначала считаем переходы из каждого входа
+        for (int pass = 0; pass < 2; pass++)
+        {
+            if (pass == 1)
+            {
+                for (int u = 0; u < nodeCount; u++)
+                    interStart[u + 1] += interStart[u];
+                interStart[nodeCount + 1] = interStart[nodeCount];
+
+                interTarget = new int[interStart[nodeCount]];
+                interCost = new float[interStart[nodeCount]];
+            }
+
+            int[] fill = pass == 1 ? Arrays.copyOf(interStart, nodeCount) : null;
+            for (int cy = 0; cy < clustersY; cy++)
+            {
+                for (int cx = 0; cx < clustersX; cx++)
+                {
+                    int ci = cy * clustersX + cx;
+                    if (cx < clustersX - 1)
+                        addInterEdges(vertical[cy * (clustersX - 1) + cx], ci, ci + 1, fill);
+                    if (cy < clustersY - 1)
+                        addInterEdges(horizontal[cy * clustersX + cx], ci, ci + clustersX, fill);
+                }
+            }
+        }
+    }
+
+    /**
+     * Добавляем переходы границы между кластерами ca и cb в обоих направлениях.
+     * Если <code>fill</code> равен null, переходы только подсчитываются.
+     **/
+    private void addInterEdges(Border border, int ca, int cb, int[] fill)
+    {
+        for (int t = 0; t < border.count; t++)
+        {
+            int u = firstId[ca] + clusters[ca].indexOf(border.a[t]);
+            int v = firstId[cb] + clusters[cb].indexOf(border.b[t]);
+
+            if (fill == null)
+            {
+                interStart[u + 1]++;
+                interStart[v + 1]++;
+                continue;
+            }
+
+            interTarget[fill[u]] = v;
+            interCost[fill[u]++] = border.ab[t];
+            interTarget[fill[v]] = u;
+            interCost[fill[v]++] = border.ba[t];
+        }
+    }
+
+    /** Отмечаем кластер для пересчета **/
+    private void markDirty(int ci)
+    {
+        if (!dirty[ci])
+        {
+            dirty[ci] = true;
+            dirtyList[dirtyCount++] = ci;
+        }
+    }
+
+    /**
+     * Перестраиваем входы границы между кластерами (cx, cy) и (cx + 1, cy).
+     * Возвращаем true, если входы изменились.
+     **/
+    private boolean rebuildVertical(int cx, int cy, boolean[] done)
+    {
+        int index = cy * (clustersX - 1) + cx;
+        if (done[index])
+            return false;
+        done[index] = true;
+
+        int x = clusters[cy * clustersX + cx].x1;
+        Cluster c = clusters[cy * clustersX + cx];
+        Border border = new Border();
+
+        int runStart = -1;
+        for (int y = c.y0; y <= c.y1 + 1; y++)
+        {
+            boolean open = y <= c.y1 && map.isPassable(x, y) && map.isPassable(x + 1, y);
+            if (open && runStart < 0)
+                runStart = y;
+
+            if (!open && runStart >= 0)
+            {
+                addEntrances(border, runStart, y - 1, x, true);
+                runStart = -1;
+            }
+        }
+
+        boolean changed = !border.sameAs(vertical[index]);
+        vertical[index] = border;
+        return changed;
+    }
+
+    /**
+     * Перестраиваем входы границы между кластерами (cx, cy) и (cx, cy + 1).
+     * Возвращаем true, если входы изменились.
+     **/
+    private boolean rebuildHorizontal(int cx, int cy, boolean[] done)
+    {
+        int index = cy * clustersX + cx;
+        if (done[index])
+            return false;
+        done[index] = true;
+
+        Cluster c = clusters[cy * clustersX + cx];
+        int y = c.y1;
+        Border border = new Border();
+
+        int runStart = -1;
+        for (int x = c.x0; x <= c.x1 + 1; x++)
+        {
+            boolean open = x <= c.x1 && map.isPassable(x, y) && map.isPassable(x, y + 1);
+            if (open && runStart < 0)
+                runStart = x;
+
+            if (!open && runStart >= 0)
+            {
+                addEntrances(border, runStart, x - 1, y, false);
+                runStart = -1;
+            }
+        }
+
+        boolean changed = !border.sameAs(horizontal[index]);
+        horizontal[index] = border;
+        return changed;
+    }
+
+    /**
+     * Добавляем входы для непрерывного проходимого участка границы [from, to].
+     * Для вертикальной границы <code>line</code> - это x первого кластера, для
+     * горизонтальной - y первого кластера.
+     **/
+    private void addEntrances(Border border, int from, int to, int line, boolean verticalBorder)
+    {
+        if (to - from + 1 <= MAX_ENTRANCE_WIDTH)
+        {
+            addTransition(border, (from + to) / 2, line, verticalBorder);
+        }
+        else
+        {
+            addTransition(border, from, line, verticalBorder);
+            addTransition(border, to, line, verticalBorder);
+        }
+    }
+
+    /** Добавляем переход через границу в позиции <code>along</code> **/
+    private void addTransition(Border border, int along, int line, boolean verticalBorder)
+    {
+        int ax = verticalBorder ? line : along;
+        int ay = verticalBorder ? along : line;
+        int bx = verticalBorder ? line + 1 : along;
+        int by = verticalBorder ? along : line + 1;
+
+        border.add(ay * width + ax, by * width + bx,
+                1 + map.getCellValue(bx, by), 1 + map.getCellValue(ax, ay));
+    }
+
+    /** Собираем входы кластера с его границ и вычисляем стоимости путей между ними **/
+    private void rebuildCluster(int ci)
+    {
+        Cluster c = clusters[ci];
+        c.count = 0;
+
+        int cx = ci % clustersX;
+        int cy = ci / clustersX;
+        if (cx > 0)
+            addBorderNodes(c, vertical[cy * (clustersX - 1) + cx - 1], false);
+        if (cx < clustersX - 1)
+            addBorderNodes(c, vertical[cy * (clustersX - 1) + cx], true);
+        if (cy > 0)
+            addBorderNodes(c, horizontal[(cy - 1) * clustersX + cx], false);
+        if (cy < clustersY - 1)
+            addBorderNodes(c, horizontal[cy * clustersX + cx], true);
+
+        int n = c.count;
+        if (c.intra.length < n * n)
+            c.intra = new float[n * n];
+
+        for (int i = 0; i < n; i++)
+        {
+            localDijkstra(c, c.nodes[i], false);
+            for (int j = 0; j < n; j++)
+                c.intra[i * n + j] = localDist[localIndex(c, c.nodes[j])];
+        }
+    }
+
+    /** Добавляем в кластер ячейки переходов границы, лежащие на его стороне **/
+    private void addBorderNodes(Cluster c, Border border, boolean sideA)
+    {
+        for (int t = 0; t < border.count; t++)
+            c.addNode(sideA ? border.a[t] : border.b[t]);
+    }
+
+    /**
+     * Поиск Дейкстры внутри кластера. В прямом направлении в <code>localDist</code>
+     * записываются стоимости путей от ячейки <code>source</code>, в обратном -
+     * стоимости путей до неё.
+     **/
+    private void localDijkstra(Cluster c, int source, boolean reverse)
+    {
+        int cw = c.x1 - c.x0 + 1;
+        int ch = c.y1 - c.y0 + 1;
+        Arrays.fill(localDist, 0, cw * ch, Float.POSITIVE_INFINITY);
+        localHeap.clear();
+
+        int s = localIndex(c, source);
+        localDist[s] = 0;
+        localHeap.push(s, 0, 0);
+
+        while (!localHeap.isEmpty())
+        {
+            int u = localHeap.pop();
+            int ux = c.x0 + u % cw;
+            int uy = c.y0 + u / cw;
+            float du = localDist[u];
+
+            // В обратном направлении шаг из соседа в u стоит столько же, сколько вход в u
+            float enterU = reverse ? map.getCellValue(ux, uy) : 0;
+
+            for (int dy = -1; dy <= 1; dy++)
+            {
+                for (int dx = -1; dx <= 1; dx++)
+                {
+                    int vx = ux + dx;
+                    int vy = uy + dy;
+                    if ((dx == 0 && dy == 0) || vx < c.x0 || vx > c.x1 || vy < c.y0 || vy > c.y1)
+                        continue;
+
+                    float step = (dx != 0 && dy != 0) ? DIAGONAL : 1;
+                    float cost = du + step + (reverse ? enterU : map.getCellValue(vx, vy));
+                    if (cost >= AStarPathfinder.COST_LIMIT)
+                        continue;
+
+                    int v = (vy - c.y0) * cw + (vx - c.x0);
+                    if (cost < localDist[v])
+                    {
+                        localDist[v] = cost;
+                        localHeap.push(v, cost, 0);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Возвращаем true, если из начальной ячейки можно дойти до конечной.
+     * Области связности вычисляются обходом в ширину по проходимым ячейкам.
+     **/
+    private boolean connected(int start, int goal)
+    {
+        if (!componentsValid)
+        {
+            // Конструктор уже отклонил карты, ячейки которых не помещаются в массив
+            int cells = width * height;
+            if (components == null)
+                components = new int[cells];
+            Arrays.fill(components, 0);
+
+            int[] queue = new int[cells];
+            int label = 0;
+            for (int seed = 0; seed < cells; seed++)
+            {
+                if (components[seed] != 0 || !map.isPassable(seed % width, seed / width))
+                    continue;
+
+                label++;
+                components[seed] = label;
+                int head = 0;
+                int tail = 0;
+                queue[tail++] = seed;
+
+                while (head < tail)
+                {
+                    int u = queue[head++];
+                    int ux = u % width;
+                    int uy = u / width;
+                    for (int dy = -1; dy <= 1; dy++)
+                    {
+                        for (int dx = -1; dx <= 1; dx++)
+                        {
+                            int vx = ux + dx;
+                            int vy = uy + dy;
+                            if (!map.isPassable(vx, vy) || components[vy * width + vx] != 0)
+                                continue;
+
+                            components[vy * width + vx] = label;
+                            queue[tail++] = vy * width + vx;
+                        }
+                    }
+                }
+            }
+            componentsValid = true;
+        }
+
+        // Начальная ячейка может быть непроходимой; тогда из неё можно шагнуть
+        // в любую проходимую соседнюю ячейку
+        int goalComponent = components[goal];
+        if (components[start] == goalComponent)
+            return true;
+
+        int sx = start % width;
+        int sy = start / width;
+        for (int dy = -1; dy <= 1; dy++)
+        {
+            for (int dx = -1; dx <= 1; dx++)
+            {
+                if (map.contains(sx + dx, sy + dy) && components[(sy + dy) * width + sx + dx] == goalComponent)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /** Возвращаем номер ячейки внутри кластера **/
+    private int localIndex(Cluster c, int cell)
+    {
+        return (cell / width - c.y0) * (c.x1 - c.x0 + 1) + (cell % width - c.x0);
+    }
+
+    /** Возвращаем номер кластера, содержащего ячейку **/
+    private int clusterOf(int cell)
+    {
+        return (cell / width / clusterSize) * clustersX + (cell % width) / clusterSize;
+    }
+
+    /** Прямое расстояние между двумя ячейками **/
+    private float distance(int a, int b)
+    {
+        int dx = a % width - b % width;
+        int dy = a / width - b / width;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /** Стоимость шага между соседними ячейками **/
+    private float stepCost(int from, int to)
+    {
+        return distance(from, to) + map.getCellValue(to % width, to / width);
+    }
+
+    /** Добавляем ячейку в конец найденного пути **/
+    private void append(int cell)
+    {
+        if (pathLength == path.length)
+            path = Arrays.copyOf(path, pathLength * 2);
+        path[pathLength++] = cell;
+    }
+
+    /** Возвращаем массив не короче указанной длины **/
+    private static float[] ensure(float[] array, int length)
+    {
+        return array.length >= length ? array : new float[Math.max(length, array.length * 2)];
+    }
+}
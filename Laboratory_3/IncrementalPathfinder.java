@@ -0,0 +1,581 @@
+import java.util.Arrays;
+
+/**
+ * Этот класс реализует инкрементальный поиск пути D* Lite. Поиск ведется от конечной
+ * ячейки к начальной, и его состояние (стоимости ячеек до конца) сохраняется между
+ * вызовами. Объект подписывается на изменения карты ({@link MapChangeListener});
+ * перед следующим поиском пересчитываются только ячейки, на стоимость пути из которых
+ * повлияли изменения. Поэтому объем работы зависит от размера изменения,
+ * а не от размера карты.
+ * <p>
+ * Начальная ячейка может перемещаться между поисками без потери состояния
+ * (например, по мере движения по найденному пути). Смена конечной ячейки
+ * сбрасывает состояние, и следующий поиск выполняется заново.
+ * <p>
+ * Стоимость шага та же, что и в {@link AStarPathfinder}: длина шага плюс значение
+ * ячейки, в которую делается шаг. Ячейки со значением не меньше
+ * {@link AStarPathfinder#COST_LIMIT} непроходимы.
+ **/
+public class IncrementalPathfinder implements MapChangeListener
+{
+    /** Длина диагонального шага **/
+    private static final float DIAGONAL = (float) Math.sqrt(2);
+
+    /** Множитель эвристики, оставляющий запас на ошибки округления float **/
+    private static final float HEURISTIC_SCALE = 0.999f;
+
+    /** Бесконечная стоимость: ячейка не достигнута или конец из неё недостижим **/
+    private static final float INFINITY = Float.POSITIVE_INFINITY;
+
+    /** Смещения по x для восьми соседних ячеек **/
+    private static final int[] DX = { -1, 0, 1, -1, 1, -1, 0, 1 };
+
+    /** Смещения по y для восьми соседних ячеек **/
+    private static final int[] DY = { -1, -1, -1, 0, 0, 1, 1, 1 };
+
+    /** Карта, по которой ведется поиск **/
+    private final Map2D map;
+
+    /** Размеры карты **/
+    private final int width, height;
+
+    /** Известная стоимость пути от ячейки до конца **/
+    private final float[] g;
+
+    /** Стоимость пути от ячейки до конца на один шаг вперед (rhs в D* Lite) **/
+    private final float[] rhs;
+
+    /** Ячейки, у которых g и rhs не совпадают, упорядоченные по ключу D* Lite **/
+    private final IndexedMinHeap open;
+
+    /** Номер конечной ячейки или -1, если поиск еще не выполнялся **/
+    private int goal = -1;
+
+    /** Номер начальной ячейки, для которой последний раз вычислялись ключи **/
+    private int lastStart;
+
+    /** Накопленная поправка ключей после перемещений начальной ячейки (k_m в D* Lite) **/
+    private float keyModifier;
+
+    /** Номера ячеек, изменившихся с последнего поиска, и отметки, чтобы не повторять их **/
+    private int[] changed = new int[16];
+    private int changedCount;
+    private final boolean[] changedMark;
+
+    /** Количество ячеек, раскрытых последним поиском **/
+    private int expandedCount;
+
+    /** Количество ячеек, добавленных в кучу последним поиском **/
+    private int openedCount;
+
+    /** Количество обновлений ключей ячеек, уже находящихся в куче **/
+    private int improvedCount;
+
+    /** Наибольший размер кучи во время последнего поиска **/
+    private int peakOpenSize;
+
+    /** Слушатель, которому сообщаются события ячеек и показатели каждого поиска **/
+    private SearchListener listener = SearchListener.NONE;
+
+    /** Показатели поиска, передаваемые слушателю **/
+    private final SearchStats stats = new SearchStats();
+
+    /** Ячейки последнего найденного пути от начала до конца **/
+    private int[] path = new int[16];
+
+    /** Количество ячеек последнего найденного пути или 0 **/
+    private int pathLength;
+
+
+    /** Создание инкрементального поиска по указанной карте **/
+    public IncrementalPathfinder(Map2D map)
+    {
+        if (map == null)
+            throw new NullPointerException("map cannot be null");
+
+        // Карта больше предела массивов отклоняется до выделения памяти
+        int cells = GridPathfinder.cellCount(map);
+
+        this.map = map;
+        width = map.getWidth();
+        height = map.getHeight();
+
+        g = new float[cells];
+        rhs = new float[cells];
+        open = new IndexedMinHeap(cells);
+        changedMark = new boolean[cells];
+
+        map.addChangeListener(this);
+    }
+
+    /** Запоминаем измененную ячейку; она будет учтена перед следующим поиском **/
+    public void cellChanged(Map2D map, int x, int y, int oldValue, int newValue)
+    {
+        int node = y * width + x;
+        if (changedMark[node])
+            return;
+
+        changedMark[node] = true;
+        if (changedCount == changed.length)
+            changed = Arrays.copyOf(changed, changedCount * 2);
+        changed[changedCount++] = node;
+    }
+
+    /** Отписываемся от изменений карты; после этого объект больше не используется **/
+    public void dispose()
+    {
+        map.removeChangeListener(this);
+    }
+
+    /**
+     * Ищем путь между начальным и конечным местоположениями карты.
+     * Если путь не найден, возвращается <code>null</code>.
+     **/
+    public Waypoint computePath()
+    {
+        Location s = map.getStart();
+        Location f = map.getFinish();
+
+        if (!findPath(s.xCoord, s.yCoord, f.xCoord, f.yCoord))
+            return null;
+
+        return toWaypoint();
+    }
+
+    /**
+     * Пытаемся найти путь между указанными ячейками. Если конечная ячейка та же, что
+     * и в прошлом поиске, сохраненное состояние исправляется с учетом изменений карты;
+     * иначе поиск выполняется заново. Возвращаем true, если путь найден.
+     **/
+    public boolean findPath(int startX, int startY, int finishX, int finishY)
+    {
+        if (!map.contains(startX, startY))
+            throw new IllegalArgumentException("start is outside the map: " + startX + ", " + startY);
+
+        if (!map.contains(finishX, finishY))
+            throw new IllegalArgumentException("finish is outside the map: " + finishX + ", " + finishY);
+
+        // Время измеряется, только если подключен слушатель
+        boolean timed = listener != SearchListener.NONE;
+        long t0 = timed ? System.nanoTime() : 0;
+
+        int start = startY * width + startX;
+        int finish = finishY * width + finishX;
+        expandedCount = 0;
+        openedCount = 0;
+        improvedCount = 0;
+        peakOpenSize = open.size();
+
+        if (finish != goal)
+        {
+            reset(start, finish);
+        }
+        else
+        {
+            // Ключи "открытых" ячеек вычислены для прежнего начала; вместо пересчета
+            // всей кучи увеличиваем поправку на расстояние, пройденное началом
+            keyModifier += distance(lastStart, start);
+            lastStart = start;
+            applyChanges();
+        }
+
+        long t1 = timed ? System.nanoTime() : 0;
+        computeShortestPath(start);
+        long t2 = timed ? System.nanoTime() : 0;
+        boolean found = extractPath(start);
+
+        if (timed)
+        {
+            stats.record(expandedCount, openedCount, improvedCount, peakOpenSize, found, getPathCost(),
+                    t1 - t0, t2 - t1, System.nanoTime() - t2);
+            listener.searchFinished(stats);
+        }
+
+        return found;
+    }
+
+    /**
+     * Подключаем слушателя событий ячеек и показателей поиска или отключаем его,
+     * передав <code>null</code>. Если {@link SearchListener#cellExpanded} бросает исключение,
+     * поиск прерывается, а сохраненное состояние остается согласованным: следующий
+     * поиск продолжит работу с места остановки.
+     **/
+    public void setSearchListener(SearchListener listener)
+    {
+        this.listener = (listener != null) ? listener : SearchListener.NONE;
+    }
+
+    /** Возвращаем количество ячеек, раскрытых последним поиском **/
+    public int getExpandedCount()
+    {
+        return expandedCount;
+    }
+
+    /** Возвращаем количество ячеек последнего найденного пути или 0 **/
+    public int getPathLength()
+    {
+        return pathLength;
+    }
+
+    /** Возвращаем стоимость последнего найденного пути **/
+    public float getPathCost()
+    {
+        return pathLength > 0 ? g[path[0]] : 0;
+    }
+
+    /** Возвращаем x координату i-й ячейки найденного пути, считая от начала **/
+    public int getPathX(int i)
+    {
+        return path[checkPathIndex(i)] % width;
+    }
+
+    /** Возвращаем y координату i-й ячейки найденного пути, считая от начала **/
+    public int getPathY(int i)
+    {
+        return path[checkPathIndex(i)] / width;
+    }
+
+    /**
+     * Преобразуем последний найденный путь в цепочку путевых точек. Возвращается
+     * путевая точка конечной ячейки; по ней можно пройти назад к началу.
+     * Если путь не найден, возвращается <code>null</code>.
+     **/
+    public Waypoint toWaypoint()
+    {
+        Waypoint wp = null;
+        float cost = 0;
+
+        for (int i = 0; i < pathLength; i++)
+        {
+            if (i > 0)
+                cost += stepCost(path[i - 1], path[i]);
+
+            wp = new Waypoint(new Location(path[i] % width, path[i] / width), wp);
+            wp.setCosts(cost, 0);
+        }
+
+        return wp;
+    }
+
+    /** Сбрасываем состояние и начинаем новый поиск к указанной конечной ячейке **/
+    private void reset(int start, int finish)
+    {
+        Arrays.fill(g, INFINITY);
+        Arrays.fill(rhs, INFINITY);
+        open.clear();
+
+        for (int i = 0; i < changedCount; i++)
+            changedMark[changed[i]] = false;
+        changedCount = 0;
+
+        goal = finish;
+        lastStart = start;
+        keyModifier = 0;
+
+        rhs[goal] = 0;
+        push(goal);
+    }
+
+    /**
+     * Учитываем изменения карты. Изменение значения ячейки v меняет стоимость шагов
+     * в v из всех её соседей, поэтому пересчитываются только эти соседи.
+     **/
+    private void applyChanges()
+    {
+        for (int i = 0; i < changedCount; i++)
+        {
+            int node = changed[i];
+            changedMark[node] = false;
+            updateNeighbours(node);
+        }
+        changedCount = 0;
+    }
+
+    /** Основной цикл D* Lite: доводим до согласованного состояния ячейки, важные для начала **/
+    private void computeShortestPath(int start)
+    {
+        float startKey = key(start);
+
+        while (!open.isEmpty() &&
+                (keyLess(open.peekKey(), open.peekTie(), startKey, Math.min(g[start], rhs[start])) ||
+                        rhs[start] != g[start]))
+        {
+            int node = open.peek();
+            float oldKey = open.peekKey();
+            float newKey = key(node);
+
+            if (oldKey < newKey)
+            {
+                // Ключ устарел после перемещения начала; возвращаем ячейку с новым ключом
+                push(node);
+            }
+            else if (g[node] > rhs[node])
+            {
+                // Стоимость ячейки уменьшилась: фиксируем её. Путь соседа через неё
+                // может стать лучшим, поэтому достаточно сравнить его с текущим rhs соседа.
+                open.pop();
+                g[node] = rhs[node];
+                expandedCount++;
+                relaxNeighbours(node);
+                expanded(node);
+            }
+            else
+            {
+                // Стоимость ячейки увеличилась: сбрасываем её. Пересчитываем её саму
+                // и тех соседей, чей лучший шаг вел через неё.
+                float oldCost = g[node];
+                open.pop();
+                g[node] = INFINITY;
+                expandedCount++;
+                updateCell(node);
+                invalidateNeighbours(node, oldCost);
+                expanded(node);
+            }
+
+            startKey = key(start);
+        }
+    }
+
+    /** Предлагаем всем соседям ячейки путь через неё с её новой стоимостью **/
+    private void relaxNeighbours(int node)
+    {
+        int x = node % width;
+        int y = node / width;
+
+        for (int k = 0; k < DX.length; k++)
+        {
+            int nx = x + DX[k];
+            int ny = y + DY[k];
+
+            if (nx < 0 || nx >= width || ny < 0 || ny >= height)
+                continue;
+
+            int prev = ny * width + nx;
+            if (prev == goal)
+                continue;
+
+            float cost = g[node] + stepCost(prev, node);
+            if (cost < rhs[prev])
+            {
+                rhs[prev] = cost;
+                updateMembership(prev);
+            }
+        }
+    }
+
+    /**
+     * Пересчитываем соседей, чей rhs был получен шагом в ячейку с прежней стоимостью
+     * <code>oldCost</code>. Сумма вычисляется тем же выражением, что и в
+     * {@link #updateCell}, поэтому сравнение на точное равенство корректно.
+     **/
+    private void invalidateNeighbours(int node, float oldCost)
+    {
+        int x = node % width;
+        int y = node / width;
+
+        for (int k = 0; k < DX.length; k++)
+        {
+            int nx = x + DX[k];
+            int ny = y + DY[k];
+
+            if (nx < 0 || nx >= width || ny < 0 || ny >= height)
+                continue;
+
+            int prev = ny * width + nx;
+            if (rhs[prev] == oldCost + stepCost(prev, node))
+                updateCell(prev);
+        }
+    }
+
+    /** Пересчитываем всех соседей ячейки **/
+    private void updateNeighbours(int node)
+    {
+        int x = node % width;
+        int y = node / width;
+
+        for (int k = 0; k < DX.length; k++)
+        {
+            int nx = x + DX[k];
+            int ny = y + DY[k];
+
+            if (nx >= 0 && nx < width && ny >= 0 && ny < height)
+                updateCell(ny * width + nx);
+        }
+    }
+
+    /**
+     * Пересчитываем rhs ячейки как лучший шаг в соседа плюс его стоимость до конца
+     * и помещаем ячейку в кучу, если её значения g и rhs не совпадают
+     **/
+    private void updateCell(int node)
+    {
+        if (node != goal)
+        {
+            int x = node % width;
+            int y = node / width;
+            float best = INFINITY;
+
+            for (int k = 0; k < DX.length; k++)
+            {
+                int nx = x + DX[k];
+                int ny = y + DY[k];
+
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height)
+                    continue;
+
+                int next = ny * width + nx;
+                float cost = g[next] + stepCost(node, next);
+                if (cost < best)
+                    best = cost;
+            }
+            rhs[node] = best;
+        }
+
+        updateMembership(node);
+    }
+
+    /** Держим в куче ровно те ячейки, у которых g и rhs не совпадают **/
+    private void updateMembership(int node)
+    {
+        if (g[node] != rhs[node])
+            push(node);
+        else
+            open.remove(node);
+    }
+
+    /** Помещаем ячейку в кучу с её текущим ключом или обновляем ключ **/
+    private void push(int node)
+    {
+        if (open.contains(node))
+            improvedCount++;
+        else
+            openedCount++;
+
+        open.push(node, key(node), Math.min(g[node], rhs[node]));
+
+        if (open.size() > peakOpenSize)
+            peakOpenSize = open.size();
+
+        if (listener != SearchListener.NONE)
+            listener.cellOpened(node % width, node / width);
+    }
+
+    /**
+     * Сообщаем слушателю о раскрытой ячейке. Вызывается после полной обработки
+     * ячейки, поэтому прерывание поиска из слушателя оставляет состояние согласованным.
+     **/
+    private void expanded(int node)
+    {
+        if (listener != SearchListener.NONE)
+            listener.cellExpanded(node % width, node / width);
+    }
+
+    /** Первая часть ключа D* Lite; вторая часть - min(g, rhs) **/
+    private float key(int node)
+    {
+        return Math.min(g[node], rhs[node]) + distance(lastStart, node) + keyModifier;
+    }
+
+    /** Лексикографическое сравнение ключей **/
+    private static boolean keyLess(float a1, float a2, float b1, float b2)
+    {
+        return a1 < b1 || (a1 == b1 && a2 < b2);
+    }
+
+    /**
+     * Стоимость шага между соседними ячейками: длина шага плюс значение ячейки,
+     * в которую делается шаг. Шаг в непроходимую ячейку имеет бесконечную стоимость.
+     **/
+    private float stepCost(int from, int to)
+    {
+        int x = to % width;
+        int y = to / width;
+        int value = map.getCellValue(x, y);
+
+        if (value >= AStarPathfinder.COST_LIMIT)
+            return INFINITY;
+
+        float step = (from % width != x && from / width != y) ? DIAGONAL : 1;
+        return step + value;
+    }
+
+    /**
+     * Оценка стоимости пути между двумя ячейками: прямое расстояние, немного уменьшенное.
+     * Вдоль прямой линии расстояние совпадает с суммой длин шагов, и без уменьшения
+     * ошибки округления float могли бы сделать оценку больше суммы, из-за чего ячейки
+     * такого пути не раскрывались бы раньше начальной.
+     **/
+    private float distance(int a, int b)
+    {
+        int dx = a % width - b % width;
+        int dy = a / width - b / width;
+        return HEURISTIC_SCALE * (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Восстанавливаем путь от начала, на каждом шаге переходя в соседа с наименьшей
+     * суммой стоимости шага и его стоимости до конца
+     **/
+    private boolean extractPath(int start)
+    {
+        pathLength = 0;
+        if (g[start] >= AStarPathfinder.COST_LIMIT)
+            return false;
+
+        int node = start;
+        add(node);
+        while (node != goal)
+        {
+            int x = node % width;
+            int y = node / width;
+            int bestNext = -1;
+            float best = INFINITY;
+
+            for (int k = 0; k < DX.length; k++)
+            {
+                int nx = x + DX[k];
+                int ny = y + DY[k];
+
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height)
+                    continue;
+
+                int next = ny * width + nx;
+                float cost = g[next] + stepCost(node, next);
+                if (cost < best)
+                {
+                    best = cost;
+                    bestNext = next;
+                }
+            }
+
+            // Каждый шаг стоит не меньше 1, поэтому более длинный путь означает цикл
+            if (bestNext < 0 || pathLength > (long) width * height)
+            {
+                pathLength = 0;
+                return false;
+            }
+
+            node = bestNext;
+            add(node);
+        }
+
+        return true;
+    }
+
+    /** Добавляем ячейку в конец найденного пути **/
+    private void add(int node)
+    {
+        if (pathLength == path.length)
+            path = Arrays.copyOf(path, pathLength * 2);
+        path[pathLength++] = node;
+    }
+
+    /** Проверяем номер ячейки пути и возвращаем его **/
+    private int checkPathIndex(int i)
+    {
+        if (i < 0 || i >= pathLength)
+            throw new IndexOutOfBoundsException("path index " + i + " out of range [0, " + pathLength + ")");
+
+        return i;
+    }
+}
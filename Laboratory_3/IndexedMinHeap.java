@@ -0,0 +1,247 @@
+import java.util.Arrays;
+
+/**
+ * Этот класс представляет собой индексированную двоичную кучу целочисленных идентификаторов
+ * (номеров ячеек карты), упорядоченную по ключу типа float. При равных ключах
+ * сравнивается дополнительный ключ. Куча хранит позицию каждого идентификатора, поэтому
+ * обновление ключа и удаление выполняются за O(log N) без выделения памяти.
+ **/
+public class IndexedMinHeap
+{
+    /** Идентификаторы элементов в порядке кучи **/
+    private int[] heap;
+
+    /**
+     * Позиция идентификатора в куче. Значение действительно только тогда,
+     * когда <code>heap[pos[id]] == id</code>, поэтому массив не нужно очищать
+     **/
+    private int[] pos;
+
+    /** Основной ключ каждого идентификатора **/
+    private float[] keys;
+
+    /** Дополнительный ключ, используемый при равенстве основных ключей **/
+    private float[] ties;
+
+    /** Текущее количество элементов в куче **/
+    private int size;
+
+
+    /** Создание кучи для идентификаторов из диапазона [0, capacity) **/
+    public IndexedMinHeap(int capacity)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be > 0; got " + capacity);
+
+        heap = new int[capacity];
+        pos = new int[capacity];
+        keys = new float[capacity];
+        ties = new float[capacity];
+    }
+
+    /** Возвращаем верхнюю границу допустимых идентификаторов **/
+    public int capacity()
+    {
+        return heap.length;
+    }
+
+    /**
+     * Увеличиваем диапазон допустимых идентификаторов до указанного значения.
+     * Куча при этом очищается.
+     **/
+    public void ensureCapacity(int capacity)
+    {
+        if (capacity > heap.length)
+        {
+            heap = new int[capacity];
+            pos = new int[capacity];
+            keys = new float[capacity];
+            ties = new float[capacity];
+        }
+        size = 0;
+    }
+
+    /**
+     * Увеличиваем диапазон допустимых идентификаторов до указанного значения,
+     * сохраняя элементы кучи. Подходит для поисков, которые выдают
+     * идентификаторы по мере обнаружения новых состояний.
+     **/
+    public void grow(int capacity)
+    {
+        if (capacity > heap.length)
+        {
+            heap = Arrays.copyOf(heap, capacity);
+            pos = Arrays.copyOf(pos, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            ties = Arrays.copyOf(ties, capacity);
+        }
+    }
+
+    /** Возвращаем текущее количество элементов в куче **/
+    public int size()
+    {
+        return size;
+    }
+
+    /** Возвращаем true, если куча пуста **/
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /** Удаляем все элементы из кучи за O(1) **/
+    public void clear()
+    {
+        size = 0;
+    }
+
+    /** Возвращаем true, если идентификатор находится в куче **/
+    public boolean contains(int id)
+    {
+        int p = pos[id];
+        return p < size && heap[p] == id;
+    }
+
+    /** Возвращаем основной ключ идентификатора, находящегося в куче **/
+    public float getKey(int id)
+    {
+        return keys[id];
+    }
+
+    /**
+     * Добавляем идентификатор в кучу или, если он уже там, заменяем его ключи.
+     * Ключ может как уменьшаться, так и увеличиваться.
+     **/
+    public void push(int id, float key, float tie)
+    {
+        if (contains(id))
+        {
+            keys[id] = key;
+            ties[id] = tie;
+            int p = pos[id];
+            siftUp(p);
+            siftDown(pos[id]);
+            return;
+        }
+
+        keys[id] = key;
+        ties[id] = tie;
+        heap[size] = id;
+        pos[id] = size;
+        size++;
+        siftUp(size - 1);
+    }
+
+    /** Возвращаем идентификатор с минимальным ключом, не удаляя его **/
+    public int peek()
+    {
+        if (size == 0)
+            throw new IllegalStateException("heap is empty");
+
+        return heap[0];
+    }
+
+    /** Возвращаем минимальный основной ключ кучи **/
+    public float peekKey()
+    {
+        if (size == 0)
+            throw new IllegalStateException("heap is empty");
+
+        return keys[heap[0]];
+    }
+
+    /** Возвращаем дополнительный ключ элемента с минимальным ключом **/
+    public float peekTie()
+    {
+        if (size == 0)
+            throw new IllegalStateException("heap is empty");
+
+        return ties[heap[0]];
+    }
+
+    /** Удаляем и возвращаем идентификатор с минимальным ключом **/
+    public int pop()
+    {
+        int top = peek();
+        removeAt(0);
+        return top;
+    }
+
+    /** Удаляем идентификатор из кучи. Возвращаем false, если его там не было **/
+    public boolean remove(int id)
+    {
+        if (!contains(id))
+            return false;
+
+        removeAt(pos[id]);
+        return true;
+    }
+
+    /** Удаляем элемент в указанной позиции кучи **/
+    private void removeAt(int p)
+    {
+        size--;
+        if (p != size)
+        {
+            int last = heap[size];
+            heap[p] = last;
+            pos[last] = p;
+            siftUp(p);
+            siftDown(pos[last]);
+        }
+    }
+
+    /** Возвращаем true, если элемент a должен стоять в куче выше элемента b **/
+    private boolean less(int a, int b)
+    {
+        float ka = keys[a];
+        float kb = keys[b];
+        return ka < kb || (ka == kb && ties[a] < ties[b]);
+    }
+
+    /** Поднимаем элемент вверх, пока он меньше своего родителя **/
+    private void siftUp(int p)
+    {
+        int id = heap[p];
+        while (p > 0)
+        {
+            int parent = (p - 1) >>> 1;
+            int pid = heap[parent];
+            if (!less(id, pid))
+                break;
+
+            heap[p] = pid;
+            pos[pid] = p;
+            p = parent;
+        }
+        heap[p] = id;
+        pos[id] = p;
+    }
+
+    /** Опускаем элемент вниз, пока один из потомков меньше него **/
+    private void siftDown(int p)
+    {
+        int id = heap[p];
+        int half = size >>> 1;
+        while (p < half)
+        {
+            int child = 2 * p + 1;
+            int cid = heap[child];
+            int right = child + 1;
+            if (right < size && less(heap[right], cid))
+            {
+                child = right;
+                cid = heap[child];
+            }
+
+            if (!less(cid, id))
+                break;
+
+            heap[p] = cid;
+            pos[cid] = p;
+            p = child;
+        }
+        heap[p] = id;
+        pos[id] = p;
+    }
+}
@@ -0,0 +1,330 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import javax.swing.*;
+
+/**
+ * Этот класс представляет собой пользовательский компонент Swing, отображающий
+ * всю карту целиком. Вместо отдельного компонента на каждую ячейку стоимости
+ * ячеек хранятся в одном массиве, а их цвета - в изображении
+ * <code>BufferedImage</code>, где каждой ячейке соответствует один пиксель.
+ * При рисовании изображение масштабируется до размера ячейки.
+ * <p>
+ * Изменение ячейки меняет один пиксель изображения и перерисовывает только
+ * прямоугольник этой ячейки, поэтому компонент подходит для карт из миллионов ячеек.
+ * Координаты мыши переводятся в координаты ячеек методами {@link #cellX} и {@link #cellY}.
+ * Все методы должны вызываться из потока событий Swing.
+ **/
+public class JMapCanvas extends JComponent
+{
+    private static final long serialVersionUID = 1L;
+
+    /** Отметка начальной или конечной ячейки **/
+    private static final byte ENDPOINT = 1;
+
+    /** Отметка ячейки найденного пути **/
+    private static final byte PATH = 2;
+
+    /** Отметка ячейки "открытого" набора идущего поиска **/
+    private static final byte OPEN = 4;
+
+    /** Отметка ячейки, раскрытой идущим поиском **/
+    private static final byte CLOSED = 8;
+
+    /** Все отметки поиска **/
+    private static final byte SEARCH_MARKS = PATH | OPEN | CLOSED;
+
+    /** Стоимость, при которой цвет взвешенной ячейки становится самым темным **/
+    private static final int MAX_SHADED_COST = 20;
+
+    /** Наибольший размер ячейки в пикселях **/
+    private static final int MAX_CELL_SIZE = 12;
+
+    /** Размер ячейки, начиная с которого между ячейками рисуется сетка **/
+    private static final int GRID_CELL_SIZE = 4;
+
+    /** Ширина и высота карты в ячейках **/
+    private final int width, height;
+
+    /** Стоимости ячеек в порядке <code>y * width + x</code> **/
+    private final int[] costs;
+
+    /** Отметки ячеек: начало или конец, путь, волновой фронт поиска **/
+    private final byte[] marks;
+
+    /** Изображение карты, по пикселю на ячейку **/
+    private final BufferedImage image;
+
+    /** Пиксели изображения **/
+    private final int[] pixels;
+
+    /** Размер ячейки на экране в пикселях **/
+    private int cellSize;
+
+    /** true, если хотя бы у одной ячейки есть отметка поиска **/
+    private boolean hasSearchMarks;
+
+
+    /** Создание компонента для карты, заполненной стоимостями указанной карты **/
+    public JMapCanvas(Map2D map)
+    {
+        this(map.getWidth(), map.getHeight());
+
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+                costs[y * width + x] = map.getCellValue(x, y);
+        }
+
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = colorOf(i);
+    }
+
+    /** Создание компонента для пустой карты указанного размера **/
+    public JMapCanvas(int width, int height)
+    {
+        if (width <= 0 || height <= 0)
+        {
+            throw new IllegalArgumentException(
+                    "width and height must be positive values; got " + width +
+                            "x" + height);
+        }
+
+        this.width = width;
+        this.height = height;
+
+        costs = new int[width * height];
+        marks = new byte[width * height];
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        Arrays.fill(pixels, Color.WHITE.getRGB());
+
+        // Окно около 800 пикселей, но не больше MAX_CELL_SIZE на ячейку
+        setCellSize(Math.max(1, Math.min(MAX_CELL_SIZE, 800 / Math.max(width, height))));
+        setOpaque(true);
+    }
+
+    /** Возвращаем ширину карты в ячейках **/
+    public int getMapWidth()
+    {
+        return width;
+    }
+
+    /** Возвращаем высоту карты в ячейках **/
+    public int getMapHeight()
+    {
+        return height;
+    }
+
+    /** Возвращаем размер ячейки на экране в пикселях **/
+    public int getCellSize()
+    {
+        return cellSize;
+    }
+
+    /** Устанавливаем размер ячейки на экране в пикселях **/
+    public void setCellSize(int cellSize)
+    {
+        if (cellSize <= 0)
+            throw new IllegalArgumentException("cellSize must be > 0; got " + cellSize);
+
+        this.cellSize = cellSize;
+        setPreferredSize(new Dimension(width * cellSize, height * cellSize));
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Возвращаем x координату ячейки под точкой компонента с координатой
+     * <code>px</code> или -1, если точка лежит вне карты
+     **/
+    public int cellX(int px)
+    {
+        int x = Math.floorDiv(px, cellSize);
+        return (x >= 0 && x < width) ? x : -1;
+    }
+
+    /**
+     * Возвращаем y координату ячейки под точкой компонента с координатой
+     * <code>py</code> или -1, если точка лежит вне карты
+     **/
+    public int cellY(int py)
+    {
+        int y = Math.floorDiv(py, cellSize);
+        return (y >= 0 && y < height) ? y : -1;
+    }
+
+    /** Возвращаем стоимость указанной ячейки **/
+    public int getCellValue(int x, int y)
+    {
+        return costs[index(x, y)];
+    }
+
+    /** Устанавливаем стоимость указанной ячейки **/
+    public void setCellValue(int x, int y, int value)
+    {
+        int i = index(x, y);
+        if (costs[i] == value)
+            return;
+
+        costs[i] = value;
+        updateCell(i);
+    }
+
+    /** Возвращаем true, если указанная ячейка проходима **/
+    public boolean isPassable(int x, int y)
+    {
+        return costs[index(x, y)] < AStarPathfinder.COST_LIMIT;
+    }
+
+    /** Делаем ячейку свободной или непроходимой **/
+    public void setPassable(int x, int y, boolean passable)
+    {
+        setCellValue(x, y, passable ? 0 : Integer.MAX_VALUE);
+    }
+
+    /** Возвращаем копию стоимостей всех ячеек в порядке <code>y * width + x</code> **/
+    public int[] copyCellValues()
+    {
+        return costs.clone();
+    }
+
+    /** Помечаем ячейку как начальную или конечную **/
+    public void setEndpoint(int x, int y, boolean endpoint)
+    {
+        setMark(index(x, y), ENDPOINT, endpoint);
+    }
+
+    /** Помечаем ячейку как часть найденного пути **/
+    public void setPath(int x, int y, boolean path)
+    {
+        setMark(index(x, y), PATH, path);
+    }
+
+    /** Помечаем ячейку как находящуюся в "открытом" наборе поиска **/
+    public void setOpen(int x, int y, boolean open)
+    {
+        setMark(index(x, y), OPEN, open);
+    }
+
+    /** Помечаем ячейку как раскрытую поиском **/
+    public void setClosed(int x, int y, boolean closed)
+    {
+        setMark(index(x, y), CLOSED, closed);
+    }
+
+    /** Снимаем со всех ячеек отметки пути и волнового фронта поиска **/
+    public void clearSearchState()
+    {
+        if (!hasSearchMarks)
+            return;
+
+        for (int i = 0; i < marks.length; i++)
+        {
+            if ((marks[i] & SEARCH_MARKS) != 0)
+            {
+                marks[i] &= ~SEARCH_MARKS;
+                pixels[i] = colorOf(i);
+            }
+        }
+
+        hasSearchMarks = false;
+        repaint();
+    }
+
+    /**
+     * Рисуем только ячейки, попадающие в область отсечения: соответствующий
+     * прямоугольник изображения масштабируется до размера ячеек
+     **/
+    protected void paintComponent(Graphics g)
+    {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null)
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+
+        g.setColor(Color.GRAY);
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        int x0 = Math.max(0, clip.x / cellSize);
+        int y0 = Math.max(0, clip.y / cellSize);
+        int x1 = Math.min(width, (clip.x + clip.width + cellSize - 1) / cellSize);
+        int y1 = Math.min(height, (clip.y + clip.height + cellSize - 1) / cellSize);
+        if (x0 >= x1 || y0 >= y1)
+            return;
+
+        g.drawImage(image, x0 * cellSize, y0 * cellSize, x1 * cellSize, y1 * cellSize,
+                x0, y0, x1, y1, null);
+
+        // Сетка между ячейками, как промежутки между прежними компонентами ячеек
+        if (cellSize >= GRID_CELL_SIZE)
+        {
+            g.setColor(Color.GRAY);
+            for (int x = x0 + 1; x <= x1; x++)
+                g.drawLine(x * cellSize - 1, y0 * cellSize, x * cellSize - 1, y1 * cellSize - 1);
+            for (int y = y0 + 1; y <= y1; y++)
+                g.drawLine(x0 * cellSize, y * cellSize - 1, x1 * cellSize - 1, y * cellSize - 1);
+        }
+    }
+
+    /** Устанавливаем или снимаем отметку ячейки **/
+    private void setMark(int i, byte mark, boolean set)
+    {
+        byte old = marks[i];
+        marks[i] = (byte) (set ? old | mark : old & ~mark);
+        if (marks[i] == old)
+            return;
+
+        if ((mark & SEARCH_MARKS) != 0 && set)
+            hasSearchMarks = true;
+
+        updateCell(i);
+    }
+
+    /** Перекрашиваем пиксель ячейки и перерисовываем только её прямоугольник **/
+    private void updateCell(int i)
+    {
+        pixels[i] = colorOf(i);
+        repaint((i % width) * cellSize, (i / width) * cellSize, cellSize, cellSize);
+    }
+
+    /**
+     * Цвет ячейки: непроходимые ячейки красные; у проходимых приоритет имеют
+     * начало и конец, затем путь, раскрытые и открытые ячейки. Остальные ячейки
+     * тем темнее, чем больше их стоимость.
+     **/
+    private int colorOf(int i)
+    {
+        int cost = costs[i];
+        if (cost >= AStarPathfinder.COST_LIMIT)
+            return 0xFF0000;
+
+        int mark = marks[i];
+        if ((mark & ENDPOINT) != 0)
+            return 0x00FFFF;
+        if ((mark & PATH) != 0)
+            return 0x00FF00;
+        if ((mark & CLOSED) != 0)
+            return 0xC0C0C0;
+        if ((mark & OPEN) != 0)
+            return 0xFFFF00;
+
+        // Белый для бесплатных ячеек, до коричневого для самых дорогих
+        int shade = Math.min(Math.max(cost, 0), MAX_SHADED_COST) * 255 / MAX_SHADED_COST;
+        int r = 255 - shade * 95 / 255;
+        int g = 255 - shade * 160 / 255;
+        int b = 255 - shade * 210 / 255;
+        return (r << 16) | (g << 8) | b;
+    }
+
+    /** Номер ячейки с проверкой координат **/
+    private int index(int x, int y)
+    {
+        if (x < 0 || x >= width || y < 0 || y >= height)
+        {
+            throw new IllegalArgumentException("cell is outside the map: " + x + ", " + y +
+                    " (map is " + width + "x" + height + ")");
+        }
+        return y * width + x;
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Этот класс реализует поиск с точками прыжка (Jump Point Search) для однородных карт,
+ * на которых каждая ячейка либо имеет нулевую стоимость, либо непроходима
+ * (см. {@link Map2D#isUniformCost()}). Вместо того чтобы добавлять в "открытый" набор
+ * всех восемь соседей, алгоритм "прыгает" по прямой или диагонали до ближайшей ячейки,
+ * в которой путь может повернуть, и открывает только такие ячейки.
+ * Найденный путь имеет ту же стоимость, что и путь обычного A*.
+ * <p>
+ * Диагональные шаги, как и в {@link AStarPathfinder}, разрешены даже между двумя
+ * непроходимыми ячейками. На картах со взвешенными ячейками результат не оптимален,
+ * поэтому для них нужно использовать {@link GridPathfinder}.
+ **/
+public class JumpPointPathfinder extends GridPathfinder
+{
+    /** Прыжки определены только для восьми соседей, поэтому другой набор не принимается **/
+    public void setNeighbourhood(Neighbourhood neighbourhood)
+    {
+        if (neighbourhood != Neighbourhood.EIGHT)
+            throw new IllegalArgumentException("jump point search supports only the eight-cell neighbourhood");
+
+        super.setNeighbourhood(neighbourhood);
+    }
+
+    /**
+     * Генерируем "следующие шаги" из указанной ячейки. Из начальной ячейки
+     * прыжки выполняются во всех восьми направлениях; из остальных - только в
+     * естественных и вынужденных направлениях относительно направления прихода.
+     **/
+    protected void expand(int node)
+    {
+        int x = node % width;
+        int y = node / width;
+
+        if (parent[node] < 0)
+        {
+            for (int dy = -1; dy <= 1; dy++)
+            {
+                for (int dx = -1; dx <= 1; dx++)
+                {
+                    if (dx != 0 || dy != 0)
+                        jumpFrom(node, x, y, dx, dy);
+                }
+            }
+            return;
+        }
+
+        int dx = Integer.signum(x - parent[node] % width);
+        int dy = Integer.signum(y - parent[node] / width);
+
+        if (dx != 0 && dy != 0)
+        {
+            // Диагональное движение: естественные соседи и два возможных вынужденных
+            jumpFrom(node, x, y, dx, 0);
+            jumpFrom(node, x, y, 0, dy);
+            jumpFrom(node, x, y, dx, dy);
+
+            if (!walkable(x - dx, y))
+                jumpFrom(node, x, y, -dx, dy);
+            if (!walkable(x, y - dy))
+                jumpFrom(node, x, y, dx, -dy);
+        }
+        else if (dx != 0)
+        {
+            // Горизонтальное движение
+            jumpFrom(node, x, y, dx, 0);
+
+            if (!walkable(x, y + 1))
+                jumpFrom(node, x, y, dx, 1);
+            if (!walkable(x, y - 1))
+                jumpFrom(node, x, y, dx, -1);
+        }
+        else
+        {
+            // Вертикальное движение
+            jumpFrom(node, x, y, 0, dy);
+
+            if (!walkable(x + 1, y))
+                jumpFrom(node, x, y, 1, dy);
+            if (!walkable(x - 1, y))
+                jumpFrom(node, x, y, -1, dy);
+        }
+    }
+
+    /**
+     * Прыгаем из ячейки в указанном направлении и, если найдена точка прыжка,
+     * предлагаем путь до неё
+     **/
+    private void jumpFrom(int node, int x, int y, int dx, int dy)
+    {
+        int target = jump(x, y, dx, dy);
+        if (target < 0)
+            return;
+
+        int steps = Math.max(Math.abs(target % width - x), Math.abs(target / width - y));
+        float step = (dx != 0 && dy != 0) ? DIAGONAL : 1;
+        relax(node, target, gCost[node] + steps * step);
+    }
+
+    /**
+     * Двигаемся из ячейки (x, y) в направлении (dx, dy), пока не встретим
+     * конечную ячейку или ячейку с вынужденным соседом. Возвращаем номер найденной
+     * точки прыжка или -1, если движение уперлось в препятствие или край карты.
+     **/
+    private int jump(int x, int y, int dx, int dy)
+    {
+        while (true)
+        {
+            x += dx;
+            y += dy;
+
+            if (!walkable(x, y))
+                return -1;
+
+            if (x == goalX && y == goalY)
+                return y * width + x;
+
+            if (dx != 0 && dy != 0)
+            {
+                if ((!walkable(x - dx, y) && walkable(x - dx, y + dy)) ||
+                        (!walkable(x, y - dy) && walkable(x + dx, y - dy)))
+                    return y * width + x;
+
+                // Диагональная ячейка - точка прыжка, если из неё есть прыжок по прямой
+                if (jump(x, y, dx, 0) >= 0 || jump(x, y, 0, dy) >= 0)
+                    return y * width + x;
+            }
+            else if (dx != 0)
+            {
+                if ((!walkable(x, y + 1) && walkable(x + dx, y + 1)) ||
+                        (!walkable(x, y - 1) && walkable(x + dx, y - 1)))
+                    return y * width + x;
+            }
+            else
+            {
+                if ((!walkable(x + 1, y) && walkable(x + 1, y + dy)) ||
+                        (!walkable(x - 1, y) && walkable(x - 1, y + dy)))
+                    return y * width + x;
+            }
+        }
+    }
+
+    /** Возвращаем true, если ячейка лежит в области поиска и в неё можно войти **/
+    private boolean walkable(int x, int y)
+    {
+        return inBounds(x, y) && map.isPassable(x, y);
+    }
+}
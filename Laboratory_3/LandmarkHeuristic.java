@@ -0,0 +1,206 @@
+/**
+ * Этот класс реализует эвристику ALT (A*, ориентиры и неравенство треугольника).
+ * Для нескольких ячеек-ориентиров L заранее вычисляются точные стоимости путей
+ * d(L, v) от ориентира до каждой ячейки и d(v, L) от каждой ячейки до ориентира.
+ * Тогда для любых ячеек v и t по неравенству треугольника
+ * <pre>
+ *     d(v, t) &gt;= d(L, t) - d(L, v)   и   d(v, t) &gt;= d(v, L) - d(t, L),
+ * </pre>
+ * и наибольшая из этих оценок - допустимая и согласованная эвристика, которая,
+ * в отличие от прямого расстояния, учитывает стоимости ячеек карты.
+ * <p>
+ * Ориентиры выбираются "по дальней точке": каждый следующий ориентир - достижимая
+ * ячейка, наиболее удаленная от уже выбранных. Таблицы занимают
+ * <code>2 * K * width * height</code> чисел float и хранятся в двух плоских массивах.
+ * <p>
+ * Как {@link GridHeuristic} объект возвращает наибольшую из оценки ALT и прямого
+ * расстояния, поэтому его можно передать в {@link GridPathfinder#setHeuristic}.
+ * <p>
+ * Таблицы верны только для той версии карты, для которой они вычислены
+ * ({@link Map2D#getVersion()}). После изменения карты {@link #isValidFor} возвращает
+ * false, и поиск использует обычную эвристику до пересчета таблиц.
+ * Таблицы вычисляются для восьми соседей; для четырех соседей стоимости путей
+ * не меньше, поэтому оценка остается допустимой.
+ * Вычисленный объект не меняется, поэтому его можно использовать
+ * из нескольких потоков одновременно.
+ **/
+public class LandmarkHeuristic implements GridHeuristic
+{
+    /** Количество ориентиров по умолчанию **/
+    public static final int DEFAULT_LANDMARKS = 8;
+
+    /** Карта, для которой вычислены таблицы, и её версия **/
+    private final Map2D map;
+    private final long version;
+
+    /** Количество ячеек карты **/
+    private final int cells;
+
+    /** Номера ячеек-ориентиров **/
+    private final int[] landmarks;
+
+    /** Стоимости d(L, v): ориентир k занимает ячейки [k * cells, (k + 1) * cells) **/
+    private final float[] fromLandmark;
+
+    /** Стоимости d(v, L) в том же порядке **/
+    private final float[] toLandmark;
+
+
+    /** Вычисляем таблицы для карты с количеством ориентиров по умолчанию **/
+    public LandmarkHeuristic(Map2D map)
+    {
+        this(map, DEFAULT_LANDMARKS);
+    }
+
+    /** Вычисляем таблицы для указанного количества ориентиров **/
+    public LandmarkHeuristic(Map2D map, int count)
+    {
+        if (map == null)
+            throw new NullPointerException("map cannot be null");
+
+        if (count <= 0)
+            throw new IllegalArgumentException("count must be > 0; got " + count);
+
+        // Размеры считаются в long: таблицы занимают count * cells элементов одного массива
+        cells = GridPathfinder.cellCount(map);
+        if ((long) count * cells > GridPathfinder.MAX_CELLS)
+            throw new IllegalArgumentException("landmark tables for " + count + " landmarks do not fit a map of "
+                    + map.getWidth() + " x " + map.getHeight());
+
+        this.map = map;
+        version = map.getVersion();
+
+        int[] chosen = new int[count];
+        float[] from = new float[count * cells];
+        float[] to = new float[count * cells];
+
+        // Расстояние каждой ячейки до ближайшего выбранного ориентира
+        float[] nearest = new float[cells];
+        float[] dist = new float[cells];
+        GridDijkstra dijkstra = new GridDijkstra();
+
+        // Первый ориентир - самая дальняя ячейка от центра карты (или от любой
+        // проходимой ячейки, если центр непроходим)
+        int seed = firstPassable(map);
+        dijkstra.distancesFrom(map, seed, dist);
+        int next = farthest(dist);
+        if (next < 0)
+            next = seed;
+
+        int n = 0;
+        while (n < count && next >= 0)
+        {
+            chosen[n] = next;
+            dijkstra.distancesFrom(map, next, dist);
+            System.arraycopy(dist, 0, from, n * cells, cells);
+            dijkstra.distancesTo(map, next, dist);
+            System.arraycopy(dist, 0, to, n * cells, cells);
+
+            for (int i = 0; i < cells; i++)
+            {
+                float d = from[n * cells + i];
+                nearest[i] = (n == 0) ? d : Math.min(nearest[i], d);
+            }
+            n++;
+
+            // Следующий ориентир - ячейка, наиболее удаленная от всех выбранных
+            next = farthest(nearest);
+            if (next >= 0 && nearest[next] == 0)
+                next = -1;
+        }
+
+        // На маленьких или разорванных картах ориентиров может оказаться меньше
+        landmarks = java.util.Arrays.copyOf(chosen, n);
+        fromLandmark = n == count ? from : java.util.Arrays.copyOf(from, n * cells);
+        toLandmark = n == count ? to : java.util.Arrays.copyOf(to, n * cells);
+    }
+
+    /** Возвращаем true, если таблицы вычислены для текущей версии указанной карты **/
+    public boolean isValidFor(Map2D map)
+    {
+        return map == this.map && map.getVersion() == version;
+    }
+
+    /** Возвращаем количество ориентиров **/
+    public int getLandmarkCount()
+    {
+        return landmarks.length;
+    }
+
+    /** Возвращаем x координату k-го ориентира **/
+    public int getLandmarkX(int k)
+    {
+        return landmarks[k] % map.getWidth();
+    }
+
+    /** Возвращаем y координату k-го ориентира **/
+    public int getLandmarkY(int k)
+    {
+        return landmarks[k] / map.getWidth();
+    }
+
+    /** Оцениваем стоимость пути наибольшей из оценки ALT и прямого расстояния **/
+    public float estimate(int x, int y, int goalX, int goalY)
+    {
+        int width = map.getWidth();
+        return Math.max(EUCLIDEAN.estimate(x, y, goalX, goalY),
+                estimate(y * width + x, goalY * width + goalX));
+    }
+
+    /**
+     * Оцениваем снизу стоимость пути из ячейки <code>node</code> в ячейку
+     * <code>goal</code> (номера <code>y * width + x</code>). Ориентиры, от которых
+     * или до которых одна из ячеек недостижима, не учитываются.
+     **/
+    public float estimate(int node, int goal)
+    {
+        float best = 0;
+
+        for (int base = 0; base < fromLandmark.length; base += cells)
+        {
+            float lt = fromLandmark[base + goal];
+            float lv = fromLandmark[base + node];
+            if (lt != Float.POSITIVE_INFINITY && lv != Float.POSITIVE_INFINITY)
+                best = Math.max(best, lt - lv);
+
+            float vl = toLandmark[base + node];
+            float tl = toLandmark[base + goal];
+            if (vl != Float.POSITIVE_INFINITY && tl != Float.POSITIVE_INFINITY)
+                best = Math.max(best, vl - tl);
+        }
+
+        return best;
+    }
+
+    /** Номер достижимой ячейки с наибольшей конечной стоимостью или -1 **/
+    private static int farthest(float[] dist)
+    {
+        int best = -1;
+        for (int i = 0; i < dist.length; i++)
+        {
+            if (dist[i] != Float.POSITIVE_INFINITY && (best < 0 || dist[i] > dist[best]))
+                best = i;
+        }
+        return best;
+    }
+
+    /** Номер центральной ячейки карты или первой проходимой ячейки **/
+    private static int firstPassable(Map2D map)
+    {
+        int width = map.getWidth();
+        int cx = width / 2;
+        int cy = map.getHeight() / 2;
+        if (map.isPassable(cx, cy))
+            return cy * width + cx;
+
+        for (int y = 0; y < map.getHeight(); y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                if (map.isPassable(x, y))
+                    return y * width + x;
+            }
+        }
+        return cy * width + cx;
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Этот класс проверяет прямую видимость между ячейками карты и стоимость
+ * движения по прямой. Прямая между ячейками (x0, y0) и (x1, y1) - это линия
+ * Брезенхэма: по главной оси (той, где смещение больше) делается ровно один шаг
+ * на ячейку, а по второй оси смещение округляется. Соседние ячейки линии
+ * касаются сторонами или углами, поэтому по линии можно пройти шагами
+ * {@link Neighbourhood#EIGHT} с той же стоимостью шага, что и в {@link AStarPathfinder}.
+ * <p>
+ * Ячейка линии с номером i вычисляется сразу по формуле ({@link #pointX}, {@link #pointY}),
+ * без прохода по предыдущим, поэтому линию можно обходить в любом порядке
+ * и восстанавливать по концам без хранения промежуточных ячеек.
+ **/
+public class LineOfSight
+{
+    /** Возвращаем количество шагов по линии из (x0, y0) в (x1, y1) **/
+    public static int length(int x0, int y0, int x1, int y1)
+    {
+        return Math.max(Math.abs(x1 - x0), Math.abs(y1 - y0));
+    }
+
+    /** Возвращаем x координату ячейки линии с номером i, от 0 до {@link #length} **/
+    public static int pointX(int x0, int y0, int x1, int y1, int i)
+    {
+        return x0 + offset(x1 - x0, y1 - y0, i);
+    }
+
+    /** Возвращаем y координату ячейки линии с номером i, от 0 до {@link #length} **/
+    public static int pointY(int x0, int y0, int x1, int y1, int i)
+    {
+        return y0 + offset(y1 - y0, x1 - x0, i);
+    }
+
+    /**
+     * Возвращаем true, если все ячейки линии после начальной лежат на карте
+     * и проходимы, то есть из (x0, y0) видна (x1, y1), а стоимость движения
+     * по линии меньше {@link AStarPathfinder#COST_LIMIT}
+     **/
+    public static boolean isClear(Map2D map, int x0, int y0, int x1, int y1)
+    {
+        return cost(map, x0, y0, x1, y1) != Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Возвращаем стоимость движения по линии из (x0, y0) в (x1, y1): сумму длин
+     * шагов и значений ячеек, в которые они входят. Если линия проходит через
+     * непроходимую ячейку или стоимость достигает {@link AStarPathfinder#COST_LIMIT},
+     * возвращается <code>Float.POSITIVE_INFINITY</code>.
+     **/
+    public static float cost(Map2D map, int x0, int y0, int x1, int y1)
+    {
+        return cost(map, x0, y0, x1, y1, AStarPathfinder.COST_LIMIT);
+    }
+
+    /**
+     * Возвращаем стоимость движения по линии, как {@link #cost(Map2D, int, int, int, int)},
+     * но прекращаем обход и возвращаем <code>Float.POSITIVE_INFINITY</code>, как только
+     * стоимость достигает <code>limit</code>. Поиск, которому нужна только линия дешевле
+     * уже известного пути, так не проходит её до конца.
+     * <p>
+     * Линия обходится алгоритмом Брезенхэма с целочисленной ошибкой, без деления
+     * и без выделения памяти; ячейки совпадают с {@link #pointX} и {@link #pointY}.
+     **/
+    public static float cost(Map2D map, int x0, int y0, int x1, int y1, float limit)
+    {
+        return walk(map, x0, y0, x1, y1, limit, true);
+    }
+
+    /**
+     * Возвращаем сумму значений ячеек линии после начальной - стоимость местности
+     * без длин шагов. Поиск под любым углом ({@link ThetaStarPathfinder}) прибавляет
+     * к ней прямое расстояние между концами. Если линия проходит через непроходимую
+     * ячейку или сумма достигает <code>limit</code>, возвращается
+     * <code>Float.POSITIVE_INFINITY</code>.
+     **/
+    public static float terrainCost(Map2D map, int x0, int y0, int x1, int y1, float limit)
+    {
+        return walk(map, x0, y0, x1, y1, limit, false);
+    }
+
+    /**
+     * Обходим линию алгоритмом Брезенхэма, суммируя значения ячеек и,
+     * если <code>steps</code> равно true, длины шагов
+     **/
+    private static float walk(Map2D map, int x0, int y0, int x1, int y1, float limit, boolean steps)
+    {
+        int adx = Math.abs(x1 - x0);
+        int ady = Math.abs(y1 - y0);
+        int sx = Integer.signum(x1 - x0);
+        int sy = Integer.signum(y1 - y0);
+
+        boolean xMajor = adx >= ady;
+        int major = xMajor ? adx : ady;
+        int minor = xMajor ? ady : adx;
+
+        if (!map.contains(x0, y0) || !map.contains(x1, y1))
+            return Float.POSITIVE_INFINITY;
+
+        // Непроходимая ячейка превышает COST_LIMIT сама по себе, поэтому отсекается тем же сравнением
+        limit = Math.min(limit, AStarPathfinder.COST_LIMIT);
+
+        // Ошибка - числитель дробной части смещения по второй оси, умноженный на 2 * major;
+        // когда она доходит до 2 * major, делаем шаг и по второй оси
+        int error = major;
+        float cost = 0;
+        int x = x0;
+        int y = y0;
+
+        for (int i = 0; i < major; i++)
+        {
+            error += 2 * minor;
+            boolean diagonal = error >= 2 * major;
+            if (diagonal)
+                error -= 2 * major;
+
+            if (xMajor)
+            {
+                x += sx;
+                if (diagonal)
+                    y += sy;
+            }
+            else
+            {
+                y += sy;
+                if (diagonal)
+                    x += sx;
+            }
+
+            if (steps)
+                cost += diagonal ? GridHeuristic.DIAGONAL : 1;
+            cost += map.getCellValue(x, y);
+            if (cost >= limit)
+                return Float.POSITIVE_INFINITY;
+        }
+        return cost;
+    }
+
+    /**
+     * Смещение по оси с полным смещением <code>d</code> на шаге i линии,
+     * у которой смещение по другой оси равно <code>other</code>. По главной оси
+     * это i, по второй - i * d / главное смещение, округленное до ближайшего целого
+     * (половины округляются в сторону конца линии).
+     **/
+    private static int offset(int d, int other, int i)
+    {
+        int ad = Math.abs(d);
+        int major = Math.max(ad, Math.abs(other));
+        if (major == 0)
+            return 0;
+
+        if (ad == major)
+            return d > 0 ? i : -i;
+
+        int minor = (int) ((2L * i * ad + major) / (2L * major));
+        return d > 0 ? minor : -minor;
+    }
+}
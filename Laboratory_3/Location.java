@@ -24,11 +24,55 @@ public class Location
        return false;
    }
 	
+    /**
+     * Реализация метода hashCode(). Обе координаты упаковываются в одно число
+     * типа long, которое затем перемешивается, поэтому хэши соседних ячеек
+     * равномерно распределяются по корзинам при любой ширине карты.
+     **/
 	public int hashCode() {
-		
-		return ((xCoord + 1) * 100 + yCoord); 
+		return hash(pack(xCoord, yCoord));
 	}
 
+    /** Упаковываем координаты в одно число: x в старших 32 битах, y в младших **/
+    public static long pack(int x, int y)
+    {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /** Возвращаем x координату из упакованного числа **/
+    public static int unpackX(long key)
+    {
+        return (int) (key >> 32);
+    }
+
+    /** Возвращаем y координату из упакованного числа **/
+    public static int unpackY(long key)
+    {
+        return (int) key;
+    }
+
+    /**
+     * Перемешиваем упакованные координаты (умножение на золотое сечение
+     * с последующим сворачиванием старших бит в младшие)
+     **/
+    public static int hash(long key)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /** Возвращаем координаты этого местоположения, упакованные в одно число **/
+    public long toLong()
+    {
+        return pack(xCoord, yCoord);
+    }
+
+    /** Создаем местоположение по упакованным координатам **/
+    public static Location fromLong(long key)
+    {
+        return new Location(unpackX(key), unpackY(key));
+    }
+
     /** Создаем новое местоположение со специальными координатами **/
     public Location(int x, int y)
     {
@@ -0,0 +1,196 @@
+/**
+ * Этот класс представляет собой хэш-таблицу с открытой адресацией, ключами которой
+ * являются примитивные числа типа long (например, упакованные координаты
+ * {@link Location#pack(int, int)}). В отличие от <code>HashMap</code> ключи не упаковываются
+ * в объекты, а коллизии разрешаются линейным пробированием по плоским массивам.
+ * Значения <code>null</code> не допускаются.
+ **/
+public class LongHashMap<V>
+{
+    /** Максимальная доля заполненных ячеек таблицы перед её расширением **/
+    private static final float LOAD_FACTOR = 0.6f;
+
+    /** Ключи таблицы **/
+    private long[] keys;
+
+    /** Значения таблицы; <code>null</code> означает пустую ячейку **/
+    private Object[] values;
+
+    /** Маска для получения номера ячейки из хэша (размер таблицы - степень двойки) **/
+    private int mask;
+
+    /** Количество элементов в таблице **/
+    private int size;
+
+    /** Количество элементов, при котором таблица будет расширена **/
+    private int threshold;
+
+
+    /** Создание пустой таблицы с начальной вместимостью по умолчанию **/
+    public LongHashMap()
+    {
+        this(16);
+    }
+
+    /** Создание пустой таблицы, вмещающей указанное количество элементов без расширения **/
+    public LongHashMap(int expectedSize)
+    {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("expectedSize must be >= 0; got " + expectedSize);
+
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < expectedSize)
+            capacity <<= 1;
+
+        allocate(capacity);
+    }
+
+    /** Возвращаем количество элементов в таблице **/
+    public int size()
+    {
+        return size;
+    }
+
+    /** Возвращаем true, если таблица пуста **/
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /** Возвращаем значение для указанного ключа или <code>null</code>, если его нет **/
+    @SuppressWarnings("unchecked")
+    public V get(long key)
+    {
+        int i = Location.hash(key) & mask;
+        Object v;
+        while ((v = values[i]) != null)
+        {
+            if (keys[i] == key)
+                return (V) v;
+
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /** Возвращаем true, если таблица содержит указанный ключ **/
+    public boolean containsKey(long key)
+    {
+        return get(key) != null;
+    }
+
+    /**
+     * Связываем значение с ключом. Возвращаем предыдущее значение для этого ключа
+     * или <code>null</code>, если его не было.
+     **/
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value)
+    {
+        if (value == null)
+            throw new NullPointerException("value cannot be null");
+
+        int i = Location.hash(key) & mask;
+        Object v;
+        while ((v = values[i]) != null)
+        {
+            if (keys[i] == key)
+            {
+                values[i] = value;
+                return (V) v;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        if (++size > threshold)
+            rehash(keys.length * 2);
+
+        return null;
+    }
+
+    /**
+     * Удаляем ключ из таблицы и возвращаем связанное с ним значение
+     * или <code>null</code>, если ключа не было
+     **/
+    @SuppressWarnings("unchecked")
+    public V remove(long key)
+    {
+        int i = Location.hash(key) & mask;
+        Object v;
+        while ((v = values[i]) != null)
+        {
+            if (keys[i] == key)
+            {
+                deleteAt(i);
+                size--;
+                return (V) v;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /** Удаляем все элементы из таблицы **/
+    public void clear()
+    {
+        java.util.Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Освобождаем ячейку, сдвигая назад следующие за ней элементы той же цепочки,
+     * чтобы поиск по линейному пробированию не прерывался на "дыре"
+     **/
+    private void deleteAt(int hole)
+    {
+        int i = hole;
+        while (true)
+        {
+            i = (i + 1) & mask;
+            if (values[i] == null)
+                break;
+
+            // Элемент можно перенести в "дыру", если его исходная ячейка
+            // не лежит между "дырой" и его текущей позицией
+            int home = Location.hash(keys[i]) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask))
+            {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        values[hole] = null;
+    }
+
+    /** Выделяем пустую таблицу указанного размера **/
+    private void allocate(int capacity)
+    {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /** Переносим все элементы в новую таблицу указанного размера **/
+    private void rehash(int capacity)
+    {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+
+        for (int j = 0; j < oldKeys.length; j++)
+        {
+            if (oldValues[j] == null)
+                continue;
+
+            int i = Location.hash(oldKeys[j]) & mask;
+            while (values[i] != null)
+                i = (i + 1) & mask;
+
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+}
@@ -1,3 +1,5 @@
+import java.util.ArrayList;
+
 /**
  * Этот класс представляет собой простую двумерную карту, составленную из квадратных ячеек. 
  * Каждая ячейка определяет "стоимость" прохождения этой ячейки.
@@ -11,7 +13,8 @@ public class Map2D
     private int height;
 
     /**
-     * Фактические данные карты, по которым должен ориентироваться алгоритм поиска пути
+     * Фактические данные карты, по которым должен ориентироваться алгоритм поиска пути.
+     * Равно <code>null</code>, если ячейки хранит подкласс (см. {@link #readCell}).
      **/
     private int[][] cells;
 
@@ -21,6 +24,22 @@ public class Map2D
     /** Конечное местоположение для выполнения поиска пути A* **/
     private Location finish;
 
+    /**
+     * Количество "взвешенных" ячеек, то есть проходимых ячеек с ненулевой стоимостью.
+     * Если таких ячеек нет, карта однородна: каждая ячейка либо свободна, либо непроходима.
+     **/
+    private long weightedCells;
+
+    /**
+     * Номер версии карты. Увеличивается при каждом изменении стоимости ячейки,
+     * начального или конечного местоположения, поэтому по нему можно понять,
+     * что сохраненный результат поиска устарел.
+     **/
+    private long version;
+
+    /** Слушатели, которым сообщается об изменении стоимости ячеек **/
+    private ArrayList<MapChangeListener> listeners = new ArrayList<MapChangeListener>();
+
 
     /** Создание новой 2D карты с указанными шириной и высотой **/
     public Map2D(int width, int height)
@@ -42,6 +61,70 @@ public class Map2D
         finish = new Location(width - 1, height / 2);
     }
 
+    /**
+     * Создание карты, стоимости ячеек которой хранит подкласс: массив ячеек
+     * не выделяется, а подкласс переопределяет {@link #readCell} и {@link #writeCell}.
+     * Количество взвешенных ячеек подкласс передает сам, так как оно уже
+     * известно из его хранилища.
+     **/
+    protected Map2D(int width, int height, long weightedCells)
+    {
+        if (width <= 0 || height <= 0)
+        {
+            throw new IllegalArgumentException(
+                    "width and height must be positive values; got " + width +
+                            "x" + height);
+        }
+
+        this.width = width;
+        this.height = height;
+        this.weightedCells = weightedCells;
+
+        start = new Location(0, height / 2);
+        finish = new Location(width - 1, height / 2);
+    }
+
+    /**
+     * Создание карты поверх уже заполненного массива ячеек <code>cells[x][y]</code>
+     * без копирования. Используется загрузчиком {@link MapIO}, который при чтении
+     * уже подсчитал количество взвешенных ячеек.
+     **/
+    Map2D(int[][] cells, long weightedCells)
+    {
+        this(cells.length, cells.length > 0 ? cells[0].length : 0, weightedCells);
+        this.cells = cells;
+    }
+
+    /**
+     * Создание копии указанной карты: стоимости ячеек, начало, конец и номер версии.
+     * Слушатели изменений не копируются.
+     **/
+    protected Map2D(Map2D source)
+    {
+        width = source.width;
+        height = source.height;
+
+        cells = new int[width][];
+        for (int x = 0; x < width; x++)
+        {
+            if (source.cells != null)
+            {
+                cells[x] = source.cells[x].clone();
+            }
+            else
+            {
+                cells[x] = new int[height];
+                for (int y = 0; y < height; y++)
+                    cells[x][y] = source.readCell(x, y);
+            }
+        }
+
+        start = new Location(source.start.xCoord, source.start.yCoord);
+        finish = new Location(source.finish.xCoord, source.finish.yCoord);
+        weightedCells = source.weightedCells;
+        version = source.version;
+    }
+
 
     /**
      * Этот вспомогательный метод проверяет указанные координаты, чтобы увидеть, находятся ли они
@@ -50,13 +133,13 @@ public class Map2D
      **/
     private void checkCoords(int x, int y)
     {
-        if (x < 0 || x > width)
+        if (x < 0 || x >= width)
         {
             throw new IllegalArgumentException("x must be in range [0, " +
                     width + "), got " + x);
         }
 
-        if (y < 0 || y > height)
+        if (y < 0 || y >= height)
         {
             throw new IllegalArgumentException("y must be in range [0, " +
                     height + "), got " + y);
@@ -94,7 +177,7 @@ public class Map2D
     public int getCellValue(int x, int y)
     {
         checkCoords(x, y);
-        return cells[x][y];
+        return readCell(x, y);
     }
 
     /** Возвращаем сохраненное значение стоимости для указанной ячейки **/
@@ -107,9 +190,86 @@ public class Map2D
     public void setCellValue(int x, int y, int value)
     {
         checkCoords(x, y);
+
+        int oldValue = readCell(x, y);
+        if (oldValue == value)
+            return;
+
+        writeCell(x, y, value);
+
+        if (isWeighted(oldValue))
+            weightedCells--;
+        if (isWeighted(value))
+            weightedCells++;
+
+        version++;
+
+        for (int i = 0; i < listeners.size(); i++)
+            listeners.get(i).cellChanged(this, x, y, oldValue, value);
+    }
+
+    /** Добавляем слушателя изменений стоимости ячеек карты **/
+    public void addChangeListener(MapChangeListener listener)
+    {
+        if (listener == null)
+            throw new NullPointerException("listener cannot be null");
+
+        listeners.add(listener);
+    }
+
+    /** Удаляем слушателя изменений стоимости ячеек карты **/
+    public void removeChangeListener(MapChangeListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Возвращаем true, если в указанную ячейку можно войти, то есть её стоимость
+     * меньше предела отсечки {@link AStarPathfinder#COST_LIMIT}
+     **/
+    public boolean isPassable(int x, int y)
+    {
+        return contains(x, y) && readCell(x, y) < AStarPathfinder.COST_LIMIT;
+    }
+
+    /**
+     * Возвращаем true, если карта однородна: каждая ячейка либо имеет нулевую
+     * стоимость, либо непроходима. На таких картах можно использовать поиск
+     * с точками прыжка ({@link JumpPointPathfinder}).
+     **/
+    public boolean isUniformCost()
+    {
+        return weightedCells == 0;
+    }
+
+    /** Возвращаем количество взвешенных ячеек, то есть проходимых ячеек с ненулевой стоимостью **/
+    protected long getWeightedCellCount()
+    {
+        return weightedCells;
+    }
+
+    /**
+     * Читаем стоимость ячейки из хранилища. Координаты уже проверены.
+     * Подклассы, хранящие ячейки вне массива, переопределяют этот метод
+     * вместе с {@link #writeCell}.
+     **/
+    protected int readCell(int x, int y)
+    {
+        return cells[x][y];
+    }
+
+    /** Записываем стоимость ячейки в хранилище. Координаты уже проверены. **/
+    protected void writeCell(int x, int y, int value)
+    {
         cells[x][y] = value;
     }
 
+    /** Возвращаем true, если ячейка с такой стоимостью проходима, но не бесплатна **/
+    protected static boolean isWeighted(int value)
+    {
+        return value != 0 && value < AStarPathfinder.COST_LIMIT;
+    }
+
     /**
      * Возвращаем начальное местоположение карты. 
      * Это точка, где начинается сгенерированный путь.
@@ -124,6 +284,9 @@ public class Map2D
         if (loc == null)
             throw new NullPointerException("loc cannot be null");
 
+        if (!loc.equals(start))
+            version++;
+
         start = loc;
     }
 
@@ -141,6 +304,27 @@ public class Map2D
         if (loc == null)
             throw new NullPointerException("loc cannot be null");
 
+        if (!loc.equals(finish))
+            version++;
+
         finish = loc;
     }
+
+    /**
+     * Возвращаем номер версии карты. Два одинаковых номера означают, что между
+     * вызовами ни одна ячейка, ни начало, ни конец карты не менялись.
+     **/
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Возвращаем неизменяемый снимок текущего состояния карты. Снимок можно
+     * читать из нескольких потоков одновременно, пока исходная карта меняется.
+     **/
+    public MapSnapshot snapshot()
+    {
+        return new MapSnapshot(this);
+    }
 }
@@ -0,0 +1,13 @@
+/**
+ * Этот интерфейс реализуют объекты, которые должны узнавать об изменении
+ * стоимости ячеек карты {@link Map2D}, например, чтобы пересчитать
+ * сохраненные между запросами данные только для измененной части карты.
+ **/
+public interface MapChangeListener
+{
+    /**
+     * Вызывается после того, как стоимость ячейки (x, y) карты изменилась
+     * со значения <code>oldValue</code> на <code>newValue</code>
+     **/
+    void cellChanged(Map2D map, int x, int y, int oldValue, int newValue);
+}
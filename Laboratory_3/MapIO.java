@@ -0,0 +1,381 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Этот класс сохраняет карты {@link Map2D} в компактном двоичном формате
+ * и загружает их обратно.
+ * <p>
+ * Файл состоит из заголовка длиной {@link #HEADER_SIZE} байт, сжатых ячеек
+ * и контрольной суммы CRC32 всего, что ей предшествует. Все числа записаны в порядке
+ * little-endian. Заголовок: сигнатура, версия формата, ширина, высота, координаты
+ * начала и конца, разрядность ячейки (8, 16 или 32 бита) и способ сжатия.
+ * <p>
+ * Ячейки перечисляются по столбцам, в том же порядке, в котором они лежат
+ * в массиве <code>cells[x][y]</code> карты, и сжимаются кодированием длин серий:
+ * каждая серия - это количество ячеек (беззнаковое число переменной длины, по 7 бит
+ * в байте) и значение ячейки. В 8- и 16-битных ячейках наибольший код означает
+ * непроходимую ячейку и при загрузке превращается в <code>Integer.MAX_VALUE</code>.
+ * <p>
+ * И запись, и чтение идут через буфер фиксированного размера; при загрузке серии
+ * раскладываются прямо в столбцы массива ячеек.
+ **/
+public class MapIO
+{
+    /** Сигнатура файла: "RMAP" **/
+    public static final int MAGIC = 0x50414D52;
+
+    /** Версия формата файла **/
+    public static final int FORMAT_VERSION = 1;
+
+    /** Размер заголовка в байтах **/
+    public static final int HEADER_SIZE = 36;
+
+    /** Способ сжатия: кодирование длин серий **/
+    private static final int COMPRESSION_RLE = 1;
+
+    /** Размер буфера ввода-вывода **/
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Наибольшая длина одной серии: число переменной длины и значение ячейки **/
+    private static final int MAX_RECORD = 16;
+
+
+    /**
+     * Сохраняем карту в файл. Разрядность ячеек выбирается наименьшей, в которую
+     * помещаются все проходимые стоимости карты. Стоимости не меньше
+     * {@link AStarPathfinder#COST_LIMIT} в 8- и 16-битном формате сохраняются
+     * как непроходимые.
+     **/
+    public static void save(Map2D map, Path file) throws IOException
+    {
+        save(map, file, chooseCellBits(map));
+    }
+
+    /** Сохраняем карту в файл с указанной разрядностью ячеек: 8, 16 или 32 бита **/
+    public static void save(Map2D map, Path file, int cellBits) throws IOException
+    {
+        if (map == null)
+            throw new NullPointerException("map cannot be null");
+
+        if (cellBits != 8 && cellBits != 16 && cellBits != 32)
+            throw new IllegalArgumentException("cellBits must be 8, 16 or 32; got " + cellBits);
+
+        int width = map.getWidth();
+        int height = map.getHeight();
+        CRC32 crc = new CRC32();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putInt(MAGIC);
+            buffer.putInt(FORMAT_VERSION);
+            buffer.putInt(width);
+            buffer.putInt(height);
+            buffer.putInt(map.getStart().xCoord);
+            buffer.putInt(map.getStart().yCoord);
+            buffer.putInt(map.getFinish().xCoord);
+            buffer.putInt(map.getFinish().yCoord);
+            buffer.put((byte) cellBits);
+            buffer.put((byte) COMPRESSION_RLE);
+            buffer.putShort((short) 0);
+
+            // Серии идут по столбцам и могут переходить из одного столбца в следующий
+            int runCode = encode(map.getCellValue(0, 0), cellBits);
+            int runLength = 0;
+            for (int x = 0; x < width; x++)
+            {
+                for (int y = 0; y < height; y++)
+                {
+                    int code = encode(map.getCellValue(x, y), cellBits);
+                    if (code == runCode && runLength < Integer.MAX_VALUE)
+                    {
+                        runLength++;
+                        continue;
+                    }
+
+                    if (buffer.remaining() < MAX_RECORD)
+                        drain(channel, buffer, crc);
+                    putRun(buffer, runLength, runCode, cellBits);
+
+                    runCode = code;
+                    runLength = 1;
+                }
+            }
+
+            if (buffer.remaining() < MAX_RECORD)
+                drain(channel, buffer, crc);
+            putRun(buffer, runLength, runCode, cellBits);
+            drain(channel, buffer, crc);
+
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+    }
+
+    /**
+     * Загружаем карту из файла. Генерируется исключение <code>IOException</code>,
+     * если файл поврежден или контрольная сумма не совпадает.
+     **/
+    public static Map2D load(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            Input in = new Input(channel, file);
+
+            in.require(HEADER_SIZE);
+            ByteBuffer buffer = in.buffer;
+            if (buffer.getInt() != MAGIC)
+                throw new IOException("not a map file: " + file);
+
+            int version = buffer.getInt();
+            if (version != FORMAT_VERSION)
+                throw new IOException("unsupported map file version " + version + ": " + file);
+
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            Location start = new Location(buffer.getInt(), buffer.getInt());
+            Location finish = new Location(buffer.getInt(), buffer.getInt());
+            int cellBits = buffer.get();
+            int compression = buffer.get();
+            buffer.getShort();
+
+            if (width <= 0 || height <= 0)
+                throw new IOException("bad map size " + width + "x" + height + ": " + file);
+
+            if (cellBits != 8 && cellBits != 16 && cellBits != 32)
+                throw new IOException("unsupported cell size " + cellBits + ": " + file);
+
+            if (compression != COMPRESSION_RLE)
+                throw new IOException("unsupported compression " + compression + ": " + file);
+
+            int[][] cells = new int[width][height];
+            long weighted = 0;
+
+            int x = 0;
+            int y = 0;
+            while (x < width)
+            {
+                in.prefetch(MAX_RECORD);
+
+                int runLength = getLength(buffer, file);
+                int value = decode(getCode(buffer, cellBits), cellBits);
+
+                if (Map2D.isWeighted(value))
+                    weighted += runLength;
+
+                // Раскладываем серию по столбцам
+                while (runLength > 0)
+                {
+                    if (x >= width)
+                        throw new IOException("cell data overruns the map in " + file);
+
+                    int n = Math.min(runLength, height - y);
+                    if (value != 0)
+                        Arrays.fill(cells[x], y, y + n, value);
+
+                    runLength -= n;
+                    y += n;
+                    if (y == height)
+                    {
+                        y = 0;
+                        x++;
+                    }
+                }
+            }
+
+            // Контрольная сумма покрывает всё, что прочитано до неё
+            long expected = in.checksum();
+            in.require(4);
+            if ((buffer.getInt() & 0xFFFFFFFFL) != expected)
+                throw new IOException("checksum mismatch in " + file);
+
+            Map2D map = new Map2D(cells, weighted);
+            if (!map.contains(start) || !map.contains(finish))
+                throw new IOException("start or finish lies outside the map in " + file);
+
+            map.setStart(start);
+            map.setFinish(finish);
+            return map;
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw new IOException("unexpected end of map file: " + file, e);
+        }
+    }
+
+    /** Выбираем наименьшую разрядность, в которую помещаются все стоимости карты **/
+    private static int chooseCellBits(Map2D map)
+    {
+        int max = 0;
+        for (int x = 0; x < map.getWidth(); x++)
+        {
+            for (int y = 0; y < map.getHeight(); y++)
+            {
+                int value = map.getCellValue(x, y);
+                if (value < 0)
+                    return 32;
+                if (value < AStarPathfinder.COST_LIMIT)
+                    max = Math.max(max, value);
+            }
+        }
+
+        if (max < 0xFF)
+            return 8;
+        if (max < 0xFFFF)
+            return 16;
+        return 32;
+    }
+
+    /** Преобразуем стоимость ячейки в код указанной разрядности **/
+    private static int encode(int value, int cellBits)
+    {
+        if (cellBits == 32)
+            return value;
+
+        int blocked = (1 << cellBits) - 1;
+        if (value >= AStarPathfinder.COST_LIMIT)
+            return blocked;
+
+        if (value < 0 || value >= blocked)
+            throw new IllegalArgumentException("value " + value + " does not fit " +
+                    cellBits + "-bit cells");
+        return value;
+    }
+
+    /** Преобразуем код ячейки указанной разрядности в стоимость **/
+    private static int decode(int code, int cellBits)
+    {
+        if (cellBits == 32)
+            return code;
+
+        return code == (1 << cellBits) - 1 ? Integer.MAX_VALUE : code;
+    }
+
+    /** Записываем одну серию: длину числом переменной длины и код ячейки **/
+    private static void putRun(ByteBuffer buffer, int length, int code, int cellBits)
+    {
+        while ((length & ~0x7F) != 0)
+        {
+            buffer.put((byte) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        buffer.put((byte) length);
+
+        if (cellBits == 8)
+            buffer.put((byte) code);
+        else if (cellBits == 16)
+            buffer.putShort((short) code);
+        else
+            buffer.putInt(code);
+    }
+
+    /** Читаем длину серии, записанную числом переменной длины **/
+    private static int getLength(ByteBuffer buffer, Path file) throws IOException
+    {
+        int length = 0;
+        for (int shift = 0; shift < 35; shift += 7)
+        {
+            int b = buffer.get();
+            length |= (b & 0x7F) << shift;
+            if (b >= 0)
+            {
+                if (length <= 0)
+                    break;
+                return length;
+            }
+        }
+        throw new IOException("corrupt run length in " + file);
+    }
+
+    /** Читаем код ячейки указанной разрядности **/
+    private static int getCode(ByteBuffer buffer, int cellBits)
+    {
+        if (cellBits == 8)
+            return buffer.get() & 0xFF;
+        if (cellBits == 16)
+            return buffer.getShort() & 0xFFFF;
+        return buffer.getInt();
+    }
+
+    /** Записываем содержимое буфера в канал, учитывая его в контрольной сумме **/
+    private static void drain(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException
+    {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Буферизованное чтение файла карты. Файл читается с опережением, поэтому
+     * в контрольную сумму попадают только уже разобранные байты: от отметки
+     * <code>mark</code> до текущей позиции буфера.
+     **/
+    private static class Input
+    {
+        final FileChannel channel;
+        final Path file;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        final CRC32 crc = new CRC32();
+
+        /** Начало разобранных, но еще не учтенных в контрольной сумме байт буфера **/
+        int mark;
+
+        Input(FileChannel channel, Path file)
+        {
+            this.channel = channel;
+            this.file = file;
+            buffer.flip();
+        }
+
+        /** Дочитываем файл, чтобы в буфере было хотя бы <code>needed</code> байт **/
+        void require(int needed) throws IOException
+        {
+            prefetch(needed);
+            if (buffer.remaining() < needed)
+                throw new IOException("unexpected end of map file: " + file);
+        }
+
+        /**
+         * Дочитываем файл, чтобы в буфере было хотя бы <code>needed</code> байт,
+         * если файл не закончится раньше
+         **/
+        void prefetch(int needed) throws IOException
+        {
+            if (buffer.remaining() >= needed)
+                return;
+
+            checksum();
+            buffer.compact();
+            while (buffer.position() < needed)
+            {
+                if (channel.read(buffer) < 0)
+                    break;
+            }
+            buffer.flip();
+            mark = 0;
+        }
+
+        /** Учитываем разобранные байты в контрольной сумме и возвращаем её **/
+        long checksum()
+        {
+            ByteBuffer consumed = buffer.duplicate();
+            consumed.position(mark).limit(buffer.position());
+            crc.update(consumed);
+            mark = buffer.position();
+            return crc.getValue();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Этот класс представляет собой неизменяемый снимок карты {@link Map2D}.
+ * Снимок хранит собственную копию стоимостей ячеек, поэтому последующие изменения
+ * исходной карты на него не влияют, а его самого можно одновременно читать
+ * из любого количества потоков. Все изменяющие методы генерируют исключение
+ * <code>UnsupportedOperationException</code>.
+ **/
+public final class MapSnapshot extends Map2D
+{
+    /** Создание снимка текущего состояния указанной карты **/
+    public MapSnapshot(Map2D source)
+    {
+        super(source);
+    }
+
+    /** Снимок нельзя изменять **/
+    public void setCellValue(int x, int y, int value)
+    {
+        throw new UnsupportedOperationException("map snapshot is read-only");
+    }
+
+    /** Снимок нельзя изменять **/
+    public void setStart(Location loc)
+    {
+        throw new UnsupportedOperationException("map snapshot is read-only");
+    }
+
+    /** Снимок нельзя изменять **/
+    public void setFinish(Location loc)
+    {
+        throw new UnsupportedOperationException("map snapshot is read-only");
+    }
+
+    /** Снимок не меняется, поэтому слушателям не о чем сообщать **/
+    public void addChangeListener(MapChangeListener listener)
+    {
+        throw new UnsupportedOperationException("map snapshot is read-only");
+    }
+
+    /**
+     * Возвращаем копию начального местоположения, чтобы изменение
+     * полученного объекта не меняло снимок
+     **/
+    public Location getStart()
+    {
+        Location loc = super.getStart();
+        return new Location(loc.xCoord, loc.yCoord);
+    }
+
+    /**
+     * Возвращаем копию конечного местоположения, чтобы изменение
+     * полученного объекта не меняло снимок
+     **/
+    public Location getFinish()
+    {
+        Location loc = super.getFinish();
+        return new Location(loc.xCoord, loc.yCoord);
+    }
+
+    /** Снимок уже неизменяем, поэтому возвращаем его самого **/
+    public MapSnapshot snapshot()
+    {
+        return this;
+    }
+}
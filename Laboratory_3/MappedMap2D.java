@@ -0,0 +1,415 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Этот класс представляет собой карту {@link Map2D}, стоимости ячеек которой хранятся
+ * не в куче, а в файле, отображенном в память через {@link FileChannel#map}. Поэтому
+ * размер карты ограничен адресным пространством и диском, а не размером кучи.
+ * <p>
+ * Файл состоит из заголовка длиной {@link #HEADER_SIZE} байт и сетки ячеек по строкам:
+ * ячейка (x, y) лежит по смещению <code>HEADER_SIZE + (y * width + x) * размер ячейки</code>.
+ * Все числа записаны в порядке little-endian. Ячейка может занимать 1, 2 или 4 байта
+ * ({@link CellEncoding}); в узких форматах наибольший код означает непроходимую ячейку.
+ * <p>
+ * Открытие существующего файла читает только заголовок, а сам файл отображается
+ * частями по мере обращения к ячейкам, поэтому даже очень большие карты открываются
+ * мгновенно. Начало, конец и количество взвешенных ячеек хранятся в заголовке
+ * и записываются в файл методами {@link #flush()} и {@link #close()}.
+ * Как и {@link Map2D}, объект не предназначен для изменения из нескольких потоков.
+ * <p>
+ * Карту больше {@link GridPathfinder#MAX_CELLS} ячеек (например, 50000 x 50000) можно
+ * хранить и изменять, но искать по ней путь умеет только {@link AStarPathfinder}:
+ * поисковые движки с плоскими массивами ячеек (сетка, точки прыжка, D* Lite, ориентиры
+ * и другие) отклоняют такую карту с {@link IllegalArgumentException}, а снимок
+ * ({@link #snapshot()}) для неё не создается.
+ **/
+public class MappedMap2D extends Map2D implements Closeable
+{
+    /** Формат хранения одной ячейки в файле **/
+    public enum CellEncoding
+    {
+        /** Один байт: стоимости 0..254, код 255 - непроходимая ячейка **/
+        BYTE(1),
+
+        /** Два байта: стоимости 0..65534, код 65535 - непроходимая ячейка **/
+        SHORT(2),
+
+        /** Четыре байта: стоимость хранится как есть **/
+        INT(4);
+
+        /** Размер ячейки в байтах **/
+        final int bytes;
+
+        CellEncoding(int bytes)
+        {
+            this.bytes = bytes;
+        }
+
+        /** Код непроходимой ячейки в этом формате **/
+        int blockedCode()
+        {
+            return this == BYTE ? 0xFF : 0xFFFF;
+        }
+    }
+
+    /** Сигнатура файла карты: "MAP2" **/
+    public static final int MAGIC = 0x3250414D;
+
+    /** Версия формата файла **/
+    public static final int FORMAT_VERSION = 1;
+
+    /** Размер заголовка файла в байтах **/
+    public static final int HEADER_SIZE = 64;
+
+    /**
+     * Размер одной отображаемой части файла. Один {@link MappedByteBuffer} не может
+     * быть длиннее 2 ГБ, поэтому большие файлы отображаются частями по 1 ГБ.
+     * Размер кратен четырем, и ячейки никогда не пересекают границу части.
+     **/
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    /** Смещения полей заголовка **/
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int WIDTH_OFFSET = 8;
+    private static final int HEIGHT_OFFSET = 12;
+    private static final int ENCODING_OFFSET = 16;
+    private static final int START_OFFSET = 20;
+    private static final int FINISH_OFFSET = 28;
+    private static final int WEIGHTED_OFFSET = 36;
+
+    /** Канал файла карты **/
+    private final FileChannel channel;
+
+    /** true, если файл открыт только для чтения **/
+    private final boolean readOnly;
+
+    /** Формат ячеек файла **/
+    private final CellEncoding encoding;
+
+    /** Отображенные части файла; часть отображается при первом обращении **/
+    private final MappedByteBuffer[] segments;
+
+    /** Длина файла в байтах **/
+    private final long fileSize;
+
+
+    /** Создание карты по уже прочитанному заголовку **/
+    private MappedMap2D(FileChannel channel, boolean readOnly, ByteBuffer header)
+    {
+        super(header.getInt(WIDTH_OFFSET), header.getInt(HEIGHT_OFFSET),
+                header.getLong(WEIGHTED_OFFSET));
+
+        this.channel = channel;
+        this.readOnly = readOnly;
+        encoding = decodeEncoding(header.get(ENCODING_OFFSET));
+
+        fileSize = HEADER_SIZE + (long) getWidth() * getHeight() * encoding.bytes;
+        segments = new MappedByteBuffer[(int) (((fileSize - 1) >>> SEGMENT_SHIFT) + 1)];
+
+        Location start = new Location(header.getInt(START_OFFSET), header.getInt(START_OFFSET + 4));
+        Location finish = new Location(header.getInt(FINISH_OFFSET), header.getInt(FINISH_OFFSET + 4));
+        if (!contains(start) || !contains(finish))
+            throw new IllegalArgumentException("start or finish lies outside the map");
+
+        super.setStart(start);
+        super.setFinish(finish);
+    }
+
+    /**
+     * Создаем новый файл карты указанного размера, в которой все ячейки имеют
+     * нулевую стоимость, и открываем его для чтения и записи. Существующий файл
+     * перезаписывается. На большинстве файловых систем файл создается разреженным,
+     * поэтому место на диске занимают только записанные ячейки.
+     **/
+    public static MappedMap2D create(Path file, int width, int height, CellEncoding encoding)
+            throws IOException
+    {
+        if (width <= 0 || height <= 0)
+        {
+            throw new IllegalArgumentException(
+                    "width and height must be positive values; got " + width +
+                            "x" + height);
+        }
+
+        if (encoding == null)
+            throw new NullPointerException("encoding cannot be null");
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC_OFFSET, MAGIC);
+        header.putInt(VERSION_OFFSET, FORMAT_VERSION);
+        header.putInt(WIDTH_OFFSET, width);
+        header.putInt(HEIGHT_OFFSET, height);
+        header.put(ENCODING_OFFSET, (byte) encoding.bytes);
+        header.putInt(START_OFFSET, 0);
+        header.putInt(START_OFFSET + 4, height / 2);
+        header.putInt(FINISH_OFFSET, width - 1);
+        header.putInt(FINISH_OFFSET + 4, height / 2);
+        header.putLong(WEIGHTED_OFFSET, 0);
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try
+        {
+            writeFully(channel, header, 0);
+
+            // Запись последнего байта задает длину файла, не заполняя его
+            long size = HEADER_SIZE + (long) width * height * encoding.bytes;
+            writeFully(channel, ByteBuffer.allocate(1), size - 1);
+
+            return new MappedMap2D(channel, false, header);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Открываем существующий файл карты для чтения и записи **/
+    public static MappedMap2D open(Path file) throws IOException
+    {
+        return open(file, false);
+    }
+
+    /**
+     * Открываем существующий файл карты. Читается только заголовок; ячейки
+     * отображаются в память при первом обращении к ним.
+     **/
+    public static MappedMap2D open(Path file, boolean readOnly) throws IOException
+    {
+        FileChannel channel = readOnly ?
+                FileChannel.open(file, StandardOpenOption.READ) :
+                FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining())
+            {
+                if (channel.read(header, header.position()) < 0)
+                    throw new IOException("map file is too short: " + file);
+            }
+
+            if (header.getInt(MAGIC_OFFSET) != MAGIC)
+                throw new IOException("not a map file: " + file);
+
+            if (header.getInt(VERSION_OFFSET) != FORMAT_VERSION)
+                throw new IOException("unsupported map file version " +
+                        header.getInt(VERSION_OFFSET) + ": " + file);
+
+            MappedMap2D map = new MappedMap2D(channel, readOnly, header);
+            if (channel.size() < map.fileSize)
+                throw new IOException("map file is truncated: " + file);
+
+            return map;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Возвращаем формат ячеек файла **/
+    public CellEncoding getEncoding()
+    {
+        return encoding;
+    }
+
+    /** Возвращаем true, если файл открыт только для чтения **/
+    public boolean isReadOnly()
+    {
+        return readOnly;
+    }
+
+    public void setStart(Location loc)
+    {
+        checkWritable();
+        super.setStart(loc);
+    }
+
+    public void setFinish(Location loc)
+    {
+        checkWritable();
+        super.setFinish(loc);
+    }
+
+    /**
+     * Записываем заголовок (начало, конец, количество взвешенных ячеек)
+     * и сбрасываем измененные ячейки на диск
+     **/
+    public void flush() throws IOException
+    {
+        if (readOnly)
+            return;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE - START_OFFSET).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(getStart().xCoord);
+        header.putInt(getStart().yCoord);
+        header.putInt(getFinish().xCoord);
+        header.putInt(getFinish().yCoord);
+        header.putLong(getWeightedCellCount());
+        header.rewind();
+        writeFully(channel, header, START_OFFSET);
+
+        for (MappedByteBuffer segment : segments)
+        {
+            if (segment != null)
+                segment.force();
+        }
+        channel.force(false);
+    }
+
+    /** Записываем изменения и закрываем файл **/
+    public void close() throws IOException
+    {
+        if (!channel.isOpen())
+            return;
+
+        try
+        {
+            flush();
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    protected int readCell(int x, int y)
+    {
+        long offset = cellOffset(x, y);
+        MappedByteBuffer segment = segment(offset);
+        int pos = (int) (offset & SEGMENT_MASK);
+
+        switch (encoding)
+        {
+            case BYTE:
+            {
+                int code = segment.get(pos) & 0xFF;
+                return code == 0xFF ? Integer.MAX_VALUE : code;
+            }
+            case SHORT:
+            {
+                int code = segment.getShort(pos) & 0xFFFF;
+                return code == 0xFFFF ? Integer.MAX_VALUE : code;
+            }
+            default:
+                return segment.getInt(pos);
+        }
+    }
+
+    /**
+     * Записываем стоимость ячейки. В узких форматах стоимости не меньше
+     * {@link AStarPathfinder#COST_LIMIT} записываются как непроходимые, а остальные
+     * должны помещаться в формат.
+     **/
+    protected void writeCell(int x, int y, int value)
+    {
+        checkWritable();
+
+        long offset = cellOffset(x, y);
+        MappedByteBuffer segment = segment(offset);
+        int pos = (int) (offset & SEGMENT_MASK);
+
+        if (encoding == CellEncoding.INT)
+        {
+            segment.putInt(pos, value);
+            return;
+        }
+
+        int code;
+        if (value >= AStarPathfinder.COST_LIMIT)
+            code = encoding.blockedCode();
+        else if (value >= 0 && value < encoding.blockedCode())
+            code = value;
+        else
+            throw new IllegalArgumentException("value " + value + " does not fit " +
+                    encoding + " cell encoding");
+
+        if (encoding == CellEncoding.BYTE)
+            segment.put(pos, (byte) code);
+        else
+            segment.putShort(pos, (short) code);
+    }
+
+    /** Снимок отображенной карты занял бы в куче столько же места, сколько файл **/
+    public MapSnapshot snapshot()
+    {
+        if (!GridPathfinder.fitsCellArrays(this))
+            throw new UnsupportedOperationException("map is too large to snapshot on the heap");
+
+        return super.snapshot();
+    }
+
+    /** Смещение ячейки от начала файла **/
+    private long cellOffset(int x, int y)
+    {
+        return HEADER_SIZE + ((long) y * getWidth() + x) * encoding.bytes;
+    }
+
+    /** Возвращаем часть файла, содержащую указанное смещение, отображая её при необходимости **/
+    private MappedByteBuffer segment(long offset)
+    {
+        int index = (int) (offset >>> SEGMENT_SHIFT);
+        MappedByteBuffer segment = segments[index];
+        if (segment == null)
+            segment = mapSegment(index);
+        return segment;
+    }
+
+    /** Отображаем в память часть файла с указанным номером **/
+    private MappedByteBuffer mapSegment(int index)
+    {
+        long position = (long) index << SEGMENT_SHIFT;
+        long size = Math.min(1L << SEGMENT_SHIFT, fileSize - position);
+
+        try
+        {
+            MappedByteBuffer segment = channel.map(
+                    readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE,
+                    position, size);
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            segments[index] = segment;
+            return segment;
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("cannot map map file segment " + index, e);
+        }
+    }
+
+    /** Генерируем исключение, если файл открыт только для чтения **/
+    private void checkWritable()
+    {
+        if (readOnly)
+            throw new UnsupportedOperationException("map file is opened read-only");
+    }
+
+    /** Преобразуем размер ячейки из заголовка в формат ячеек **/
+    private static CellEncoding decodeEncoding(byte bytes)
+    {
+        for (CellEncoding e : CellEncoding.values())
+        {
+            if (e.bytes == bytes)
+                return e;
+        }
+        throw new IllegalArgumentException("unsupported cell size " + bytes + " in map file header");
+    }
+
+    /** Записываем буфер в канал целиком, начиная с указанной позиции **/
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException
+    {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Набор соседних ячеек, в которые алгоритм поиска может сделать один шаг.
+ * Смещения и длины шагов хранятся в массивах и читаются по номеру соседа,
+ * поэтому перебор соседей в цикле поиска не создает объектов.
+ **/
+public enum Neighbourhood
+{
+    /** Четыре соседа по сторонам ячейки; шаг имеет длину 1 **/
+    FOUR(new int[] { 0, -1, 1, 0 }, new int[] { -1, 0, 0, 1 }),
+
+    /**
+     * Восемь соседей по сторонам и диагоналям ячейки; диагональный шаг имеет
+     * длину корень из 2. Это набор соседей, используемый по умолчанию.
+     **/
+    EIGHT(new int[] { -1, 0, 1, -1, 1, -1, 0, 1 }, new int[] { -1, -1, -1, 0, 0, 1, 1, 1 });
+
+    /** Смещения соседей по x и по y **/
+    private final int[] dx;
+    private final int[] dy;
+
+    /** Длины шагов к соседям **/
+    private final float[] length;
+
+
+    Neighbourhood(int[] dx, int[] dy)
+    {
+        this.dx = dx;
+        this.dy = dy;
+
+        length = new float[dx.length];
+        for (int k = 0; k < dx.length; k++)
+            length[k] = (dx[k] != 0 && dy[k] != 0) ? GridHeuristic.DIAGONAL : 1;
+    }
+
+    /** Возвращаем количество соседей **/
+    public int size()
+    {
+        return dx.length;
+    }
+
+    /** Возвращаем смещение по x к соседу с номером k **/
+    public int dx(int k)
+    {
+        return dx[k];
+    }
+
+    /** Возвращаем смещение по y к соседу с номером k **/
+    public int dy(int k)
+    {
+        return dy[k];
+    }
+
+    /** Возвращаем длину шага к соседу с номером k **/
+    public float stepLength(int k)
+    {
+        return length[k];
+    }
+
+    /**
+     * Возвращаем наиболее точную допустимую эвристику для этого набора соседей,
+     * не зависящую от карты: манхэттенское расстояние для четырех соседей
+     * и прямое расстояние для восьми
+     **/
+    public GridHeuristic getDefaultHeuristic()
+    {
+        return this == FOUR ? GridHeuristic.MANHATTAN : GridHeuristic.EUCLIDEAN;
+    }
+}
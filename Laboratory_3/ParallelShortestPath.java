@@ -0,0 +1,496 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Этот класс ищет кратчайшие пути от одной ячейки параллельно на всех ядрах
+ * алгоритмом delta-stepping. Ячейки, ожидающие раскрытия, делятся на корзины
+ * шириной {@link #getDelta() delta} по стоимости пути; все ячейки самой дешевой
+ * непустой корзины раскрываются одновременно несколькими потоками пула
+ * {@link ForkJoinPool}. Улучшенные соседи, попавшие в ту же корзину,
+ * раскрываются в следующем раунде, остальные ждут своей корзины.
+ * <p>
+ * Стоимость шага та же, что и в {@link AStarPathfinder}: длина шага плюс значение
+ * ячейки, в которую делается шаг; пути не дешевле {@link AStarPathfinder#COST_LIMIT}
+ * отбрасываются. Поэтому стоимости путей совпадают с найденными A*.
+ * <p>
+ * Стоимости ячеек хранятся в <code>AtomicIntegerArray</code> как биты
+ * неотрицательных float, порядок которых совпадает с порядком целых чисел;
+ * знаковый бит отмечает ячейки, уже стоящие в очереди. Поток, уменьшивший
+ * стоимость соседа операцией CAS, ставит его в очередь, только если отметки
+ * еще не было, поэтому каждая ячейка стоит в очереди не больше одного раза.
+ * Предыдущие ячейки путей не хранятся: путь восстанавливается по стоимостям,
+ * так что на ячейку карты приходится всего 4 байта памяти.
+ * <p>
+ * Карта не должна меняться во время поиска. Запросы одного объекта
+ * выполняются по одному; для одновременных запросов нужны разные объекты.
+ **/
+public class ParallelShortestPath
+{
+    /** Ширина корзины по умолчанию **/
+    public static final float DEFAULT_DELTA = 8;
+
+    /** Количество ячеек очереди, которое один поток раскрывает без деления задачи **/
+    private static final int LEAF_SIZE = 1024;
+
+    /** Отметка ячейки, стоящей в очереди: знаковый бит стоимости **/
+    private static final int QUEUED = 0x80000000;
+
+    /** Результаты {@link #lower}: стоимость не уменьшена, уменьшена, уменьшена и ячейку надо поставить в очередь **/
+    private static final int NOT_IMPROVED = 0, IMPROVED = 1, ENQUEUE = 2;
+
+    /** Биты бесконечной стоимости **/
+    private static final int INFINITY_BITS = Float.floatToRawIntBits(Float.POSITIVE_INFINITY);
+
+    /** Пул потоков, на котором раскрываются корзины **/
+    private final ForkJoinPool pool;
+
+    /** Ширина корзины **/
+    private float delta = DEFAULT_DELTA;
+
+    /** Карта и её размеры текущего поиска **/
+    private Map2D map;
+    private int width, height;
+
+    /** Биты стоимостей путей до ячеек; знаковый бит - отметка очереди **/
+    private AtomicIntegerArray dist = new AtomicIntegerArray(0);
+
+    /** Очередь ячеек, ожидающих раскрытия, и её длина **/
+    private int[] pending = new int[16];
+    private int pendingCount;
+
+    /** Выходные буферы частей очереди: оставшиеся и улучшенные ячейки **/
+    private int[][] outputs = new int[0][];
+
+    /** Длины выходных буферов **/
+    private int[] outputCounts = new int[0];
+
+    /** Наименьшая стоимость ячейки в каждом выходном буфере **/
+    private float[] outputMinima = new float[0];
+
+    /** Количество раскрытых ячеек в каждой части очереди **/
+    private int[] outputExpanded = new int[0];
+
+    /** Номер начальной ячейки последнего поиска или -1 **/
+    private int source = -1;
+
+    /** Количество раскрытий ячеек последним поиском, включая повторные **/
+    private long expandedCount;
+
+    /** Количество раундов последнего поиска **/
+    private int roundCount;
+
+    /** Ячейки последнего найденного пути от начала до конца **/
+    private int[] path = new int[16];
+
+    /** Количество ячеек последнего найденного пути или 0 **/
+    private int pathLength;
+
+
+    /** Создание объекта, использующего все доступные процессоры **/
+    public ParallelShortestPath()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Создание объекта с пулом из указанного количества потоков **/
+    public ParallelShortestPath(int parallelism)
+    {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("parallelism must be > 0; got " + parallelism);
+
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /** Возвращаем количество рабочих потоков **/
+    public int getParallelism()
+    {
+        return pool.getParallelism();
+    }
+
+    /** Возвращаем ширину корзины **/
+    public float getDelta()
+    {
+        return delta;
+    }
+
+    /**
+     * Устанавливаем ширину корзины. Узкие корзины раскрывают меньше ячеек
+     * повторно, но дают потокам меньше работы за раунд; широкие - наоборот.
+     * Хорошее значение - несколько средних стоимостей шага.
+     **/
+    public void setDelta(float delta)
+    {
+        if (!(delta > 0) || Float.isInfinite(delta))
+            throw new IllegalArgumentException("delta must be a positive finite value; got " + delta);
+
+        this.delta = delta;
+    }
+
+    /**
+     * Ищем путь между начальным и конечным местоположениями карты.
+     * Если путь не найден, возвращается <code>null</code>.
+     **/
+    public Waypoint computePath(Map2D map)
+    {
+        Location s = map.getStart();
+        Location f = map.getFinish();
+
+        if (!findPath(map, s.xCoord, s.yCoord, f.xCoord, f.yCoord))
+            return null;
+
+        return toWaypoint();
+    }
+
+    /**
+     * Пытаемся найти путь между указанными ячейками. Поиск останавливается,
+     * как только стоимость конечной ячейки становится окончательной.
+     * Возвращаем true, если путь найден.
+     **/
+    public boolean findPath(Map2D map, int startX, int startY, int finishX, int finishY)
+    {
+        if (!map.contains(finishX, finishY))
+            throw new IllegalArgumentException("finish is outside the map: " + finishX + ", " + finishY);
+
+        int target = finishY * map.getWidth() + finishX;
+        run(map, startX, startY, target);
+
+        pathLength = 0;
+        if (distance(target) == Float.POSITIVE_INFINITY)
+            return false;
+
+        extractPath(target);
+        return true;
+    }
+
+    /**
+     * Вычисляем стоимости путей из ячейки (x, y) во все ячейки карты.
+     * Результат индексирован номером ячейки <code>y * width + x</code>;
+     * стоимости недостижимых ячеек равны <code>Float.POSITIVE_INFINITY</code>.
+     **/
+    public float[] distancesFrom(Map2D map, int x, int y)
+    {
+        run(map, x, y, -1);
+        pathLength = 0;
+
+        // run() уже отклонил карты, ячейки которых не помещаются в массив
+        int cells = width * height;
+        float[] result = new float[cells];
+        for (int i = 0; i < cells; i++)
+            result[i] = distance(i);
+        return result;
+    }
+
+    /** Возвращаем количество раскрытий ячеек последним поиском, включая повторные **/
+    public long getExpandedCount()
+    {
+        return expandedCount;
+    }
+
+    /** Возвращаем количество параллельных раундов последнего поиска **/
+    public int getRoundCount()
+    {
+        return roundCount;
+    }
+
+    /** Возвращаем количество ячеек последнего найденного пути или 0 **/
+    public int getPathLength()
+    {
+        return pathLength;
+    }
+
+    /** Возвращаем стоимость последнего найденного пути **/
+    public float getPathCost()
+    {
+        return pathLength > 0 ? distance(path[pathLength - 1]) : 0;
+    }
+
+    /**
+     * Преобразуем последний найденный путь в цепочку путевых точек. Возвращается
+     * путевая точка конечной ячейки; по ней можно пройти назад к началу.
+     * Если путь не найден, возвращается <code>null</code>.
+     **/
+    public Waypoint toWaypoint()
+    {
+        Waypoint wp = null;
+        for (int i = 0; i < pathLength; i++)
+        {
+            wp = new Waypoint(new Location(path[i] % width, path[i] / width), wp);
+            wp.setCosts(distance(path[i]), 0);
+        }
+        return wp;
+    }
+
+    /** Останавливаем рабочие потоки. После этого объект нельзя использовать. **/
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    /**
+     * Основной цикл delta-stepping. Каждый раунд раскрывает все ячейки очереди
+     * дешевле верхней границы самой дешевой непустой корзины; если конечная
+     * ячейка указана, поиск останавливается, когда все ячейки очереди
+     * не дешевле её стоимости.
+     **/
+    private void run(Map2D map, int startX, int startY, int target)
+    {
+        if (!map.contains(startX, startY))
+            throw new IllegalArgumentException("start is outside the map: " + startX + ", " + startY);
+
+        // Карта больше предела массивов отклоняется до выделения памяти
+        int cells = GridPathfinder.cellCount(map);
+
+        this.map = map;
+        width = map.getWidth();
+        height = map.getHeight();
+        resetDistances(cells);
+
+        source = startY * width + startX;
+        expandedCount = 0;
+        roundCount = 0;
+
+        dist.set(source, Float.floatToRawIntBits(0) | QUEUED);
+        pending[0] = source;
+        pendingCount = 1;
+        float min = 0;
+
+        while (pendingCount > 0)
+        {
+            if (target >= 0 && min >= distance(target))
+                break;
+
+            // Верхняя граница корзины, в которой лежит самая дешевая ячейка очереди
+            float threshold = ((float) Math.floor(min / delta) + 1) * delta;
+            min = round(threshold);
+            roundCount++;
+        }
+    }
+
+    /**
+     * Один раунд: раскрываем ячейки очереди дешевле <code>threshold</code>
+     * и собираем новую очередь из оставшихся и улучшенных ячеек.
+     * Возвращаем наименьшую стоимость ячейки новой очереди.
+     **/
+    private float round(float threshold)
+    {
+        int leaves = (pendingCount + LEAF_SIZE - 1) / LEAF_SIZE;
+        if (outputs.length < leaves)
+        {
+            int n = Math.max(leaves, outputs.length * 2);
+            outputs = Arrays.copyOf(outputs, n);
+            outputCounts = new int[n];
+            outputMinima = new float[n];
+            outputExpanded = new int[n];
+        }
+
+        // Маленькую очередь выгоднее раскрыть в текущем потоке
+        if (leaves == 1)
+            relaxLeaf(0, pendingCount, 0, threshold);
+        else
+            pool.invoke(new RelaxTask(0, leaves, threshold));
+
+        int total = 0;
+        float min = Float.POSITIVE_INFINITY;
+        for (int leaf = 0; leaf < leaves; leaf++)
+        {
+            total += outputCounts[leaf];
+            min = Math.min(min, outputMinima[leaf]);
+            expandedCount += outputExpanded[leaf];
+        }
+
+        if (pending.length < total)
+            pending = new int[Math.max(total, pending.length * 2)];
+
+        pendingCount = 0;
+        for (int leaf = 0; leaf < leaves; leaf++)
+        {
+            System.arraycopy(outputs[leaf], 0, pending, pendingCount, outputCounts[leaf]);
+            pendingCount += outputCounts[leaf];
+        }
+        return min;
+    }
+
+    /**
+     * Обрабатываем часть очереди с номерами от <code>from</code> до <code>to</code>
+     * и записываем результат в выходной буфер <code>leaf</code>
+     **/
+    private void relaxLeaf(int from, int to, int leaf, float threshold)
+    {
+        int[] out = outputs[leaf];
+        if (out == null)
+            out = new int[LEAF_SIZE * 2];
+
+        int count = 0;
+        int expanded = 0;
+        float min = Float.POSITIVE_INFINITY;
+
+        for (int i = from; i < to; i++)
+        {
+            int node = pending[i];
+            int bits = dist.get(node);
+            float d = Float.intBitsToFloat(bits & ~QUEUED);
+
+            // Ячейка из следующих корзин остается в очереди
+            if (d >= threshold)
+            {
+                if (count == out.length)
+                    out = Arrays.copyOf(out, count * 2);
+                out[count++] = node;
+                min = Math.min(min, d);
+                continue;
+            }
+
+            // Снимаем отметку очереди; если стоимость снова уменьшится, ячейку поставят заново
+            while (!dist.compareAndSet(node, bits, bits & ~QUEUED))
+                bits = dist.get(node);
+            d = Float.intBitsToFloat(bits & ~QUEUED);
+            expanded++;
+
+            int x = node % width;
+            int y = node / width;
+            for (int k = 0; k < Neighbourhood.EIGHT.size(); k++)
+            {
+                int nx = x + Neighbourhood.EIGHT.dx(k);
+                int ny = y + Neighbourhood.EIGHT.dy(k);
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height)
+                    continue;
+
+                float c = d + Neighbourhood.EIGHT.stepLength(k) + map.getCellValue(nx, ny);
+                if (c >= AStarPathfinder.COST_LIMIT)
+                    continue;
+
+                int result = lower(ny * width + nx, c);
+                if (result == NOT_IMPROVED)
+                    continue;
+
+                // Наименьшая стоимость учитывается при любом улучшении, даже если
+                // ячейку в очередь поставил другой поток
+                min = Math.min(min, c);
+                if (result == ENQUEUE)
+                {
+                    if (count == out.length)
+                        out = Arrays.copyOf(out, count * 2);
+                    out[count++] = ny * width + nx;
+                }
+            }
+        }
+
+        outputs[leaf] = out;
+        outputCounts[leaf] = count;
+        outputMinima[leaf] = min;
+        outputExpanded[leaf] = expanded;
+    }
+
+    /** Уменьшаем стоимость ячейки до <code>cost</code>, если она больше, и отмечаем ячейку в очереди **/
+    private int lower(int node, float cost)
+    {
+        int newBits = Float.floatToRawIntBits(cost) | QUEUED;
+        while (true)
+        {
+            int bits = dist.get(node);
+            if (cost >= Float.intBitsToFloat(bits & ~QUEUED))
+                return NOT_IMPROVED;
+
+            if (dist.compareAndSet(node, bits, newBits))
+                return (bits & QUEUED) == 0 ? ENQUEUE : IMPROVED;
+        }
+    }
+
+    /** Возвращаем стоимость пути до ячейки без отметки очереди **/
+    private float distance(int node)
+    {
+        return Float.intBitsToFloat(dist.get(node) & ~QUEUED);
+    }
+
+    /** Заполняем стоимости бесконечностью, выделяя массив заново, только если он мал **/
+    private void resetDistances(int cells)
+    {
+        if (dist.length() < cells)
+            dist = new AtomicIntegerArray(cells);
+
+        AtomicIntegerArray d = dist;
+        pool.submit(() -> IntStream.range(0, cells).parallel()
+                .forEach(i -> d.lazySet(i, INFINITY_BITS))).join();
+    }
+
+    /**
+     * Восстанавливаем путь от конечной ячейки к начальной: предыдущая ячейка -
+     * та, из которой шаг в текущую дает в точности её стоимость
+     **/
+    private void extractPath(int target)
+    {
+        pathLength = 0;
+        int node = target;
+        addToPath(node);
+
+        while (node != source)
+        {
+            int x = node % width;
+            int y = node / width;
+            float d = distance(node);
+            float enter = map.getCellValue(x, y);
+
+            int prev = -1;
+            for (int k = 0; k < Neighbourhood.EIGHT.size() && prev < 0; k++)
+            {
+                int px = x - Neighbourhood.EIGHT.dx(k);
+                int py = y - Neighbourhood.EIGHT.dy(k);
+                if (px < 0 || px >= width || py < 0 || py >= height)
+                    continue;
+
+                int p = py * width + px;
+                if (distance(p) + Neighbourhood.EIGHT.stepLength(k) + enter == d)
+                    prev = p;
+            }
+
+            node = prev;
+            addToPath(node);
+        }
+
+        // Путь собран от конца к началу
+        for (int i = 0, j = pathLength - 1; i < j; i++, j--)
+        {
+            int t = path[i];
+            path[i] = path[j];
+            path[j] = t;
+        }
+    }
+
+    private void addToPath(int node)
+    {
+        if (pathLength == path.length)
+            path = Arrays.copyOf(path, pathLength * 2);
+        path[pathLength++] = node;
+    }
+
+    /** Задача, раскрывающая части очереди с номерами от <code>from</code> до <code>to</code> **/
+    private class RelaxTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+        private final float threshold;
+
+        RelaxTask(int from, int to, float threshold)
+        {
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        protected void compute()
+        {
+            if (to - from == 1)
+            {
+                relaxLeaf(from * LEAF_SIZE, Math.min(pendingCount, to * LEAF_SIZE), from, threshold);
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            invokeAll(new RelaxTask(from, mid, threshold), new RelaxTask(mid, to, threshold));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Этот класс хранит ограниченный кэш результатов {@link AStarPathfinder#computePath}.
+ * Ключом служат карта, её версия ({@link Map2D#getVersion()}) и координаты начала и
+ * конца, поэтому после любого изменения карты старые результаты никогда не возвращаются:
+ * они просто перестают совпадать с ключом и со временем вытесняются. При переполнении
+ * удаляется результат, который дольше всех не запрашивался (LRU).
+ * <p>
+ * Одна и та же цепочка путевых точек возвращается всем вызывающим, поэтому её
+ * нельзя изменять. Методы класса можно вызывать из нескольких потоков.
+ **/
+public class PathCache
+{
+    /** Вместимость кэша по умолчанию **/
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /** Ключ кэша: карта, её версия и упакованные координаты начала и конца **/
+    private static class Key
+    {
+        final Map2D map;
+        final long version;
+        final long start;
+        final long finish;
+
+        Key(Map2D map)
+        {
+            this.map = map;
+            version = map.getVersion();
+            start = map.getStart().toLong();
+            finish = map.getFinish().toLong();
+        }
+
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key))
+                return false;
+
+            Key other = (Key) obj;
+            return map == other.map && version == other.version &&
+                    start == other.start && finish == other.finish;
+        }
+
+        public int hashCode()
+        {
+            int h = System.identityHashCode(map);
+            h = 31 * h + Long.hashCode(version);
+            h = 31 * h + Location.hash(start);
+            return 31 * h + Location.hash(finish);
+        }
+    }
+
+    /** Максимальное количество хранимых результатов **/
+    private final int capacity;
+
+    /** Результаты поиска в порядке последнего обращения; null означает "пути нет" **/
+    private final LinkedHashMap<Key, Waypoint> entries;
+
+    /** Количество попаданий и промахов кэша **/
+    private long hits;
+    private long misses;
+
+
+    /** Создание кэша с вместимостью по умолчанию **/
+    public PathCache()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /** Создание кэша, хранящего не более указанного количества результатов **/
+    public PathCache(int capacity)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be > 0; got " + capacity);
+
+        this.capacity = capacity;
+        entries = new LinkedHashMap<Key, Waypoint>(16, 0.75f, true)
+        {
+            protected boolean removeEldestEntry(Map.Entry<Key, Waypoint> eldest)
+            {
+                return size() > PathCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Возвращаем путь между начальным и конечным местоположениями карты. Если для
+     * текущей версии карты путь уже вычислялся, возвращается сохраненный результат;
+     * иначе путь вычисляется {@link AStarPathfinder#computePath} и сохраняется.
+     **/
+    public Waypoint computePath(Map2D map)
+    {
+        if (map == null)
+            throw new NullPointerException("map cannot be null");
+
+        Key key = new Key(map);
+        synchronized (this)
+        {
+            if (entries.containsKey(key))
+            {
+                hits++;
+                return entries.get(key);
+            }
+            misses++;
+        }
+
+        // Поиск выполняется вне блокировки, чтобы не задерживать другие потоки
+        Waypoint path = AStarPathfinder.computePath(map);
+
+        synchronized (this)
+        {
+            entries.put(key, path);
+        }
+        return path;
+    }
+
+    /** Возвращаем количество запросов, на которые ответил кэш **/
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /** Возвращаем количество запросов, для которых путь пришлось вычислять **/
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    /** Возвращаем количество хранимых результатов **/
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /** Удаляем все результаты и сбрасываем счетчики **/
+    public synchronized void clear()
+    {
+        entries.clear();
+        hits = 0;
+        misses = 0;
+    }
+}
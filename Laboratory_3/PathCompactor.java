@@ -0,0 +1,181 @@
+import java.util.Arrays;
+
+/**
+ * Этот класс превращает найденные пути в сжатые пути {@link CompactPath},
+ * хранящие только точки поворота, и при желании сглаживает их.
+ * <p>
+ * Сжатие оставляет начало, конец и ячейки, в которых меняется направление шага;
+ * прямые участки из любого количества ячеек превращаются в одну пару координат.
+ * Сжатый путь не ссылается на исходные путевые точки или массивы поиска, поэтому
+ * после сжатия всё, что выделил поиск, сразу может быть собрано сборщиком мусора.
+ * <p>
+ * Сглаживание заменяет несколько отрезков одной прямой {@link LineOfSight},
+ * если прямая не проходит через непроходимые ячейки и движение по ней
+ * не дороже исходного участка. На однородных картах это убирает лишние
+ * повороты "лесенкой"; на взвешенных путь не обходит дорогие ячейки по прямой,
+ * если обход был дешевле.
+ **/
+public class PathCompactor
+{
+    /**
+     * Допуск при сравнении стоимостей: прямая, которая дороже исходного участка
+     * только из-за ошибок округления float, всё равно принимается
+     **/
+    private static final float COST_TOLERANCE = 1e-3f;
+
+
+    /**
+     * Сжимаем цепочку путевых точек, заканчивающуюся точкой <code>end</code>.
+     * Точки, повторяющие предыдущее местоположение (ожидание на месте), опускаются.
+     * Если <code>end</code> равна <code>null</code>, возвращается <code>null</code>.
+     **/
+    public static CompactPath compact(Waypoint end)
+    {
+        if (end == null)
+            return null;
+
+        // Цепочка идет от конца к началу; точки поворота одинаковы в обоих направлениях
+        Builder builder = new Builder();
+        for (Waypoint wp = end; wp != null; wp = wp.getPrevious())
+            builder.add(wp.getLocation().xCoord, wp.getLocation().yCoord);
+
+        return new CompactPath(builder.toArray(true), end.getPreviousCost());
+    }
+
+    /**
+     * Сжимаем путь, найденный последним поиском объекта <code>finder</code>,
+     * прямо из его массивов, не создавая цепочку путевых точек. Если путь
+     * не найден, возвращается <code>null</code>.
+     **/
+    public static CompactPath compact(GridPathfinder finder)
+    {
+        int length = finder.getPathLength();
+        if (length == 0)
+            return null;
+
+        Builder builder = new Builder();
+        for (int i = 0; i < length; i++)
+            builder.add(finder.getPathX(i), finder.getPathY(i));
+
+        return new CompactPath(builder.toArray(false), finder.getPathCost());
+    }
+
+    /**
+     * Сглаживаем сжатый путь по указанной карте: от каждой оставленной точки
+     * идем по точкам поворота вперед, пока прямая до следующей точки видна и
+     * не дороже пути по исходным отрезкам. Стоимость результата не больше
+     * стоимости исходного пути (с точностью до {@link #COST_TOLERANCE}).
+     **/
+    public static CompactPath smooth(Map2D map, CompactPath path)
+    {
+        int n = path.getPointCount();
+        if (n <= 2)
+            return path;
+
+        // Стоимость исходного пути от начала до каждой точки поворота
+        float[] prefix = new float[n];
+        for (int i = 1; i < n; i++)
+        {
+            prefix[i] = prefix[i - 1] + LineOfSight.cost(map, path.getX(i - 1), path.getY(i - 1),
+                    path.getX(i), path.getY(i));
+        }
+
+        int[] points = new int[2 * n];
+        int count = 0;
+        points[count++] = path.getX(0);
+        points[count++] = path.getY(0);
+
+        float cost = 0;
+        int anchor = 0;
+        int last = 1;
+        float lastCost = prefix[1] - prefix[0];
+
+        while (last < n - 1)
+        {
+            int next = last + 1;
+            float direct = LineOfSight.cost(map, path.getX(anchor), path.getY(anchor),
+                    path.getX(next), path.getY(next));
+
+            if (direct <= prefix[next] - prefix[anchor] + COST_TOLERANCE)
+            {
+                last = next;
+                lastCost = direct;
+                continue;
+            }
+
+            // Дальше прямая не годится: закрепляем последнюю видимую точку
+            points[count++] = path.getX(last);
+            points[count++] = path.getY(last);
+            cost += lastCost;
+
+            anchor = last;
+            last = anchor + 1;
+            lastCost = prefix[last] - prefix[anchor];
+        }
+
+        points[count++] = path.getX(n - 1);
+        points[count++] = path.getY(n - 1);
+        cost += lastCost;
+
+        return new CompactPath(count == points.length ? points : Arrays.copyOf(points, count), cost);
+    }
+
+    /**
+     * Накопитель точек поворота: каждая новая ячейка либо продолжает последний
+     * отрезок в том же направлении и заменяет его конец, либо начинает новый отрезок
+     **/
+    private static class Builder
+    {
+        int[] points = new int[16];
+        int count;
+
+        /** Направление последнего шага **/
+        int dx, dy;
+
+        void add(int x, int y)
+        {
+            if (count > 0)
+            {
+                int stepX = x - points[count - 2];
+                int stepY = y - points[count - 1];
+                if (stepX == 0 && stepY == 0)
+                    return;
+
+                // Тот же шаг, что и предыдущий: сдвигаем конец отрезка
+                if (count >= 4 && stepX == dx && stepY == dy)
+                {
+                    points[count - 2] = x;
+                    points[count - 1] = y;
+                    return;
+                }
+
+                dx = stepX;
+                dy = stepY;
+            }
+
+            if (count == points.length)
+                points = Arrays.copyOf(points, count * 2);
+            points[count++] = x;
+            points[count++] = y;
+        }
+
+        /** Возвращаем точки массивом точного размера, при необходимости в обратном порядке **/
+        int[] toArray(boolean reverse)
+        {
+            int[] result = Arrays.copyOf(points, count);
+            if (reverse)
+            {
+                for (int i = 0, j = count - 2; i < j; i += 2, j -= 2)
+                {
+                    int x = result[i];
+                    int y = result[i + 1];
+                    result[i] = result[j];
+                    result[i + 1] = result[j + 1];
+                    result[j] = x;
+                    result[j + 1] = y;
+                }
+            }
+            return result;
+        }
+    }
+}
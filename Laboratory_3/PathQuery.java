@@ -0,0 +1,57 @@
+/**
+ * Этот класс описывает один запрос поиска пути: начальную и конечную ячейки.
+ * Объекты класса неизменяемы, поэтому их можно передавать между потоками.
+ **/
+public final class PathQuery
+{
+    /** Координаты начальной ячейки **/
+    private final int startX, startY;
+
+    /** Координаты конечной ячейки **/
+    private final int finishX, finishY;
+
+
+    /** Создание запроса пути между указанными ячейками **/
+    public PathQuery(int startX, int startY, int finishX, int finishY)
+    {
+        this.startX = startX;
+        this.startY = startY;
+        this.finishX = finishX;
+        this.finishY = finishY;
+    }
+
+    /** Создание запроса пути между указанными местоположениями **/
+    public PathQuery(Location start, Location finish)
+    {
+        this(start.xCoord, start.yCoord, finish.xCoord, finish.yCoord);
+    }
+
+    /** Возвращаем x координату начальной ячейки **/
+    public int getStartX()
+    {
+        return startX;
+    }
+
+    /** Возвращаем y координату начальной ячейки **/
+    public int getStartY()
+    {
+        return startY;
+    }
+
+    /** Возвращаем x координату конечной ячейки **/
+    public int getFinishX()
+    {
+        return finishX;
+    }
+
+    /** Возвращаем y координату конечной ячейки **/
+    public int getFinishY()
+    {
+        return finishY;
+    }
+
+    public String toString()
+    {
+        return "(" + startX + ", " + startY + ") -> (" + finishX + ", " + finishY + ")";
+    }
+}
@@ -0,0 +1,228 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Этот класс накапливает показатели поисков пути, переданные ему как слушателю
+ * {@link SearchListener}: количество поисков, раскрытых и открытых ячеек, время
+ * каждой фазы, а также гистограммы времени и количества раскрытых ячеек
+ * по степеням двойки. Так можно увидеть, почему одни запросы выполняются
+ * за миллисекунды, а другие - за сотни миллисекунд.
+ * <p>
+ * Счетчики построены на <code>LongAdder</code>, поэтому один объект можно
+ * подключить к поискам в нескольких потоках без общей блокировки. Статистику
+ * можно читать из программы или через JMX после вызова {@link #register}.
+ * Значения, прочитанные во время поисков, согласованы лишь приблизительно.
+ **/
+public class PathfinderStats implements SearchListener, PathfinderStatsMBean
+{
+    /** Количество интервалов гистограмм **/
+    public static final int HISTOGRAM_BUCKETS = 32;
+
+    /** Домен имен JMX **/
+    private static final String JMX_DOMAIN = "Laboratory_3";
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder found = new LongAdder();
+    private final LongAdder expanded = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder improved = new LongAdder();
+    private final LongAdder prepareNanos = new LongAdder();
+    private final LongAdder searchNanos = new LongAdder();
+    private final LongAdder pathNanos = new LongAdder();
+
+    private final LongAccumulator maxOpen = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /** Гистограмма времени поиска в микросекундах **/
+    private final AtomicLongArray timeHistogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+    /** Гистограмма количества раскрытых ячеек **/
+    private final AtomicLongArray expandedHistogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+    /** Имя, под которым объект зарегистрирован в JMX, или <code>null</code> **/
+    private volatile ObjectName objectName;
+
+
+    /** Учитываем показатели завершившегося поиска **/
+    public void searchFinished(SearchStats stats)
+    {
+        searches.increment();
+        if (stats.isPathFound())
+            found.increment();
+
+        expanded.add(stats.getExpandedCount());
+        opened.add(stats.getOpenedCount());
+        improved.add(stats.getImprovedCount());
+        maxOpen.accumulate(stats.getPeakOpenSize());
+
+        prepareNanos.add(stats.getPhaseNanos(SearchStats.Phase.PREPARE));
+        searchNanos.add(stats.getPhaseNanos(SearchStats.Phase.SEARCH));
+        pathNanos.add(stats.getPhaseNanos(SearchStats.Phase.PATH));
+
+        long total = stats.getTotalNanos();
+        maxNanos.accumulate(total);
+        timeHistogram.incrementAndGet(bucket(total / 1000));
+        expandedHistogram.incrementAndGet(bucket(stats.getExpandedCount()));
+    }
+
+    public long getSearchCount()
+    {
+        return searches.sum();
+    }
+
+    public long getFoundCount()
+    {
+        return found.sum();
+    }
+
+    public long getExpandedCount()
+    {
+        return expanded.sum();
+    }
+
+    public long getOpenedCount()
+    {
+        return opened.sum();
+    }
+
+    public long getImprovedCount()
+    {
+        return improved.sum();
+    }
+
+    public long getMaxOpenSize()
+    {
+        return maxOpen.get();
+    }
+
+    public long getPrepareNanos()
+    {
+        return prepareNanos.sum();
+    }
+
+    public long getSearchNanos()
+    {
+        return searchNanos.sum();
+    }
+
+    public long getPathNanos()
+    {
+        return pathNanos.sum();
+    }
+
+    public double getMeanMicros()
+    {
+        long count = searches.sum();
+        if (count == 0)
+            return 0;
+
+        return (prepareNanos.sum() + searchNanos.sum() + pathNanos.sum()) / 1e3 / count;
+    }
+
+    public double getMaxMicros()
+    {
+        return maxNanos.get() / 1e3;
+    }
+
+    public long[] getTimeHistogram()
+    {
+        return toArray(timeHistogram);
+    }
+
+    public long[] getExpandedHistogram()
+    {
+        return toArray(expandedHistogram);
+    }
+
+    /** Обнуляем всю статистику. Поиски, завершающиеся в это время, могут учесться частично. **/
+    public void reset()
+    {
+        searches.reset();
+        found.reset();
+        expanded.reset();
+        opened.reset();
+        improved.reset();
+        prepareNanos.reset();
+        searchNanos.reset();
+        pathNanos.reset();
+        maxOpen.reset();
+        maxNanos.reset();
+
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++)
+        {
+            timeHistogram.set(i, 0);
+            expandedHistogram.set(i, 0);
+        }
+    }
+
+    /**
+     * Регистрируем статистику в платформенном сервере JMX под именем
+     * <code>Laboratory_3:type=PathfinderStats,name=&lt;name&gt;</code>.
+     * Генерируется исключение <code>IllegalStateException</code>, если объект
+     * уже зарегистрирован или имя занято.
+     **/
+    public void register(String name)
+    {
+        if (objectName != null)
+            throw new IllegalStateException("stats are already registered as " + objectName);
+
+        try
+        {
+            ObjectName on = new ObjectName(JMX_DOMAIN + ":type=PathfinderStats,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+            objectName = on;
+        }
+        catch (JMException e)
+        {
+            throw new IllegalStateException("cannot register stats as " + name, e);
+        }
+    }
+
+    /** Удаляем статистику из сервера JMX, если она была зарегистрирована **/
+    public void unregister()
+    {
+        ObjectName on = objectName;
+        if (on == null)
+            return;
+
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(on))
+                server.unregisterMBean(on);
+        }
+        catch (JMException e)
+        {
+            throw new IllegalStateException("cannot unregister stats " + on, e);
+        }
+        objectName = null;
+    }
+
+    /** Возвращаем имя JMX или <code>null</code>, если статистика не зарегистрирована **/
+    public ObjectName getObjectName()
+    {
+        return objectName;
+    }
+
+    /** Номер интервала гистограммы: 0 для нуля, k для значений от 2^(k-1) до 2^k **/
+    private static int bucket(long value)
+    {
+        if (value <= 0)
+            return 0;
+
+        return Math.min(64 - Long.numberOfLeadingZeros(value), HISTOGRAM_BUCKETS - 1);
+    }
+
+    private static long[] toArray(AtomicLongArray histogram)
+    {
+        long[] result = new long[histogram.length()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = histogram.get(i);
+        return result;
+    }
+}
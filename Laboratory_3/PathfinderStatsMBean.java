@@ -0,0 +1,54 @@
+/**
+ * Интерфейс управления JMX для {@link PathfinderStats}. Все значения накоплены
+ * с момента создания объекта статистики или последнего вызова {@link #reset()}.
+ **/
+public interface PathfinderStatsMBean
+{
+    /** Возвращаем количество поисков **/
+    long getSearchCount();
+
+    /** Возвращаем количество поисков, нашедших путь **/
+    long getFoundCount();
+
+    /** Возвращаем суммарное количество раскрытых ячеек **/
+    long getExpandedCount();
+
+    /** Возвращаем суммарное количество ячеек, добавленных в "открытый" набор **/
+    long getOpenedCount();
+
+    /** Возвращаем суммарное количество улучшений стоимости открытых ячеек **/
+    long getImprovedCount();
+
+    /** Возвращаем наибольший размер "открытого" набора среди всех поисков **/
+    long getMaxOpenSize();
+
+    /** Возвращаем суммарное время фазы подготовки в наносекундах **/
+    long getPrepareNanos();
+
+    /** Возвращаем суммарное время основного цикла в наносекундах **/
+    long getSearchNanos();
+
+    /** Возвращаем суммарное время восстановления путей в наносекундах **/
+    long getPathNanos();
+
+    /** Возвращаем среднее время одного поиска в микросекундах **/
+    double getMeanMicros();
+
+    /** Возвращаем наибольшее время одного поиска в микросекундах **/
+    double getMaxMicros();
+
+    /**
+     * Возвращаем гистограмму времени поиска: элемент k - количество поисков
+     * длительностью от 2^(k-1) до 2^k микросекунд (элемент 0 - менее 1 микросекунды)
+     **/
+    long[] getTimeHistogram();
+
+    /**
+     * Возвращаем гистограмму количества раскрытых ячеек: элемент k - количество
+     * поисков, раскрывших от 2^(k-1) до 2^k ячеек (элемент 0 - ни одной)
+     **/
+    long[] getExpandedHistogram();
+
+    /** Обнуляем всю накопленную статистику **/
+    void reset();
+}
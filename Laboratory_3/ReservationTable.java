@@ -0,0 +1,414 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Таблица резервирования пространства-времени для совместного планирования путей
+ * нескольких агентов. Агент резервирует ячейку (x, y) на момент времени t или
+ * переход из ячейки в соседнюю между моментами t и t + 1; ячейку или переход,
+ * зарезервированные одним агентом, не может занять другой.
+ * <p>
+ * Таблица построена на открытой адресации с линейным пробированием: ключи
+ * хранятся в одном <code>AtomicLongArray</code>, а состояния слотов - в другом,
+ * и все изменения выполняются операциями CAS без блокировок. Поэтому таблицу могут
+ * одновременно читать и изменять несколько потоков планирования.
+ * <p>
+ * Состояние слота - владелец (номер агента плюс 1, 0 для свободного слота) и номер
+ * версии, который увеличивается при каждой смене ключа слота. Слот, освобожденный
+ * одним ключом, занимается другим одним CAS состояния, поэтому освобожденные
+ * резервирования не копят слоты, и таблица, через которую раз за разом планируются
+ * и снимаются пути, не переполняется: ей нужна емкость только на одновременно
+ * действующие резервирования. Ключ и владелец читаются согласованно по версии,
+ * и проверка "чужой" версии в CAS не дает занять слот, ключ которого успел смениться.
+ * Слот, хоть раз занятый ключом, больше не становится пустым, поэтому цепочки
+ * пробирования не разрываются. Чтобы поиск не проходил длинные цепочки освобожденных
+ * слотов, таблица хранит наибольшее расстояние от начального слота ключа до слота,
+ * в котором ключ был занят, и дальше него ключ не ищется; ключ занимает первый
+ * свободный слот цепочки, поэтому это расстояние определяется плотностью
+ * одновременных резервирований, а не их общим числом.
+ * <p>
+ * Два агента, одновременно занимающие один и тот же ключ в разных слотах, после
+ * захвата проверяют цепочку еще раз: тот, кто видит чужого владельца ключа,
+ * отступает. Хотя бы один из них захватывает слот позже проверки другого, поэтому
+ * резервирование никогда не достается двоим.
+ * <p>
+ * Координаты и моменты времени должны лежать в диапазоне [0, 2^20 - 1),
+ * номера агентов - быть неотрицательными.
+ **/
+public class ReservationTable
+{
+    /** Наибольшее допустимое значение координаты или момента времени плюс один **/
+    public static final int MAX_COORD = (1 << 20) - 1;
+
+    /** Признак ключа перехода **/
+    private static final long MOVE_FLAG = 1L << 63;
+
+    /** Состояние слота, который еще ни разу не занимался: им заканчиваются цепочки пробирования **/
+    private static final long EMPTY = 0;
+
+    /** Владелец слота, ключ которого сейчас меняется **/
+    private static final int CHANGING = -1;
+
+    /** Ключи слотов; ключ слота меняется только вместе с версией его состояния **/
+    private final AtomicLongArray keys;
+
+    /** Состояния слотов: версия в старших 32 битах, владелец в младших **/
+    private final AtomicLongArray states;
+
+    /** Маска номера слота **/
+    private final int mask;
+
+    /** Наибольшее расстояние от начального слота ключа до слота, в котором ключ был занят **/
+    private final AtomicInteger maxProbe = new AtomicInteger();
+
+
+    /**
+     * Создание таблицы, вмещающей не менее <code>capacity</code> одновременно
+     * действующих резервирований. Для коротких цепочек пробирования емкость стоит
+     * брать с запасом в полтора-два раза.
+     **/
+    public ReservationTable(int capacity)
+    {
+        if (capacity <= 0 || capacity > (1 << 30))
+            throw new IllegalArgumentException("capacity must be in range (0, 2^30]; got " + capacity);
+
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        keys = new AtomicLongArray(size);
+        states = new AtomicLongArray(size);
+        mask = size - 1;
+    }
+
+    /**
+     * Резервируем для агента ячейку (x, y) в момент времени t. Возвращаем true,
+     * если резервирование выполнено или уже принадлежит этому агенту, и false,
+     * если ячейка в этот момент занята другим агентом.
+     **/
+    public boolean reserve(int x, int y, int t, int agent)
+    {
+        return acquire(cellKey(x, y, t), agent);
+    }
+
+    /**
+     * Резервируем для агента переход из ячейки (x, y) в соседнюю ячейку
+     * (toX, toY), начинающийся в момент t. Возвращаем false, если этот переход
+     * уже зарезервирован другим агентом.
+     **/
+    public boolean reserveMove(int x, int y, int toX, int toY, int t, int agent)
+    {
+        return acquire(moveKey(x, y, toX, toY, t), agent);
+    }
+
+    /** Снимаем резервирование ячейки, если оно принадлежит указанному агенту **/
+    public void release(int x, int y, int t, int agent)
+    {
+        releaseKey(cellKey(x, y, t), agent);
+    }
+
+    /** Снимаем резервирование перехода, если оно принадлежит указанному агенту **/
+    public void releaseMove(int x, int y, int toX, int toY, int t, int agent)
+    {
+        releaseKey(moveKey(x, y, toX, toY, t), agent);
+    }
+
+    /**
+     * Возвращаем true, если ячейка (x, y) в момент t свободна для агента,
+     * то есть не зарезервирована никем или зарезервирована им самим
+     **/
+    public boolean isFree(int x, int y, int t, int agent)
+    {
+        int owner = ownerOf(cellKey(x, y, t));
+        return owner == 0 || owner == agent + 1;
+    }
+
+    /**
+     * Возвращаем true, если агент может перейти из (x, y) в соседнюю ячейку
+     * (toX, toY) между моментами t и t + 1: конечная ячейка свободна в момент t + 1,
+     * и никакой другой агент не идет в тот же промежуток навстречу, то есть
+     * агенты не меняются местами
+     **/
+    public boolean isMoveFree(int x, int y, int toX, int toY, int t, int agent)
+    {
+        if (!isFree(toX, toY, t + 1, agent))
+            return false;
+
+        if (x == toX && y == toY)
+            return true;
+
+        int owner = ownerOf(moveKey(toX, toY, x, y, t));
+        return owner == 0 || owner == agent + 1;
+    }
+
+    /** Возвращаем номер агента, зарезервировавшего ячейку в момент t, или -1 **/
+    public int getOwner(int x, int y, int t)
+    {
+        return ownerOf(cellKey(x, y, t)) - 1;
+    }
+
+    /** Возвращаем количество действующих резервирований; значение приблизительно при изменениях **/
+    public int size()
+    {
+        int count = 0;
+        for (int i = 0; i <= mask; i++)
+        {
+            int owner = owner(states.get(i));
+            if (owner != 0 && owner != CHANGING)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Возвращаем наибольшую длину пробирования: сколько слотов после начального
+     * приходится просмотреть в худшем случае, чтобы найти ключ или убедиться,
+     * что он не зарезервирован
+     **/
+    public int getMaxProbeLength()
+    {
+        return maxProbe.get();
+    }
+
+    /** Снимаем все резервирования. Не должен выполняться одновременно с другими изменениями. **/
+    public void clear()
+    {
+        for (int i = 0; i <= mask; i++)
+        {
+            states.set(i, EMPTY);
+            keys.set(i, 0);
+        }
+        maxProbe.set(0);
+    }
+
+    /**
+     * Занимаем ключ для агента. Проходим цепочку ключа: если ключ уже занят,
+     * отвечаем по его владельцу; иначе захватываем первый свободный слот цепочки -
+     * слот этого же ключа, слот другого освобожденного ключа или пустой слот в конце.
+     * После захвата проверяем, не занял ли тот же ключ другой агент в другом слоте.
+     **/
+    private boolean acquire(long key, int agent)
+    {
+        checkAgent(agent);
+        int owner = agent + 1;
+
+        while (true)
+        {
+            int free = -1;
+            int freeProbe = 0;
+            long freeState = EMPTY;
+            boolean freeHasKey = false;
+
+            // Занятые копии ключа лежат не дальше maxProbe; дальше ищем только свободный слот
+            int limit = maxProbe.get();
+            int slot = Location.hash(key) & mask;
+            int probe = 0;
+            while (probe <= mask && (probe <= limit || free < 0))
+            {
+                long state = states.get(slot);
+                if (state == EMPTY)
+                {
+                    if (free < 0)
+                    {
+                        free = slot;
+                        freeProbe = probe;
+                    }
+                    break;
+                }
+
+                long k = keys.get(slot);
+                if (states.get(slot) != state)
+                    continue;   // Слот изменился во время чтения - читаем его заново
+
+                int o = owner(state);
+                if (o != CHANGING)
+                {
+                    if (k == key && o != 0)
+                        return o == owner;
+
+                    // Свободный слот самого ключа лучше свободного слота чужого ключа
+                    if (o == 0 && (free < 0 || (k == key && !freeHasKey)))
+                    {
+                        free = slot;
+                        freeProbe = probe;
+                        freeState = state;
+                        freeHasKey = k == key;
+                    }
+                }
+
+                slot = (slot + 1) & mask;
+                probe++;
+            }
+
+            if (free < 0)
+                throw new IllegalStateException("reservation table is full (" + (mask + 1) + " slots)");
+
+            // Расстояние поднимается до захвата, чтобы повторная проверка других потоков видела слот
+            raiseMaxProbe(freeProbe);
+            if (!claim(free, freeState, freeHasKey, key, owner))
+                continue;
+
+            if (!ownedElsewhere(key, free))
+                return true;
+
+            // Тот же ключ одновременно занят в другом слоте: отступаем и проходим цепочку заново
+            long state = states.get(free);
+            states.compareAndSet(free, state, version(state));
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Захватываем свободный слот, прочитанный в состоянии <code>state</code>.
+     * Если в слоте уже лежит этот ключ, меняется только владелец; иначе слот
+     * сначала помечается как меняющийся с новой версией, затем записывается ключ
+     * и владелец. Возвращаем false, если слот успел измениться.
+     **/
+    private boolean claim(int slot, long state, boolean hasKey, long key, int owner)
+    {
+        if (hasKey)
+            return states.compareAndSet(slot, state, version(state) | owner);
+
+        // Нулевая версия после переполнения счетчика сделала бы слот пустым
+        long version = version(state) + (1L << 32);
+        if (version == 0)
+            version = 1L << 32;
+        if (!states.compareAndSet(slot, state, version | (CHANGING & 0xFFFFFFFFL)))
+            return false;
+
+        keys.set(slot, key);
+        states.set(slot, version | owner);
+        return true;
+    }
+
+    /** Возвращаем true, если ключ занят каким-либо агентом в слоте, отличном от <code>mine</code> **/
+    private boolean ownedElsewhere(long key, int mine)
+    {
+        int limit = Math.min(maxProbe.get(), mask);
+        int slot = Location.hash(key) & mask;
+        int probe = 0;
+        while (probe <= limit)
+        {
+            long state = states.get(slot);
+            if (state == EMPTY)
+                return false;
+
+            long k = keys.get(slot);
+            if (states.get(slot) != state)
+                continue;
+
+            int o = owner(state);
+            if (slot != mine && k == key && o != 0 && o != CHANGING)
+                return true;
+
+            slot = (slot + 1) & mask;
+            probe++;
+        }
+        return false;
+    }
+
+    private void releaseKey(long key, int agent)
+    {
+        checkAgent(agent);
+        int owner = agent + 1;
+
+        int limit = Math.min(maxProbe.get(), mask);
+        int slot = Location.hash(key) & mask;
+        int probe = 0;
+        while (probe <= limit)
+        {
+            long state = states.get(slot);
+            if (state == EMPTY)
+                return;
+
+            // Владельца меняет только CAS с той же версией, поэтому ключ проверять повторно не нужно
+            if (owner(state) == owner && keys.get(slot) == key)
+            {
+                if (states.compareAndSet(slot, state, version(state)))
+                    return;
+                continue;
+            }
+
+            slot = (slot + 1) & mask;
+            probe++;
+        }
+    }
+
+    /** Возвращаем владельца ключа плюс 1 или 0, если ключ не зарезервирован **/
+    private int ownerOf(long key)
+    {
+        int limit = Math.min(maxProbe.get(), mask);
+        int slot = Location.hash(key) & mask;
+        int probe = 0;
+        while (probe <= limit)
+        {
+            long state = states.get(slot);
+            if (state == EMPTY)
+                return 0;
+
+            long k = keys.get(slot);
+            if (states.get(slot) != state)
+                continue;
+
+            int o = owner(state);
+            if (k == key && o != 0 && o != CHANGING)
+                return o;
+
+            slot = (slot + 1) & mask;
+            probe++;
+        }
+        return 0;
+    }
+
+    private void raiseMaxProbe(int probe)
+    {
+        int current = maxProbe.get();
+        while (probe > current && !maxProbe.compareAndSet(current, probe))
+            current = maxProbe.get();
+    }
+
+    /** Владелец из состояния слота **/
+    private static int owner(long state)
+    {
+        return (int) state;
+    }
+
+    /** Версия из состояния слота, оставленная в старших 32 битах **/
+    private static long version(long state)
+    {
+        return state & 0xFFFFFFFF00000000L;
+    }
+
+    /** Ключ ячейки: 20 бит x, 20 бит y и 20 бит времени **/
+    private static long cellKey(int x, int y, int t)
+    {
+        checkCoord(x, "x");
+        checkCoord(y, "y");
+        checkCoord(t, "t");
+        return x | ((long) y << 20) | ((long) t << 40);
+    }
+
+    /** Ключ перехода: ключ начальной ячейки, 3 бита направления шага и признак перехода **/
+    private static long moveKey(int x, int y, int toX, int toY, int t)
+    {
+        int dx = toX - x;
+        int dy = toY - y;
+        if (Math.abs(dx) > 1 || Math.abs(dy) > 1 || (dx == 0 && dy == 0))
+            throw new IllegalArgumentException("move must be to a neighbouring cell: " +
+                    x + ", " + y + " -> " + toX + ", " + toY);
+
+        // Восемь направлений нумеруются от 0 до 7, пропуская "шаг на месте"
+        long direction = (dy + 1) * 3 + (dx + 1);
+        if (direction > 4)
+            direction--;
+        return cellKey(x, y, t) | (direction << 60) | MOVE_FLAG;
+    }
+
+    private static void checkCoord(int value, String name)
+    {
+        if (value < 0 || value >= MAX_COORD)
+            throw new IllegalArgumentException(name + " must be in range [0, " + MAX_COORD + "); got " + value);
+    }
+
+    private static void checkAgent(int agent)
+    {
+        if (agent < 0 || agent == Integer.MAX_VALUE)
+            throw new IllegalArgumentException("agent must be in range [0, " + Integer.MAX_VALUE + "); got " + agent);
+    }
+}
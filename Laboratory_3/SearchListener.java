@@ -0,0 +1,35 @@
+/**
+ * Слушатель, которому алгоритм поиска пути сообщает показатели каждого
+ * завершившегося поиска. Слушатель вызывается в потоке поиска; если один слушатель
+ * используется несколькими потоками, он должен быть потокобезопасным.
+ * <p>
+ * По умолчанию алгоритмы используют {@link #NONE}. С ним время фаз не измеряется
+ * и слушатель не вызывается, поэтому выключенная статистика ничего не стоит.
+ * <p>
+ * Кроме итогов поиска слушатель может получать события отдельных ячеек, например
+ * чтобы показывать волновой фронт поиска. Исключение, брошенное из
+ * {@link #cellExpanded} (например <code>CancellationException</code>), прерывает
+ * поиск; объект поиска после этого остается пригодным для следующих поисков.
+ **/
+public interface SearchListener
+{
+    /** Слушатель, который ничего не делает; означает, что статистика выключена **/
+    SearchListener NONE = stats -> { };
+
+
+    /**
+     * Вызывается после каждого поиска, нашедшего путь или нет. Объект показателей
+     * переиспользуется алгоритмом и действителен только во время вызова.
+     **/
+    void searchFinished(SearchStats stats);
+
+    /** Вызывается, когда ячейка (x, y) добавлена в "открытый" набор или её стоимость уменьшена **/
+    default void cellOpened(int x, int y)
+    {
+    }
+
+    /** Вызывается, когда ячейка (x, y) раскрыта, то есть перенесена в "закрытый" набор **/
+    default void cellExpanded(int x, int y)
+    {
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Показатели одного поиска пути: количество раскрытых и открытых ячеек,
+ * количество улучшений стоимости уже открытых ячеек, наибольший размер
+ * "открытого" набора и время каждой фазы поиска.
+ * <p>
+ * Алгоритм поиска переиспользует один объект показателей для всех своих поисков,
+ * поэтому значения действительны только во время вызова
+ * {@link SearchListener#searchFinished}. Сохранять нужно сами значения, а не объект.
+ **/
+public class SearchStats
+{
+    /** Фазы поиска, время которых измеряется отдельно **/
+    public enum Phase
+    {
+        /** Подготовка массивов или состояния и открытие начальной ячейки **/
+        PREPARE,
+
+        /** Основной цикл: раскрытие ячеек до достижения конечной **/
+        SEARCH,
+
+        /** Восстановление найденного пути **/
+        PATH
+    }
+
+    /** Количество раскрытых ячеек **/
+    private int expandedCount;
+
+    /** Количество ячеек, впервые добавленных в "открытый" набор **/
+    private int openedCount;
+
+    /** Количество уменьшений стоимости ячеек, уже находящихся в "открытом" наборе **/
+    private int improvedCount;
+
+    /** Наибольший размер "открытого" набора во время поиска **/
+    private int peakOpenSize;
+
+    /** true, если путь найден **/
+    private boolean pathFound;
+
+    /** Стоимость найденного пути или 0 **/
+    private float pathCost;
+
+    /** Время каждой фазы в наносекундах **/
+    private final long[] phaseNanos = new long[Phase.values().length];
+
+
+    /** Записываем показатели завершившегося поиска **/
+    void record(int expandedCount, int openedCount, int improvedCount, int peakOpenSize,
+                boolean pathFound, float pathCost, long prepareNanos, long searchNanos, long pathNanos)
+    {
+        this.expandedCount = expandedCount;
+        this.openedCount = openedCount;
+        this.improvedCount = improvedCount;
+        this.peakOpenSize = peakOpenSize;
+        this.pathFound = pathFound;
+        this.pathCost = pathCost;
+        phaseNanos[Phase.PREPARE.ordinal()] = prepareNanos;
+        phaseNanos[Phase.SEARCH.ordinal()] = searchNanos;
+        phaseNanos[Phase.PATH.ordinal()] = pathNanos;
+    }
+
+    /** Возвращаем количество раскрытых ячеек **/
+    public int getExpandedCount()
+    {
+        return expandedCount;
+    }
+
+    /** Возвращаем количество ячеек, впервые добавленных в "открытый" набор **/
+    public int getOpenedCount()
+    {
+        return openedCount;
+    }
+
+    /** Возвращаем количество уменьшений стоимости уже открытых ячеек **/
+    public int getImprovedCount()
+    {
+        return improvedCount;
+    }
+
+    /** Возвращаем наибольший размер "открытого" набора во время поиска **/
+    public int getPeakOpenSize()
+    {
+        return peakOpenSize;
+    }
+
+    /** Возвращаем true, если путь найден **/
+    public boolean isPathFound()
+    {
+        return pathFound;
+    }
+
+    /** Возвращаем стоимость найденного пути или 0, если путь не найден **/
+    public float getPathCost()
+    {
+        return pathCost;
+    }
+
+    /** Возвращаем время указанной фазы в наносекундах **/
+    public long getPhaseNanos(Phase phase)
+    {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /** Возвращаем общее время поиска в наносекундах **/
+    public long getTotalNanos()
+    {
+        long total = 0;
+        for (long nanos : phaseNanos)
+            total += nanos;
+        return total;
+    }
+
+    public String toString()
+    {
+        return "SearchStats[expanded=" + expandedCount + ", opened=" + openedCount +
+                ", improved=" + improvedCount + ", peakOpen=" + peakOpenSize +
+                ", found=" + pathFound + ", cost=" + pathCost +
+                ", prepareNanos=" + phaseNanos[0] + ", searchNanos=" + phaseNanos[1] +
+                ", pathNanos=" + phaseNanos[2] + "]";
+    }
+}
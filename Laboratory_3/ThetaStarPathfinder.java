@@ -0,0 +1,106 @@
+/**
+ * Этот класс реализует поиск пути под любым углом (Theta*). Поиск идет так же,
+ * как в {@link GridPathfinder}, и использует те же "открытый" и "закрытый" наборы,
+ * но при открытии соседа проверяется и путь к нему напрямую из родителя раскрываемой
+ * ячейки по прямой {@link LineOfSight}. Если прямая видна и дешевле пути через
+ * раскрываемую ячейку, родителем соседа становится родитель этой ячейки. Поэтому
+ * родительские ссылки образуют ломаную из немногих отрезков под любыми углами,
+ * а не цепочку шагов в восьми направлениях.
+ * <p>
+ * Стоимость отрезка - его длина по прямой плюс значения ячеек линии Брезенхэма,
+ * в которые он входит ({@link LineOfSight#terrainCost}). Для соседней ячейки это
+ * ровно стоимость шага A*, поэтому на однородной карте путь Theta* обычно короче
+ * пути A*, а на взвешенной по-прежнему обходит дорогие ячейки. Проверка прямой
+ * обходит её без выделения памяти и прекращается, как только прямая становится
+ * дороже уже известного пути к соседу.
+ * <p>
+ * Путь по ячейкам доступен, как и у {@link GridPathfinder} ({@link #getPathX}):
+ * отрезки заполняются ячейками их линий. Цепочка путевых точек {@link #toWaypoint}
+ * содержит только вершины ломаной.
+ **/
+public class ThetaStarPathfinder extends GridPathfinder
+{
+    /** Прямые проверяются по восьмисвязной линии, поэтому другой набор соседей не принимается **/
+    public void setNeighbourhood(Neighbourhood neighbourhood)
+    {
+        if (neighbourhood != Neighbourhood.EIGHT)
+            throw new IllegalArgumentException("any-angle search supports only the eight-cell neighbourhood");
+
+        super.setNeighbourhood(neighbourhood);
+    }
+
+    /**
+     * Открываем соседей раскрываемой ячейки двумя способами: обычным шагом
+     * из неё самой и прямой из её родителя. Каждый сосед получает более
+     * дешевый из двух путей.
+     **/
+    protected void expand(int node)
+    {
+        int x = node % width;
+        int y = node / width;
+        float g = gCost[node];
+
+        int from = parent[node];
+        int fromX = from % width;
+        int fromY = from / width;
+        float fromG = from >= 0 ? gCost[from] : 0;
+
+        for (int k = 0; k < Neighbourhood.EIGHT.size(); k++)
+        {
+            int nx = x + Neighbourhood.EIGHT.dx(k);
+            int ny = y + Neighbourhood.EIGHT.dy(k);
+
+            if (nx < minX || nx > maxX || ny < minY || ny > maxY)
+                continue;
+
+            int next = ny * width + nx;
+            if (isClosed(next))
+                continue;
+
+            relax(node, next, g + Neighbourhood.EIGHT.stepLength(k) + map.getCellValue(nx, ny));
+
+            if (from < 0)
+                continue;
+
+            // Прямая из родителя нужна, только если она дешевле лучшего известного пути
+            float length = distance(fromX, fromY, nx, ny);
+            float terrain = LineOfSight.terrainCost(map, fromX, fromY, nx, ny, knownCost(next) - fromG - length);
+            if (terrain != Float.POSITIVE_INFINITY)
+                relax(from, next, fromG + length + terrain);
+        }
+    }
+
+    /**
+     * Преобразуем найденный путь в цепочку путевых точек по вершинам ломаной:
+     * начало, точки поворота и конец. Стоимость каждой точки - стоимость пути
+     * до неё. Если путь не найден, возвращается <code>null</code>.
+     **/
+    public Waypoint toWaypoint()
+    {
+        int length = getPathLength();
+        if (length == 0)
+            return null;
+
+        // Родительские ссылки идут от конца к началу; собираем вершины и строим цепочку с начала
+        int[] vertices = new int[length];
+        int count = 0;
+        for (int node = getPathY(length - 1) * width + getPathX(length - 1); node >= 0; node = parent[node])
+            vertices[count++] = node;
+
+        Waypoint wp = null;
+        while (count > 0)
+        {
+            int node = vertices[--count];
+            wp = new Waypoint(new Location(node % width, node / width), wp);
+            wp.setCosts(gCost[node], 0);
+        }
+        return wp;
+    }
+
+    private static float distance(int x0, int y0, int x1, int y1)
+    {
+        int dx = x1 - x0;
+        int dy = y1 - y0;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+}
@@ -24,6 +24,12 @@ public class Waypoint
      **/
     private float remainingCost;
 
+    /**
+     * Позиция путевой точки в куче открытых путевых точек или -1,
+     * если точка сейчас не находится в куче
+     **/
+    int heapIndex = -1;
+
 
     /**
      * Создаем новую путевую точку для указанного местоположения. При желании можно указать предыдущую путевую точку, 
@@ -0,0 +1,180 @@
+/**
+ * Этот класс представляет собой индексированную двоичную кучу путевых точек,
+ * упорядоченную по общей стоимости пути. Каждая путевая точка хранит свою позицию
+ * в куче, поэтому извлечение минимума, удаление и уменьшение стоимости (decrease-key)
+ * выполняются за O(log N).
+ **/
+public class WaypointHeap
+{
+    /** Массив элементов кучи; корень хранится в ячейке 0 **/
+    private Waypoint[] heap;
+
+    /** Текущее количество элементов в куче **/
+    private int size;
+
+
+    /** Создание пустой кучи с начальной вместимостью по умолчанию **/
+    public WaypointHeap()
+    {
+        this(64);
+    }
+
+    /** Создание пустой кучи с указанной начальной вместимостью **/
+    public WaypointHeap(int capacity)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be > 0; got " + capacity);
+
+        heap = new Waypoint[capacity];
+    }
+
+    /** Возвращаем текущее количество путевых точек в куче **/
+    public int size()
+    {
+        return size;
+    }
+
+    /** Возвращаем true, если куча пуста **/
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /** Возвращаем true, если указанная путевая точка находится в этой куче **/
+    public boolean contains(Waypoint wp)
+    {
+        int i = wp.heapIndex;
+        return i >= 0 && i < size && heap[i] == wp;
+    }
+
+    /**
+     * Возвращаем путевую точку с минимальной общей стоимостью, не удаляя её из кучи.
+     * Если куча пуста, возвращается <code>null</code>.
+     **/
+    public Waypoint peek()
+    {
+        return size == 0 ? null : heap[0];
+    }
+
+    /** Добавляем новую путевую точку в кучу **/
+    public void add(Waypoint wp)
+    {
+        if (size == heap.length)
+        {
+            Waypoint[] grown = new Waypoint[heap.length * 2];
+            System.arraycopy(heap, 0, grown, 0, size);
+            heap = grown;
+        }
+
+        heap[size] = wp;
+        wp.heapIndex = size;
+        size++;
+        siftUp(size - 1);
+    }
+
+    /**
+     * Заменяем путевую точку в куче новой, более дешевой путевой точкой.
+     * Новая точка занимает место старой и поднимается вверх (decrease-key).
+     **/
+    public void replace(Waypoint oldWP, Waypoint newWP)
+    {
+        int i = oldWP.heapIndex;
+        if (!contains(oldWP))
+            throw new IllegalArgumentException("waypoint is not in the heap");
+
+        oldWP.heapIndex = -1;
+        heap[i] = newWP;
+        newWP.heapIndex = i;
+
+        siftUp(i);
+        siftDown(newWP.heapIndex);
+    }
+
+    /** Удаляем указанную путевую точку из кучи. Возвращаем false, если её там не было **/
+    public boolean remove(Waypoint wp)
+    {
+        if (!contains(wp))
+            return false;
+
+        int i = wp.heapIndex;
+        size--;
+
+        // Переносим последний элемент на место удаленного и восстанавливаем порядок
+        Waypoint last = heap[size];
+        heap[size] = null;
+        wp.heapIndex = -1;
+
+        if (i != size)
+        {
+            heap[i] = last;
+            last.heapIndex = i;
+            siftUp(i);
+            siftDown(last.heapIndex);
+        }
+
+        return true;
+    }
+
+    /** Удаляем все путевые точки из кучи **/
+    public void clear()
+    {
+        for (int i = 0; i < size; i++)
+        {
+            heap[i].heapIndex = -1;
+            heap[i] = null;
+        }
+        size = 0;
+    }
+
+    /** Поднимаем элемент вверх, пока он дешевле своего родителя **/
+    private void siftUp(int i)
+    {
+        Waypoint wp = heap[i];
+        float cost = wp.getTotalCost();
+
+        while (i > 0)
+        {
+            int parent = (i - 1) >>> 1;
+            Waypoint p = heap[parent];
+            if (p.getTotalCost() <= cost)
+                break;
+
+            heap[i] = p;
+            p.heapIndex = i;
+            i = parent;
+        }
+
+        heap[i] = wp;
+        wp.heapIndex = i;
+    }
+
+    /** Опускаем элемент вниз, пока хотя бы один из потомков дешевле него **/
+    private void siftDown(int i)
+    {
+        Waypoint wp = heap[i];
+        float cost = wp.getTotalCost();
+        int half = size >>> 1;
+
+        while (i < half)
+        {
+            int child = 2 * i + 1;
+            Waypoint c = heap[child];
+            int right = child + 1;
+            if (right < size && heap[right].getTotalCost() < c.getTotalCost())
+            {
+                child = right;
+                c = heap[child];
+            }
+
+            if (cost <= c.getTotalCost())
+                break;
+
+            heap[i] = c;
+            c.heapIndex = i;
+            i = child;
+        }
+
+        heap[i] = wp;
+        wp.heapIndex = i;
+    }
+}
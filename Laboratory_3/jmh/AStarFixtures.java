@@ -0,0 +1,237 @@
+import java.util.HashMap;
+import java.util.Random;
+
+import benchmarks.Fixtures;
+
+/**
+ * Реализация {@link Fixtures} для замеров JMH из пакета <code>benchmarks</code>:
+ * строит карты и наборы данных и возвращает операции над ними. Класс лежит
+ * в пакете по умолчанию вместе с классами поиска пути, потому что только
+ * отсюда они доступны.
+ * <p>
+ * Виды карт: открытая карта без препятствий и стоимостей, лабиринт со стенами
+ * в одну ячейку, карта со случайными стоимостями и препятствиями и худший случай -
+ * недостижимая конечная ячейка, из-за которой поиск раскрывает всю карту.
+ **/
+public class AStarFixtures implements Fixtures
+{
+    public PathSearch pathSearch(String kind, int side)
+    {
+        final Map2D map;
+        if (kind.equals("open"))
+            map = openMap(side);
+        else if (kind.equals("maze"))
+            map = mazeMap(side, 31);
+        else if (kind.equals("weighted"))
+            map = AStarBenchmark.wideMap(side, side, 0.2, 9, 32);
+        else if (kind.equals("worst"))
+            map = worstMap(side, 33);
+        else
+            throw new IllegalArgumentException("unknown map kind: " + kind);
+
+        return new PathSearch()
+        {
+            public Object aStar()
+            {
+                return AStarPathfinder.computePath(new AStarState(map));
+            }
+
+            public Object routed()
+            {
+                return AStarPathfinder.computePath(map);
+            }
+        };
+    }
+
+    public Operation openReplaceClose(int side)
+    {
+        Map2D map = new Map2D(side, side);
+        Random random = new Random(34);
+
+        int n = side * side;
+        Waypoint[] waypoints = new Waypoint[n];
+        Waypoint[] cheaper = new Waypoint[n];
+        for (int i = 0; i < n; i++)
+        {
+            Location loc = new Location(i % side, i / side);
+            float cost = random.nextFloat() * 1000;
+            waypoints[i] = new Waypoint(loc, null);
+            waypoints[i].setCosts(cost, 0);
+            cheaper[i] = new Waypoint(loc, null);
+            cheaper[i].setCosts(cost / 2, 0);
+        }
+
+        return () ->
+        {
+            AStarState state = new AStarState(map);
+            for (int i = 0; i < n; i++)
+                state.addOpenWaypoint(waypoints[i]);
+            for (int i = 0; i < n; i += 2)
+                state.addOpenWaypoint(cheaper[i]);
+
+            while (state.numOpenWaypoints() > 0)
+                state.closeWaypoint(state.getMinOpenWaypoint().getLocation());
+            return state;
+        };
+    }
+
+    public IndexedOperation isLocationClosed(int side)
+    {
+        Map2D map = new Map2D(side, side);
+        AStarState state = new AStarState(map);
+        for (int i = 0; i < side * side; i += 3)
+        {
+            Waypoint wp = new Waypoint(new Location(i % side, i / side), null);
+            state.addOpenWaypoint(wp);
+            state.closeWaypoint(wp.getLocation());
+        }
+
+        return i -> state.isLocationClosed(i % side, i / side) ? 1 : 0;
+    }
+
+    public IndexedOperation locationHashMap(int count)
+    {
+        Location[] locations = block(count);
+        HashMap<Location, Location> objects = new HashMap<Location, Location>();
+        for (Location loc : locations)
+            objects.put(loc, loc);
+
+        return i -> objects.get(locations[i]) != null ? 1 : 0;
+    }
+
+    public IndexedOperation locationLongHashMap(int count)
+    {
+        Location[] locations = block(count);
+        long[] keys = new long[count];
+        LongHashMap<Location> packed = new LongHashMap<Location>(count);
+        for (int i = 0; i < count; i++)
+        {
+            keys[i] = locations[i].toLong();
+            packed.put(keys[i], locations[i]);
+        }
+
+        return i -> packed.get(keys[i]) != null ? 1 : 0;
+    }
+
+    public IndexedOperation locationHashCode(int count)
+    {
+        Location[] locations = block(count);
+
+        return i -> locations[i].hashCode();
+    }
+
+    /** Плотный блок местоположений шириной 512 ячеек, как на волновом фронте поиска **/
+    private static Location[] block(int count)
+    {
+        Location[] locations = new Location[count];
+        for (int i = 0; i < count; i++)
+            locations[i] = new Location(5000 + i % 512, 5000 + i / 512);
+        return locations;
+    }
+
+    /** Открытая карта: без препятствий и стоимостей, путь из угла в угол **/
+    private static Map2D openMap(int side)
+    {
+        Map2D map = new Map2D(side, side);
+        map.setStart(new Location(0, 0));
+        map.setFinish(new Location(side - 1, side - 1));
+        return map;
+    }
+
+    /**
+     * Лабиринт со стенами толщиной в одну ячейку: комнаты лежат в ячейках
+     * с нечетными координатами и соединены проходами так, что между любыми двумя
+     * комнатами есть ровно один путь (обход в глубину со случайным выбором соседа).
+     * Путь идет из левого верхнего угла в правый нижний.
+     **/
+    private static Map2D mazeMap(int side, long seed)
+    {
+        Map2D map = new Map2D(side, side);
+        for (int y = 0; y < side; y++)
+        {
+            for (int x = 0; x < side; x++)
+                map.setCellValue(x, y, Integer.MAX_VALUE);
+        }
+
+        // Комнаты - ячейки (2i + 1, 2j + 1), не касающиеся правого и нижнего краев
+        int rooms = (side - 1) / 2;
+        Random random = new Random(seed);
+        boolean[] visited = new boolean[rooms * rooms];
+        int[] stack = new int[rooms * rooms];
+        int[] order = { 0, 1, 2, 3 };
+        int[] dx = { 1, -1, 0, 0 };
+        int[] dy = { 0, 0, 1, -1 };
+
+        int top = 0;
+        stack[top++] = 0;
+        visited[0] = true;
+        map.setCellValue(1, 1, 0);
+
+        while (top > 0)
+        {
+            int room = stack[top - 1];
+            int rx = room % rooms;
+            int ry = room / rooms;
+
+            // Перемешиваем направления и ищем непосещенного соседа
+            for (int i = 3; i > 0; i--)
+            {
+                int j = random.nextInt(i + 1);
+                int t = order[i];
+                order[i] = order[j];
+                order[j] = t;
+            }
+
+            int next = -1;
+            int dir = 0;
+            for (int k : order)
+            {
+                int nx = rx + dx[k];
+                int ny = ry + dy[k];
+                if (nx >= 0 && nx < rooms && ny >= 0 && ny < rooms && !visited[ny * rooms + nx])
+                {
+                    next = ny * rooms + nx;
+                    dir = k;
+                    break;
+                }
+            }
+
+            if (next < 0)
+            {
+                top--;
+                continue;
+            }
+
+            visited[next] = true;
+            stack[top++] = next;
+            map.setCellValue(2 * rx + 1 + dx[dir], 2 * ry + 1 + dy[dir], 0);
+            map.setCellValue(2 * (next % rooms) + 1, 2 * (next / rooms) + 1, 0);
+        }
+
+        map.setStart(new Location(1, 1));
+        map.setFinish(new Location(2 * rooms - 1, 2 * rooms - 1));
+        return map;
+    }
+
+    /**
+     * Худший случай: карта со случайными стоимостями, конечная ячейка которой
+     * окружена непроходимым кольцом. Путь не существует, и поиск раскрывает
+     * все достижимые ячейки карты, прежде чем вернуть <code>null</code>.
+     **/
+    private static Map2D worstMap(int side, long seed)
+    {
+        Map2D map = AStarBenchmark.wideMap(side, side, 0, 9, seed);
+        int fx = side - 2;
+        int fy = side / 2;
+
+        for (int y = fy - 1; y <= fy + 1; y++)
+        {
+            for (int x = fx - 1; x <= fx + 1; x++)
+                map.setCellValue(x, y, (x == fx && y == fy) ? 0 : Integer.MAX_VALUE);
+        }
+
+        map.setStart(new Location(1, side / 2));
+        map.setFinish(new Location(fx, fy));
+        return map;
+    }
+}
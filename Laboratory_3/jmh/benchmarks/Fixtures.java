@@ -0,0 +1,78 @@
+package benchmarks;
+
+/**
+ * Подготовленные данные и операции для замеров. Классы поиска пути лежат в пакете
+ * по умолчанию, который нельзя импортировать из именованного пакета, а JMH не
+ * принимает замеры в пакете по умолчанию. Поэтому замеры получают реализацию
+ * этого интерфейса, класс <code>AStarFixtures</code>, через {@link #load()}
+ * и работают с картами и состояниями только через возвращаемые ею операции.
+ * Все данные создаются при вызове методов интерфейса, то есть в подготовке
+ * замера, а не в самих замеряемых операциях.
+ **/
+public interface Fixtures
+{
+    /** Операция над подготовленными данными; результат передается в Blackhole **/
+    interface Operation
+    {
+        Object run();
+    }
+
+    /** Операция над i-м элементом подготовленного набора **/
+    interface IndexedOperation
+    {
+        long run(int i);
+    }
+
+    /** Поиск пути по одной подготовленной карте разными способами **/
+    interface PathSearch
+    {
+        /** Поиск A* по путевым точкам: <code>computePath(new AStarState(map))</code> **/
+        Object aStar();
+
+        /**
+         * Поиск <code>AStarPathfinder.computePath(map)</code>, который отдает
+         * однородные карты поиску с точками прыжка
+         **/
+        Object routed();
+    }
+
+
+    /**
+     * Поиск пути между началом и концом карты вида <code>kind</code> (open, maze,
+     * weighted или worst) со стороной <code>side</code>
+     **/
+    PathSearch pathSearch(String kind, int side);
+
+    /**
+     * Заполнение состояния A* путевыми точками всех ячеек карты со стороной
+     * <code>side</code>, замена половины из них более дешевыми и закрытие всех
+     * по одной в порядке стоимости
+     **/
+    Operation openReplaceClose(int side);
+
+    /** Проверка <code>AStarState.isLocationClosed</code> для каждой ячейки карты, где закрыта треть ячеек **/
+    IndexedOperation isLocationClosed(int side);
+
+    /** Поиск в <code>HashMap</code> по объектам <code>Location</code> плотного блока ячеек **/
+    IndexedOperation locationHashMap(int count);
+
+    /** Поиск в <code>LongHashMap</code> по упакованным координатам того же блока **/
+    IndexedOperation locationLongHashMap(int count);
+
+    /** Вычисление <code>Location.hashCode</code> для того же блока **/
+    IndexedOperation locationHashCode(int count);
+
+
+    /** Загружаем реализацию из пакета по умолчанию **/
+    static Fixtures load()
+    {
+        try
+        {
+            return (Fixtures) Class.forName("AStarFixtures").getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IllegalStateException("cannot load AStarFixtures", e);
+        }
+    }
+}
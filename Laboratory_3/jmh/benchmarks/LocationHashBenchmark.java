@@ -0,0 +1,78 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Замеры хэширования местоположений на плотном блоке из 2^18 ячеек: поиск
+ * в <code>HashMap</code> по объектам <code>Location</code>, поиск в
+ * <code>LongHashMap</code> по упакованным координатам и само вычисление хэша.
+ * Время приводится к одному местоположению.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LocationHashBenchmark
+{
+    /** Размер блока; должен совпадать с OperationsPerInvocation **/
+    private static final int COUNT = 1 << 18;
+
+    private Fixtures.IndexedOperation hashMap;
+
+    private Fixtures.IndexedOperation longHashMap;
+
+    private Fixtures.IndexedOperation hashCode;
+
+
+    @Setup(Level.Trial)
+    public void buildMaps()
+    {
+        Fixtures fixtures = Fixtures.load();
+        hashMap = fixtures.locationHashMap(COUNT);
+        longHashMap = fixtures.locationLongHashMap(COUNT);
+        hashCode = fixtures.locationHashCode(COUNT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void hashMap(Blackhole bh)
+    {
+        run(hashMap, bh);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void longHashMap(Blackhole bh)
+    {
+        run(longHashMap, bh);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void locationHashCode(Blackhole bh)
+    {
+        run(hashCode, bh);
+    }
+
+    private static void run(Fixtures.IndexedOperation op, Blackhole bh)
+    {
+        for (int i = 0; i < COUNT; i++)
+            bh.consume(op.run(i));
+    }
+}
@@ -0,0 +1,61 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Замер поиска пути на открытых картах, лабиринтах, картах со случайными стоимостями
+ * и на худшем случае (конечная ячейка недостижима) со стороной 100, 1000 и 4000 ячеек.
+ * <code>aStar</code> замеряет сам поиск A* по путевым точкам на картах всех видов,
+ * а <code>routed</code> - <code>AStarPathfinder.computePath(map)</code>, который
+ * на однородных картах (open и maze) выполняет поиск с точками прыжка.
+ * Карта строится один раз на каждое сочетание параметров в отдельной JVM.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class PathfindingBenchmark
+{
+    @Param({ "open", "maze", "weighted", "worst" })
+    public String kind;
+
+    @Param({ "100", "1000", "4000" })
+    public int size;
+
+    private Fixtures.PathSearch search;
+
+
+    @Setup(Level.Trial)
+    public void buildMap()
+    {
+        search = Fixtures.load().pathSearch(kind, size);
+    }
+
+    @Benchmark
+    public void aStar(Blackhole bh)
+    {
+        bh.consume(search.aStar());
+    }
+
+    @Benchmark
+    public void routed(Blackhole bh)
+    {
+        bh.consume(search.routed());
+    }
+}
@@ -0,0 +1,321 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Проверка на регрессии по результатам JMH. Сравниваются два файла, записанные
+ * JMH с параметрами <code>-rf json -rff файл</code>: эталонный и текущий.
+ * Для каждого замера эталона (имя и значения параметров) печатается отношение
+ * текущего результата к эталону. Программа завершается с кодом 1, если хотя бы
+ * один замер хуже эталона больше чем на допуск, а также если замер эталона
+ * пропал из текущего запуска или остался без результата (JMH пишет "NaN" для
+ * упавших замеров). Новые замеры, которых нет в эталоне, только печатаются.
+ * <p>
+ * Запуск: <code>java -cp target/benchmarks.jar benchmarks.RegressionGate
+ * --baseline эталон.json [--tolerance 0.15] текущий.json</code>
+ **/
+public class RegressionGate
+{
+    /** Допустимое ухудшение по умолчанию: 15% **/
+    private static final double DEFAULT_TOLERANCE = 0.15;
+
+
+    public static void main(String[] args) throws IOException
+    {
+        String baseline = null;
+        String current = null;
+        double tolerance = DEFAULT_TOLERANCE;
+
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equals("--baseline") && i + 1 < args.length)
+                baseline = args[++i];
+            else if (args[i].equals("--tolerance") && i + 1 < args.length)
+                tolerance = Double.parseDouble(args[++i]);
+            else if (current == null && !args[i].startsWith("--"))
+                current = args[i];
+            else
+                throw new IllegalArgumentException("unexpected argument: " + args[i]);
+        }
+
+        if (baseline == null || current == null)
+        {
+            System.err.println("usage: RegressionGate --baseline baseline.json [--tolerance 0.15] current.json");
+            System.exit(2);
+        }
+
+        Map<String, Score> base = load(baseline);
+        Map<String, Score> now = load(current);
+
+        System.out.printf("%-70s %12s %12s %8s%n", "benchmark", "baseline", "current", "ratio");
+
+        // Проходим по эталону: замер, пропавший из текущего запуска или упавший в нем, - тоже провал
+        int regressions = 0;
+        int broken = 0;
+        int compared = 0;
+        for (Map.Entry<String, Score> e : base.entrySet())
+        {
+            Score b = e.getValue();
+            Score c = now.get(e.getKey());
+            if (b.isMissing())
+                continue;
+
+            if (c == null || c.isMissing())
+            {
+                System.out.printf("%-70s %12.4f %12s %8s %s  %s%n", e.getKey(), b.value, "-", "-", b.unit,
+                        c == null ? "MISSING" : "NO SCORE");
+                broken++;
+                continue;
+            }
+
+            if (!b.unit.equals(c.unit))
+                throw new IllegalStateException("units differ for " + e.getKey() + ": " + b.unit + " vs " + c.unit);
+
+            // Для пропускной способности больше - лучше, для времени на операцию - наоборот
+            double ratio = c.higherIsBetter() ? b.value / c.value : c.value / b.value;
+            boolean regressed = ratio > 1 + tolerance;
+
+            System.out.printf("%-70s %12.4f %12.4f %8.2f %s%s%n", e.getKey(), b.value, c.value, ratio, c.unit,
+                    regressed ? "  REGRESSION" : "");
+            if (regressed)
+                regressions++;
+            compared++;
+        }
+
+        for (String name : now.keySet())
+        {
+            if (!base.containsKey(name))
+                System.out.printf("%-70s %12s %12s %8s  NEW%n", name, "-", "-", "-");
+        }
+
+        if (compared == 0 && broken == 0)
+        {
+            System.out.println("no scored benchmarks in the baseline");
+            System.exit(2);
+        }
+
+        if (regressions == 0 && broken == 0)
+        {
+            System.out.println("no regressions");
+            return;
+        }
+
+        if (regressions > 0)
+            System.out.println(regressions + " regressions beyond " + Math.round(tolerance * 100) + "% found");
+        if (broken > 0)
+            System.out.println(broken + " baseline benchmarks are missing or have no score in the current run");
+        System.exit(1);
+    }
+
+    /** Результат одного замера **/
+    private static class Score
+    {
+        final String mode;
+        final double value;
+        final String unit;
+
+        Score(String mode, double value, String unit)
+        {
+            this.mode = mode;
+            this.value = value;
+            this.unit = unit;
+        }
+
+        boolean higherIsBetter()
+        {
+            return mode.equals("thrpt");
+        }
+
+        /** Замер без результата: JMH не смог его выполнить **/
+        boolean isMissing()
+        {
+            return Double.isNaN(value);
+        }
+    }
+
+    /** Читаем результаты JMH; ключ - имя замера со значениями параметров **/
+    @SuppressWarnings("unchecked")
+    private static Map<String, Score> load(String file) throws IOException
+    {
+        String text = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+        List<Object> runs = (List<Object>) new JsonReader(text).read();
+
+        Map<String, Score> scores = new TreeMap<String, Score>();
+        for (Object item : runs)
+        {
+            Map<String, Object> run = (Map<String, Object>) item;
+            StringBuilder key = new StringBuilder((String) run.get("benchmark"));
+
+            Map<String, Object> params = (Map<String, Object>) run.get("params");
+            if (params != null)
+            {
+                for (Map.Entry<String, Object> p : new TreeMap<String, Object>(params).entrySet())
+                    key.append(' ').append(p.getKey()).append('=').append(p.getValue());
+            }
+
+            // Упавшие замеры JMH записывает со строкой "NaN" вместо числа; они
+            // сохраняются без результата, чтобы проверка их не пропустила
+            Map<String, Object> metric = (Map<String, Object>) run.get("primaryMetric");
+            Object score = metric == null ? null : metric.get("score");
+            double value = score instanceof Number ? ((Number) score).doubleValue() : Double.NaN;
+            String unit = metric == null ? "" : (String) metric.get("scoreUnit");
+            scores.put(key.toString(), new Score((String) run.get("mode"), value, unit));
+        }
+        return scores;
+    }
+
+    /**
+     * Минимальный разбор JSON: объекты становятся <code>Map</code>, массивы - <code>List</code>,
+     * числа - <code>Double</code>. Этого достаточно для файлов результатов JMH.
+     **/
+    private static class JsonReader
+    {
+        private final String text;
+        private int pos;
+
+        JsonReader(String text)
+        {
+            this.text = text;
+        }
+
+        Object read()
+        {
+            skipSpace();
+            char c = text.charAt(pos);
+            if (c == '{')
+                return readObject();
+            if (c == '[')
+                return readArray();
+            if (c == '"')
+                return readString();
+            if (text.startsWith("true", pos))
+                return literal(4, Boolean.TRUE);
+            if (text.startsWith("false", pos))
+                return literal(5, Boolean.FALSE);
+            if (text.startsWith("null", pos))
+                return literal(4, null);
+            return readNumber();
+        }
+
+        private Object literal(int length, Object value)
+        {
+            pos += length;
+            return value;
+        }
+
+        private Map<String, Object> readObject()
+        {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            pos++;
+            skipSpace();
+            if (text.charAt(pos) == '}')
+            {
+                pos++;
+                return map;
+            }
+
+            while (true)
+            {
+                skipSpace();
+                String name = readString();
+                skipSpace();
+                expect(':');
+                map.put(name, read());
+                skipSpace();
+                if (text.charAt(pos) == '}')
+                {
+                    pos++;
+                    return map;
+                }
+                expect(',');
+            }
+        }
+
+        private List<Object> readArray()
+        {
+            List<Object> list = new ArrayList<Object>();
+            pos++;
+            skipSpace();
+            if (text.charAt(pos) == ']')
+            {
+                pos++;
+                return list;
+            }
+
+            while (true)
+            {
+                list.add(read());
+                skipSpace();
+                if (text.charAt(pos) == ']')
+                {
+                    pos++;
+                    return list;
+                }
+                expect(',');
+            }
+        }
+
+        private String readString()
+        {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true)
+            {
+                char c = text.charAt(pos++);
+                if (c == '"')
+                    return sb.toString();
+                if (c != '\\')
+                {
+                    sb.append(c);
+                    continue;
+                }
+
+                char e = text.charAt(pos++);
+                switch (e)
+                {
+                    case 'n': sb.append('\n'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'u':
+                        sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default: sb.append(e);
+                }
+            }
+        }
+
+        private Double readNumber()
+        {
+            int start = pos;
+            while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0)
+                pos++;
+            if (start == pos)
+                throw new IllegalArgumentException("unexpected character at " + pos + ": " + text.charAt(pos));
+            return Double.valueOf(text.substring(start, pos));
+        }
+
+        private void expect(char c)
+        {
+            if (text.charAt(pos) != c)
+                throw new IllegalArgumentException("expected '" + c + "' at " + pos);
+            pos++;
+        }
+
+        private void skipSpace()
+        {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+                pos++;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Замеры операций <code>AStarState</code> на карте 300 x 300: полный цикл
+ * добавления, замены и закрытия путевых точек и проверка закрытых местоположений.
+ * Время проверки приводится к одной ячейке.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class StateBenchmark
+{
+    /** Сторона карты; количество ячеек должно совпадать с OperationsPerInvocation **/
+    private static final int SIDE = 300;
+
+    private Fixtures.Operation openReplaceClose;
+
+    private Fixtures.IndexedOperation isLocationClosed;
+
+
+    @Setup(Level.Trial)
+    public void buildState()
+    {
+        Fixtures fixtures = Fixtures.load();
+        openReplaceClose = fixtures.openReplaceClose(SIDE);
+        isLocationClosed = fixtures.isLocationClosed(SIDE);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void openReplaceClose(Blackhole bh)
+    {
+        bh.consume(openReplaceClose.run());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(SIDE * SIDE)
+    public void isLocationClosed(Blackhole bh)
+    {
+        Fixtures.IndexedOperation op = isLocationClosed;
+        for (int i = 0; i < SIDE * SIDE; i++)
+            bh.consume(op.run(i));
+    }
+}
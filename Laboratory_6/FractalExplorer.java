@@ -37,8 +37,8 @@ public class FractalExplorer {
 	// Текущая директория
 	private File nowPath = null;
 	
-	// Количество потоков на выполнении
-	private int rowsRemaining = 0;
+	// Движок отрисовки: плитки кадра вычисляются в общем пуле потоков
+	private FractalRenderer renderer = new FractalRenderer();
 	
 	/**
 	* Классы-слушатели событий кнопки сброса и сохранения + мыши
@@ -125,7 +125,7 @@ public class FractalExplorer {
 			System.out.println("Mouse button clicked!");
 			
 			// Если потоки отрисовки выполняется - событие не обрабатывается
-			if (rowsRemaining != 0) return;
+			if (renderer.isRendering()) return;
 			
 			int index = chooseF.getSelectedIndex();
 			if (index >= fractals.size()) return;
@@ -292,18 +292,18 @@ public class FractalExplorer {
 		// Отключение GUI на время выполнения потоков
 		this.enableUI(false);
 		
-		// Запуск потоков на выполнение отрисовки
-		int pictureHeight = display.getHeight();
-		int pictureWidth = display.getWidth();
-		
-		rowsRemaining = pictureHeight;
-		
-		for (int i = 0; i < pictureHeight; i++) {
-			// Создание потока и запуск его выполнения
-			// На вход потоку идёт номер строки, длина строки, индекс фрактала в списке, по которому проводить вычисления
-			FractalWorker tempThread = new FractalWorker(i, pictureWidth, index);
-			tempThread.execute();
-		}
+		// Запуск отрисовки по плиткам; по окончании кадра интерфейс снова включается
+		renderer.render(fractals.get(index), range, display, new FractalRenderer.RenderListener() {
+			public void frameFinished(FractalRenderer renderer) {
+				enableUI(true);
+				
+				// Ошибка вычисления: кадр прерван, интерфейс всё равно включается
+				if (renderer.getLastError() != null) {
+					renderer.getLastError().printStackTrace();
+					JOptionPane.showMessageDialog(FractalExplorer.this.frame, "Render is failed!", "Render", JOptionPane.WARNING_MESSAGE);
+				}
+			}
+		});
 	}
 	
 	/**
@@ -317,81 +317,6 @@ public class FractalExplorer {
 		this.display.clearImage();
 	}
 	
-	/**
-	* Многопоточность
-	**/
-	private class FractalWorker extends SwingWorker<Object, Object> {
-		
-		// Номер строки, которую будет проверять поток
-		private int numOfStr;
-		private int picWidth;
-		
-		// Массив вычисленных значений этой строки
-		private int[] strValues;
-		
-		// С каким фракталом работать
-		private int index;
-		
-		// Конструктор: номер строки, ширина строки, индекс фрактала из списка
-		public FractalWorker(int y, int picWidth, int index) {
-			this.numOfStr = y;
-			this.picWidth = picWidth;
-			this.index = index;
-		}
-		
-		// Выполняется в фоновом потоке (не должен взаимодействовать с GUI)
-		
-        protected String doInBackground() throws Exception {
-			
-			strValues = new int[picWidth];
-			
-			for (int x = 0; x < picWidth; x++) {
-				// Преобразование координат плоскости пикселей в координаты мнимой плоскости
-				double xCoord = FractalGenerator.getCoord(range.x, range.x + range.width, display.getWidth(), x);
-				double yCoord = FractalGenerator.getCoord(range.y, range.y + range.height, display.getHeight(), numOfStr);
-				
-				// Определение входа точки в множество фрактала
-				strValues[x] = fractals.get(index).numIterations(xCoord, yCoord);
-			}
-			
-			return null;
-		}
-		
-		// Вызывается при завершении работы фонового потока
-		
-        protected void done() {
-			try {
-				int x = 0;
-				for (int numOfIter: strValues) {
-					int rgbColor;
-					if (numOfIter != -1) {
-						float hue = 0.7f + (float) numOfIter / 200f; 
-						rgbColor = Color.HSBtoRGB(hue, 1f, 1f); 
-					} 
-					else {
-						rgbColor = Color.HSBtoRGB(0, 0, 0); 
-					}
-					
-					
-					// Перерисовка без обновления элемента - рисуется на buffered image без присвоение результата jpanel
-					display.drawPixelWithNoRepaint(x, numOfStr, new Color(rgbColor));
-					
-					x++;
-				}
-			} 
-			catch (Exception e) { 
-				e.printStackTrace(); 
-            }
-			
-			rowsRemaining--;
-			if (rowsRemaining == 0) {
-				enableUI(true);
-				
-				display.repaintPicture();
-			}
-		} 
-	}
-	
 	/**
 	* Управление доступностью GUI
 	**/
@@ -0,0 +1,342 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+* Движок отрисовки фракталов по плиткам.
+* Кадр делится на квадратные плитки, которые вычисляются в общем пуле ForkJoinPool.
+* Количество итераций у разных точек фрактала очень разное, поэтому задачи делятся пополам
+* и свободные потоки забирают ("крадут") работу у занятых.
+* Готовые плитки копятся в очереди и передаются в поток событий Swing пачками:
+* один вызов invokeLater забирает все плитки, готовые к этому моменту, и переносит
+* их на картинку целыми прямоугольниками, а не по пикселю.
+* Если вычисление плитки завершается исключением, кадр отменяется, но слушатель
+* всё равно получает сообщение об окончании, а ошибку возвращает getLastError().
+**/
+public class FractalRenderer {
+
+	// Сторона плитки в пикселях
+	public static final int TILE_SIZE = 64;
+
+	/**
+	* Слушатель окончания кадра. Вызывается в потоке событий Swing
+	**/
+	public interface RenderListener {
+		void frameFinished(FractalRenderer renderer);
+	}
+
+	// Пул потоков, общий для всех кадров
+	private final ForkJoinPool pool;
+
+	// Текущий кадр или null, если ничего не рисуется. Меняется только в потоке событий
+	private Frame current;
+
+	// Статистика последнего законченного кадра
+	private long lastRenderTime;
+	private long lastPublishTime;
+	private int lastPublishCount;
+	private Throwable lastError;
+
+	/**
+	* Конструкторы: по умолчанию по потоку на каждое ядро процессора
+	**/
+	public FractalRenderer() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public FractalRenderer(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		}
+		this.pool = new ForkJoinPool(threads);
+	}
+
+	/**
+	* Запуск отрисовки кадра на панели. Вызывается в потоке событий Swing.
+	* Диапазон копируется, поэтому после вызова его можно менять.
+	* Незаконченный предыдущий кадр отменяется.
+	**/
+	public void render(FractalGenerator fractal, Rectangle2D.Double range, JImageDisplay display, RenderListener listener) {
+		this.cancel();
+
+		Frame frame = new Frame(fractal, range, display, listener);
+		current = frame;
+
+		if (frame.tilesRemaining == 0) {
+			this.finish(frame);
+			return;
+		}
+
+		try {
+			pool.execute(new TileTask(frame, 0, frame.tilesRemaining));
+		} catch (RuntimeException e) {
+			// Пул остановлен или переполнен: кадр заканчивается сразу с ошибкой
+			frame.error.set(e);
+			frame.cancelled = true;
+			this.finish(frame);
+		}
+	}
+
+	/**
+	* Отмена текущего кадра: уже вычисленные плитки не попадут на картинку,
+	* а ещё не начатые не будут вычисляться
+	**/
+	public void cancel() {
+		if (current != null) {
+			current.cancelled = true;
+			current = null;
+		}
+	}
+
+	public boolean isRendering() {
+		return current != null;
+	}
+
+	public int getThreadCount() {
+		return pool.getParallelism();
+	}
+
+	/**
+	* Статистика последнего кадра: полное время отрисовки, время, проведённое
+	* в потоке событий, и количество передач плиток в него (в наносекундах)
+	**/
+	public long getLastRenderTime() {
+		return lastRenderTime;
+	}
+
+	public long getLastPublishTime() {
+		return lastPublishTime;
+	}
+
+	public int getLastPublishCount() {
+		return lastPublishCount;
+	}
+
+	/**
+	* Исключение, прервавшее последний кадр, или null, если кадр нарисован полностью
+	**/
+	public Throwable getLastError() {
+		return lastError;
+	}
+
+	/**
+	* Остановка потоков пула. После вызова рисовать нельзя
+	**/
+	public void shutdown() {
+		this.cancel();
+		pool.shutdown();
+	}
+
+	/**
+	* Цвет точки по количеству итераций: точки множества чёрные, остальные - по оттенку
+	**/
+	public static int getColor(int numOfIter) {
+		if (numOfIter == -1) {
+			return Color.HSBtoRGB(0, 0, 0);
+		}
+
+		float hue = 0.7f + (float) numOfIter / 200f;
+		return Color.HSBtoRGB(hue, 1f, 1f);
+	}
+
+	/**
+	* Перенос готовых плиток на картинку. Выполняется в потоке событий Swing
+	**/
+	private void publish(Frame frame) {
+		// Сброс флага до разбора очереди: плитка, добавленная после него, запланирует новую передачу
+		frame.publishScheduled.set(false);
+
+		if (frame != current) return;
+
+		// Кадр уже прерван ошибкой - плитки не переносятся, кадр заканчивается
+		if (frame.error.get() != null) {
+			this.finish(frame);
+			return;
+		}
+
+		long t0 = System.nanoTime();
+
+		try {
+			Integer tile;
+			while ((tile = frame.finished.poll()) != null) {
+				int x = frame.tileX(tile);
+				int y = frame.tileY(tile);
+				int w = Math.min(TILE_SIZE, frame.width - x);
+				int h = Math.min(TILE_SIZE, frame.height - y);
+
+				frame.display.drawTileWithRepaint(x, y, w, h, frame.rgb, y * frame.width + x, frame.width);
+				frame.tilesRemaining--;
+			}
+		} catch (RuntimeException e) {
+			frame.error.compareAndSet(null, e);
+			frame.cancelled = true;
+		}
+
+		frame.publishTime += System.nanoTime() - t0;
+		frame.publishCount++;
+
+		if (frame.tilesRemaining == 0 || frame.error.get() != null) {
+			this.finish(frame);
+		}
+	}
+
+	private void finish(Frame frame) {
+		current = null;
+
+		lastRenderTime = System.nanoTime() - frame.startTime;
+		lastPublishTime = frame.publishTime;
+		lastPublishCount = frame.publishCount;
+		lastError = frame.error.get();
+
+		if (frame.listener != null) {
+			frame.listener.frameFinished(this);
+		}
+	}
+
+	/**
+	* Состояние одного кадра
+	**/
+	private class Frame {
+
+		private final FractalGenerator fractal;
+		private final JImageDisplay display;
+		private final RenderListener listener;
+
+		// Копия диапазона на момент запуска
+		private final double rangeX, rangeY, rangeWidth, rangeHeight;
+
+		private final int width;
+		private final int height;
+		private final int tilesPerRow;
+
+		// Цвета всех пикселей кадра: каждая плитка пишет только в свою область
+		private final int[] rgb;
+
+		// Номера вычисленных, но ещё не перенесённых плиток
+		private final ConcurrentLinkedQueue<Integer> finished = new ConcurrentLinkedQueue<Integer>();
+		private final AtomicBoolean publishScheduled = new AtomicBoolean();
+
+		private volatile boolean cancelled = false;
+
+		// Первое исключение, прервавшее кадр
+		private final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+		// Поля ниже меняются только в потоке событий
+		private int tilesRemaining;
+		private long startTime;
+		private long publishTime;
+		private int publishCount;
+
+		public Frame(FractalGenerator fractal, Rectangle2D.Double range, JImageDisplay display, RenderListener listener) {
+			this.fractal = fractal;
+			this.display = display;
+			this.listener = listener;
+
+			this.rangeX = range.x;
+			this.rangeY = range.y;
+			this.rangeWidth = range.width;
+			this.rangeHeight = range.height;
+
+			this.width = display.getWidth();
+			this.height = display.getHeight();
+			this.tilesPerRow = (width + TILE_SIZE - 1) / TILE_SIZE;
+			int rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+			this.rgb = new int[width * height];
+			this.tilesRemaining = tilesPerRow * rows;
+			this.startTime = System.nanoTime();
+		}
+
+		public int tileX(int tile) {
+			return (tile % tilesPerRow) * TILE_SIZE;
+		}
+
+		public int tileY(int tile) {
+			return (tile / tilesPerRow) * TILE_SIZE;
+		}
+
+		/**
+		* Вычисление плитки в фоновом потоке (не должно взаимодействовать с GUI)
+		**/
+		public void renderTile(int tile) {
+			int x0 = tileX(tile);
+			int y0 = tileY(tile);
+			int x1 = Math.min(x0 + TILE_SIZE, width);
+			int y1 = Math.min(y0 + TILE_SIZE, height);
+
+			for (int y = y0; y < y1; y++) {
+				double yCoord = FractalGenerator.getCoord(rangeY, rangeY + rangeHeight, height, y);
+
+				for (int x = x0; x < x1; x++) {
+					double xCoord = FractalGenerator.getCoord(rangeX, rangeX + rangeWidth, width, x);
+					rgb[y * width + x] = getColor(fractal.numIterations(xCoord, yCoord));
+				}
+			}
+
+			finished.add(tile);
+			this.schedulePublish();
+		}
+
+		/**
+		* Прерывание кадра исключением из фонового потока. Остальные плитки не вычисляются,
+		* а окончание кадра всё равно передаётся в поток событий
+		**/
+		public void fail(Throwable e) {
+			if (!error.compareAndSet(null, e)) return;
+
+			cancelled = true;
+			this.schedulePublish();
+		}
+
+		private void schedulePublish() {
+			// Передача уже запланирована - плитка уйдёт вместе с остальными
+			if (publishScheduled.compareAndSet(false, true)) {
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						publish(Frame.this);
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	* Задача на диапазон плиток [from, to). Большие диапазоны делятся пополам,
+	* чтобы половины могли забрать свободные потоки пула
+	**/
+	private static class TileTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Frame frame;
+		private final int from;
+		private final int to;
+
+		public TileTask(Frame frame, int from, int to) {
+			this.frame = frame;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (frame.cancelled) return;
+
+			if (to - from == 1) {
+				try {
+					frame.renderTile(from);
+				} catch (Throwable e) {
+					frame.fail(e);
+				}
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+			invokeAll(new TileTask(frame, from, middle), new TileTask(frame, middle, to));
+		}
+	}
+}
@@ -60,7 +60,17 @@ public class JImageDisplay extends JPanel {
 		// Закрашиване необходимого пикселя
 		g.fillRect(x, y, 1, 1);
 	}
-	
+
+	/**
+	* Закрашивание прямоугольника пикселей одним вызовом: цвета берутся из массива rgb
+	* начиная с offset, по scansize элементов на строку. Перерисовывается только эта область
+	**/
+	public void drawTileWithRepaint(int x, int y, int width, int height, int[] rgb, int offset, int scansize) {
+		bImg.setRGB(x, y, width, height, rgb, offset, scansize);
+
+		this.repaint(0, x, y, width, height);
+	}
+
 	/**
 	* Принудительная перерисовка
 	**/